@@ -0,0 +1,52 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.hibernate4;
+
+/**
+ * Outcome of a batched write performed by {@code Hibernate4Handler.writeHbm4Batch}.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public final class Hibernate4BatchResult {
+    private final long rowsWritten;
+    private final int flushes;
+
+    public Hibernate4BatchResult(long rowsWritten, int flushes) {
+        this.rowsWritten = rowsWritten;
+        this.flushes = flushes;
+    }
+
+    public long getRowsWritten() {
+        return rowsWritten;
+    }
+
+    /**
+     * @return how many times the session was flushed and cleared. Each flush sends its entities in as many JDBC
+     * batches as {@code hibernate.jdbc.batch_size} calls for, which the driver does not report back.
+     */
+    public int getFlushes() {
+        return flushes;
+    }
+
+    @Override
+    public String toString() {
+        return "Hibernate4BatchResult[rowsWritten=" + rowsWritten + ", flushes=" + flushes + "]";
+    }
+}
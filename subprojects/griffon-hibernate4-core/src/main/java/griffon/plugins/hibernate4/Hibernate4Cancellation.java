@@ -0,0 +1,85 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.hibernate4;
+
+import griffon.annotations.core.Nonnull;
+import org.hibernate.HibernateException;
+import org.hibernate.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Handle used to cancel a callback started with {@code Hibernate4Handler.withHbm4Session} from another thread.
+ * Cancelling aborts the JDBC statement in flight, fails every query created afterwards and rolls the transaction back.
+ * A handle cancels at most one callback at a time and stays cancelled once {@link #cancel()} has been called.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public final class Hibernate4Cancellation {
+    private static final Logger LOG = LoggerFactory.getLogger(Hibernate4Cancellation.class);
+
+    private Session session;
+    private boolean cancelled;
+
+    public void cancel() {
+        Session target;
+        synchronized (this) {
+            if (cancelled) {
+                return;
+            }
+            cancelled = true;
+            target = session;
+        }
+        if (target != null) {
+            try {
+                target.cancelQuery();
+            } catch (HibernateException e) {
+                // the statement completed or the session was closed in the meantime
+                LOG.debug("Could not cancel the running statement", e);
+            }
+        }
+    }
+
+    public synchronized boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Links this handle to the session of a running callback. Called by the handler.
+     *
+     * @param session the session to cancel queries on
+     */
+    public synchronized void attach(@Nonnull Session session) {
+        requireNonNull(session, "Argument 'session' must not be null");
+        if (this.session != null) {
+            throw new IllegalStateException("Cancellation is already attached to a running callback");
+        }
+        this.session = session;
+    }
+
+    /**
+     * Unlinks this handle from the session once the callback has completed. Called by the handler.
+     */
+    public synchronized void detach() {
+        this.session = null;
+    }
+}
@@ -33,4 +33,17 @@ public interface Hibernate4Factory extends ObjectFactory<SessionFactory> {
 
     @Nonnull
     Map<String, Object> getConfigurationFor(@Nonnull String sessionFactoryName);
+
+    /**
+     * Builds a replacement for a live SessionFactory. The replacement shares the datasources and the schema of the
+     * live one, which keeps handing out sessions until it is retired; the schema is left as it is.
+     */
+    @Nonnull
+    SessionFactory recreate(@Nonnull String sessionFactoryName, @Nonnull SessionFactory current);
+
+    /**
+     * Destroys and closes a SessionFactory that has been replaced by {@link #recreate}, leaving the datasources
+     * and the schema it shares with its replacement as they are.
+     */
+    void retire(@Nonnull String sessionFactoryName, @Nonnull SessionFactory instance);
 }
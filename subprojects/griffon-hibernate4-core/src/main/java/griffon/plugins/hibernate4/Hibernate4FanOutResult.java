@@ -0,0 +1,86 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.hibernate4;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.BinaryOperator;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Outcome of a callback run against several session factories by {@code Hibernate4Handler.withHbm4Sessions}.
+ * Results and failures are keyed by session factory name; a session factory that failed or timed out has no result.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public final class Hibernate4FanOutResult<R> {
+    private final Map<String, R> results;
+    private final Map<String, Throwable> failures;
+
+    public Hibernate4FanOutResult(@Nonnull Map<String, R> results, @Nonnull Map<String, Throwable> failures) {
+        this.results = Collections.unmodifiableMap(new LinkedHashMap<>(requireNonNull(results, "Argument 'results' must not be null")));
+        this.failures = Collections.unmodifiableMap(new LinkedHashMap<>(requireNonNull(failures, "Argument 'failures' must not be null")));
+    }
+
+    @Nonnull
+    public Map<String, R> getResults() {
+        return results;
+    }
+
+    @Nonnull
+    public Map<String, Throwable> getFailures() {
+        return failures;
+    }
+
+    /**
+     * @return {@code true} if every session factory produced a result
+     */
+    public boolean isComplete() {
+        return failures.isEmpty();
+    }
+
+    /**
+     * Combines the available results, in session factory order, with the given function.
+     *
+     * @param merger the function used to combine two results
+     * @return the combined result or {@code null} if there are no results
+     */
+    @Nullable
+    public R merge(@Nonnull BinaryOperator<R> merger) {
+        requireNonNull(merger, "Argument 'merger' must not be null");
+        R merged = null;
+        boolean first = true;
+        for (R result : results.values()) {
+            merged = first ? result : merger.apply(merged, result);
+            first = false;
+        }
+        return merged;
+    }
+
+    @Override
+    public String toString() {
+        return "Hibernate4FanOutResult[results=" + results.keySet() + ", failures=" + failures.keySet() + "]";
+    }
+}
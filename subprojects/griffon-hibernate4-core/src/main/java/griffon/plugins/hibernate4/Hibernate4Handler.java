@@ -20,6 +20,12 @@ package griffon.plugins.hibernate4;
 import griffon.annotations.core.Nonnull;
 import griffon.annotations.core.Nullable;
 import griffon.plugins.hibernate4.exceptions.RuntimeHibernate4Exception;
+import org.hibernate.criterion.DetachedCriteria;
+
+import java.util.Collection;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
 
 /**
  * @author Andres Almiray
@@ -34,8 +40,124 @@ public interface Hibernate4Handler {
     <R> R withHbm4Session(@Nonnull String sessionFactoryName, @Nonnull Hibernate4Callback<R> callback)
         throws RuntimeHibernate4Exception;
 
+    @Nullable
+    <R> R withHbm4Session(int queryTimeout, @Nullable Hibernate4Cancellation cancellation, @Nonnull Hibernate4Callback<R> callback)
+        throws RuntimeHibernate4Exception;
+
+    @Nullable
+    <R> R withHbm4Session(@Nonnull String sessionFactoryName, int queryTimeout, @Nullable Hibernate4Cancellation cancellation, @Nonnull Hibernate4Callback<R> callback)
+        throws RuntimeHibernate4Exception;
+
+    @Nullable
+    <R> R withHbm4NewSession(@Nonnull Hibernate4Callback<R> callback)
+        throws RuntimeHibernate4Exception;
+
+    @Nullable
+    <R> R withHbm4NewSession(@Nonnull String sessionFactoryName, @Nonnull Hibernate4Callback<R> callback)
+        throws RuntimeHibernate4Exception;
+
+    @Nonnull
+    <R> CompletableFuture<R> withHbm4SessionAsync(@Nonnull Hibernate4Callback<R> callback);
+
+    @Nonnull
+    <R> CompletableFuture<R> withHbm4SessionAsync(@Nonnull String sessionFactoryName, @Nonnull Hibernate4Callback<R> callback);
+
+    @Nonnull
+    <R> Hibernate4FanOutResult<R> withHbm4Sessions(@Nonnull Collection<String> sessionFactoryNames, long timeout, @Nonnull Hibernate4Callback<R> callback);
+
+    @Nonnull
+    <R> CompletableFuture<R> withHbm4GroupCommit(@Nonnull Hibernate4Callback<R> callback);
+
+    @Nonnull
+    <R> CompletableFuture<R> withHbm4GroupCommit(@Nonnull String sessionFactoryName, @Nonnull Hibernate4Callback<R> callback);
+
+    @Nullable
+    <R> R withHbm4ReadOnlySession(@Nonnull Hibernate4Callback<R> callback)
+        throws RuntimeHibernate4Exception;
+
+    @Nullable
+    <R> R withHbm4ReadOnlySession(@Nonnull String sessionFactoryName, @Nonnull Hibernate4Callback<R> callback)
+        throws RuntimeHibernate4Exception;
+
+    @Nullable
+    <R> R withHbm4NonTransactionalSession(@Nonnull Hibernate4Callback<R> callback)
+        throws RuntimeHibernate4Exception;
+
+    @Nullable
+    <R> R withHbm4NonTransactionalSession(@Nonnull String sessionFactoryName, @Nonnull Hibernate4Callback<R> callback)
+        throws RuntimeHibernate4Exception;
+
+    @Nullable
+    <R> R withHbm4StatelessSession(@Nonnull Hibernate4StatelessCallback<R> callback)
+        throws RuntimeHibernate4Exception;
+
+    @Nullable
+    <R> R withHbm4StatelessSession(@Nonnull String sessionFactoryName, @Nonnull Hibernate4StatelessCallback<R> callback)
+        throws RuntimeHibernate4Exception;
+
+    @Nonnull
+    Hibernate4BatchResult writeHbm4Batch(@Nonnull Iterator<?> entities, int batchSize)
+        throws RuntimeHibernate4Exception;
+
+    @Nonnull
+    Hibernate4BatchResult writeHbm4Batch(@Nonnull String sessionFactoryName, @Nonnull Iterator<?> entities, int batchSize)
+        throws RuntimeHibernate4Exception;
+
+    long withHbm4Scroll(@Nonnull String hql, @Nonnull Map<String, ?> parameters, int fetchSize, int clearEvery, @Nonnull Hibernate4ScrollCallback callback)
+        throws RuntimeHibernate4Exception;
+
+    long withHbm4Scroll(@Nonnull String sessionFactoryName, @Nonnull String hql, @Nonnull Map<String, ?> parameters, int fetchSize, int clearEvery, @Nonnull Hibernate4ScrollCallback callback)
+        throws RuntimeHibernate4Exception;
+
+    long withHbm4Scroll(@Nonnull DetachedCriteria criteria, int fetchSize, int clearEvery, @Nonnull Hibernate4ScrollCallback callback)
+        throws RuntimeHibernate4Exception;
+
+    long withHbm4Scroll(@Nonnull String sessionFactoryName, @Nonnull DetachedCriteria criteria, int fetchSize, int clearEvery, @Nonnull Hibernate4ScrollCallback callback)
+        throws RuntimeHibernate4Exception;
+
+    @Nonnull
+    <T> Hibernate4Page<T> withHbm4Page(@Nonnull DetachedCriteria criteria, @Nonnull String keyProperty, int pageSize, @Nullable Object continuation, boolean prefetch)
+        throws RuntimeHibernate4Exception;
+
+    @Nonnull
+    <T> Hibernate4Page<T> withHbm4Page(@Nonnull String sessionFactoryName, @Nonnull DetachedCriteria criteria, @Nonnull String keyProperty, int pageSize, @Nullable Object continuation, boolean prefetch)
+        throws RuntimeHibernate4Exception;
+
+    void beginHbm4Conversation(@Nonnull String conversationId)
+        throws RuntimeHibernate4Exception;
+
+    void beginHbm4Conversation(@Nonnull String sessionFactoryName, @Nonnull String conversationId)
+        throws RuntimeHibernate4Exception;
+
+    @Nullable
+    <R> R withHbm4Conversation(@Nonnull String conversationId, @Nonnull Hibernate4Callback<R> callback)
+        throws RuntimeHibernate4Exception;
+
+    @Nullable
+    <R> R withHbm4Conversation(@Nonnull String sessionFactoryName, @Nonnull String conversationId, @Nonnull Hibernate4Callback<R> callback)
+        throws RuntimeHibernate4Exception;
+
+    void commitHbm4Conversation(@Nonnull String conversationId)
+        throws RuntimeHibernate4Exception;
+
+    void commitHbm4Conversation(@Nonnull String sessionFactoryName, @Nonnull String conversationId)
+        throws RuntimeHibernate4Exception;
+
+    void discardHbm4Conversation(@Nonnull String conversationId);
+
+    void discardHbm4Conversation(@Nonnull String sessionFactoryName, @Nonnull String conversationId);
+
     void closeHbm4Session();
 
     void closeHbm4Session(@Nonnull String sessionFactoryName);
+
+    @Nonnull
+    CompletableFuture<Boolean> rebuildHbm4Session();
+
+    @Nonnull
+    CompletableFuture<Boolean> rebuildHbm4Session(@Nonnull String sessionFactoryName);
+
+    @Nonnull
+    CompletableFuture<Boolean> rebuildHbm4Session(@Nonnull String sessionFactoryName, long drainTimeout);
     // end::methods[]
 }
\ No newline at end of file
@@ -0,0 +1,80 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.hibernate4;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.function.Supplier;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * A page of entities read by {@code Hibernate4Handler.withHbm4Page}. The continuation is the key of the last
+ * entity of the page; pass it back to read the following page, or call {@link #next()}, which hands over the
+ * page prefetched in the background when prefetching was requested.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public final class Hibernate4Page<T> {
+    private final List<T> items;
+    private final Object continuation;
+    private final Supplier<Hibernate4Page<T>> nextPage;
+
+    public Hibernate4Page(@Nonnull List<T> items, @Nullable Object continuation, @Nullable Supplier<Hibernate4Page<T>> nextPage) {
+        this.items = Collections.unmodifiableList(new ArrayList<>(requireNonNull(items, "Argument 'items' must not be null")));
+        this.continuation = continuation;
+        this.nextPage = nextPage;
+    }
+
+    @Nonnull
+    public List<T> getItems() {
+        return items;
+    }
+
+    /**
+     * @return the key of the last entity of this page, {@code null} if this is the last page
+     */
+    @Nullable
+    public Object getContinuation() {
+        return continuation;
+    }
+
+    public boolean hasNext() {
+        return continuation != null;
+    }
+
+    @Nonnull
+    public Hibernate4Page<T> next() {
+        if (!hasNext() || nextPage == null) {
+            throw new NoSuchElementException("There are no more pages");
+        }
+        return nextPage.get();
+    }
+
+    @Override
+    public String toString() {
+        return "Hibernate4Page[size=" + items.size() + ", continuation=" + continuation + "]";
+    }
+}
@@ -0,0 +1,48 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.hibernate4.exceptions;
+
+import griffon.annotations.core.Nonnull;
+
+/**
+ * Thrown when a session could not be obtained because the session factory reached its
+ * concurrent session limit and no permit became available within the configured wait time.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class Hibernate4BulkheadException extends RuntimeHibernate4Exception {
+    private final int maxConcurrentSessions;
+    private final long maxWait;
+
+    public Hibernate4BulkheadException(@Nonnull String sessionFactoryName, int maxConcurrentSessions, long maxWait) {
+        super(sessionFactoryName, "Could not open a session on hibernate '" + sessionFactoryName + "' within " + maxWait +
+            " ms, all " + maxConcurrentSessions + " permits are in use");
+        this.maxConcurrentSessions = maxConcurrentSessions;
+        this.maxWait = maxWait;
+    }
+
+    public int getMaxConcurrentSessions() {
+        return maxConcurrentSessions;
+    }
+
+    public long getMaxWait() {
+        return maxWait;
+    }
+}
@@ -0,0 +1,41 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.hibernate4.exceptions;
+
+import griffon.annotations.core.Nonnull;
+
+/**
+ * Thrown when a conversation is used after it was committed, discarded or evicted, or before it was begun.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class Hibernate4ConversationException extends RuntimeHibernate4Exception {
+    private final String conversationId;
+
+    public Hibernate4ConversationException(@Nonnull String sessionFactoryName, @Nonnull String conversationId) {
+        super(sessionFactoryName, "Conversation '" + conversationId + "' on hibernate '" + sessionFactoryName + "' does not exist or has been evicted");
+        this.conversationId = conversationId;
+    }
+
+    @Nonnull
+    public String getConversationId() {
+        return conversationId;
+    }
+}
@@ -0,0 +1,69 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.hibernate4.exceptions;
+
+import griffon.annotations.core.Nonnull;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Thrown when one or more SessionFactories flagged with {@code connect_on_startup} could not be initialized.
+ * The cause is the failure of the first SessionFactory; the failures of the others are added as suppressed.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class Hibernate4StartupException extends RuntimeHibernate4Exception {
+    private final Map<String, Throwable> failures;
+
+    public Hibernate4StartupException(@Nonnull Map<String, Throwable> failures) {
+        super(firstName(failures), "Could not initialize hibernate " + failures.keySet() + " on startup");
+        this.failures = Collections.unmodifiableMap(new LinkedHashMap<>(failures));
+        boolean first = true;
+        for (Throwable failure : this.failures.values()) {
+            if (first) {
+                initCause(failure);
+                first = false;
+            } else {
+                addSuppressed(failure);
+            }
+        }
+    }
+
+    /**
+     * @return the failure of every SessionFactory that could not be initialized, keyed by name
+     */
+    @Nonnull
+    public Map<String, Throwable> getFailures() {
+        return failures;
+    }
+
+    @Nonnull
+    private static String firstName(@Nonnull Map<String, Throwable> failures) {
+        requireNonNull(failures, "Argument 'failures' must not be null");
+        if (failures.isEmpty()) {
+            throw new IllegalArgumentException("Argument 'failures' must not be empty");
+        }
+        return failures.keySet().iterator().next();
+    }
+}
@@ -34,6 +34,11 @@ public class RuntimeHibernate4Exception extends GriffonException {
         this.sessionFactoryName = sessionFactoryName;
     }
 
+    protected RuntimeHibernate4Exception(@Nonnull String sessionFactoryName, @Nonnull String message) {
+        super(requireNonBlank(message, "message"));
+        this.sessionFactoryName = requireNonBlank(sessionFactoryName, "sessionFactoryName");
+    }
+
     @Nonnull
     private static String format(@Nonnull String sessionFactoryName) {
         requireNonBlank(sessionFactoryName, "sessionFactoryName");
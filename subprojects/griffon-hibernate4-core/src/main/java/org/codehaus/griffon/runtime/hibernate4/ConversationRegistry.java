@@ -0,0 +1,290 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codehaus.griffon.runtime.hibernate4;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import org.codehaus.griffon.runtime.hibernate4.internal.NamedThreadFactory;
+import org.hibernate.FlushMode;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+
+/**
+ * Keeps the sessions of long running conversations on a session factory, keyed by conversation id.
+ * A conversation is evicted once it has been idle for {@code maxIdleTime} milliseconds, when it holds more than
+ * {@code maxEntities} entities after a unit of work, or when it is the least recently used one and
+ * {@code maxConversations} would be exceeded. Evicting a conversation discards its pending changes. A conversation
+ * is never evicted for being idle or least recently used while a unit of work runs on it.
+ * Idle conversations are swept by a background thread, started along with the first conversation.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class ConversationRegistry {
+    private static final Logger LOG = LoggerFactory.getLogger(ConversationRegistry.class);
+
+    private final String sessionFactoryName;
+    private final int maxConversations;
+    private final long maxIdleTime;
+    private final int maxEntities;
+    private final Map<String, Conversation> conversations = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong evictionCount = new AtomicLong(0);
+    private ScheduledExecutorService sweeper;
+
+    public ConversationRegistry(@Nonnull String sessionFactoryName, int maxConversations, long maxIdleTime, int maxEntities) {
+        this.sessionFactoryName = requireNonBlank(sessionFactoryName, "Argument 'sessionFactoryName' must not be blank");
+        if (maxConversations < 1) {
+            throw new IllegalArgumentException("Argument 'maxConversations' must be greater than zero");
+        }
+        this.maxConversations = maxConversations;
+        this.maxIdleTime = maxIdleTime;
+        this.maxEntities = maxEntities;
+    }
+
+    /**
+     * Opens the session of a new conversation. Its changes are flushed on commit only.
+     */
+    public void begin(@Nonnull String conversationId, @Nonnull SessionFactory sessionFactory) {
+        List<Conversation> evicted = new ArrayList<>();
+        synchronized (this) {
+            sweep(evicted);
+            if (conversations.containsKey(conversationId)) {
+                throw new IllegalStateException("Conversation '" + conversationId + "' on hibernate '" + sessionFactoryName + "' has already begun");
+            }
+            Session session = sessionFactory.openSession();
+            session.setFlushMode(FlushMode.MANUAL);
+            conversations.put(conversationId, new Conversation(conversationId, session));
+            if (sweeper == null && maxIdleTime > 0) {
+                long interval = Math.max(1L, maxIdleTime / 2);
+                sweeper = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("hibernate4-" + sessionFactoryName + "-conversations"));
+                sweeper.scheduleWithFixedDelay(this::sweep, interval, interval, TimeUnit.MILLISECONDS);
+            }
+
+            Iterator<Conversation> eldest = conversations.values().iterator();
+            while (conversations.size() > maxConversations && eldest.hasNext()) {
+                Conversation conversation = eldest.next();
+                if (conversation.isBusy()) {
+                    // evicted later, if need be, once its unit of work is over
+                    continue;
+                }
+                evicted.add(conversation);
+                eldest.remove();
+            }
+        }
+        close(evicted);
+    }
+
+    /**
+     * Takes the conversation for a unit of work, which keeps it from being evicted until it is given back with
+     * {@link #release(Conversation)}.
+     */
+    @Nullable
+    public Conversation get(@Nonnull String conversationId) {
+        List<Conversation> evicted = new ArrayList<>();
+        Conversation conversation;
+        synchronized (this) {
+            sweep(evicted);
+            conversation = conversations.get(conversationId);
+            if (conversation != null) {
+                conversation.lastAccess = System.currentTimeMillis();
+                conversation.busy++;
+            }
+        }
+        close(evicted);
+        return conversation;
+    }
+
+    /**
+     * Gives back a conversation taken with {@link #get(String)}; it is idle from now on.
+     */
+    public synchronized void release(@Nonnull Conversation conversation) {
+        conversation.lastAccess = System.currentTimeMillis();
+        conversation.busy--;
+    }
+
+    /**
+     * Removes the conversation; its session is left for the caller to flush or close.
+     */
+    @Nullable
+    public synchronized Conversation remove(@Nonnull String conversationId) {
+        return conversations.remove(conversationId);
+    }
+
+    /**
+     * Evicts the conversation if its persistence context grew beyond {@code maxEntities}.
+     * Must be called by the thread holding the conversation.
+     */
+    public void evictIfOversized(@Nonnull Conversation conversation) {
+        int entityCount = conversation.session.getStatistics().getEntityCount();
+        conversation.entityCount = entityCount;
+        if (maxEntities < 1 || entityCount <= maxEntities) {
+            return;
+        }
+        synchronized (this) {
+            if (!conversations.remove(conversation.id, conversation)) {
+                return;
+            }
+        }
+        LOG.warn("Evicting conversation '{}' on '{}', it holds more than {} entities", conversation.id, sessionFactoryName, maxEntities);
+        evictionCount.incrementAndGet();
+        conversation.close();
+    }
+
+    public void close() {
+        List<Conversation> closed;
+        synchronized (this) {
+            if (sweeper != null) {
+                sweeper.shutdownNow();
+                sweeper = null;
+            }
+            closed = new ArrayList<>(conversations.values());
+            conversations.clear();
+        }
+        for (Conversation conversation : closed) {
+            conversation.close();
+        }
+    }
+
+    public synchronized int getConversationCount() {
+        return conversations.size();
+    }
+
+    /**
+     * Sum of the entities held by the persistence contexts of all conversations, as of their last unit of work.
+     */
+    public int getEntityCount() {
+        List<Conversation> snapshot;
+        synchronized (this) {
+            snapshot = new ArrayList<>(conversations.values());
+        }
+        int count = 0;
+        for (Conversation conversation : snapshot) {
+            count += conversation.getEntityCount();
+        }
+        return count;
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    private void sweep() {
+        List<Conversation> evicted = new ArrayList<>();
+        synchronized (this) {
+            sweep(evicted);
+        }
+        try {
+            close(evicted);
+        } catch (RuntimeException e) {
+            // keep the sweeper running
+            LOG.warn("Could not close idle conversations on '{}'", sessionFactoryName, e);
+        }
+    }
+
+    private void sweep(@Nonnull List<Conversation> evicted) {
+        if (maxIdleTime < 1) {
+            return;
+        }
+        long idleSince = System.currentTimeMillis() - maxIdleTime;
+        Iterator<Conversation> iterator = conversations.values().iterator();
+        while (iterator.hasNext()) {
+            Conversation conversation = iterator.next();
+            // a long unit of work leaves lastAccess behind, it is idle only once released
+            if (conversation.isBusy() || conversation.lastAccess > idleSince) {
+                continue;
+            }
+            evicted.add(conversation);
+            iterator.remove();
+        }
+    }
+
+    private void close(@Nonnull List<Conversation> evicted) {
+        for (Conversation conversation : evicted) {
+            LOG.debug("Evicting conversation '{}' on '{}'", conversation.id, sessionFactoryName);
+            evictionCount.incrementAndGet();
+            conversation.close();
+        }
+    }
+
+    /**
+     * A conversation and its disconnected session. Threads lock the conversation while using its session,
+     * its statistics are read without the lock.
+     */
+    public static final class Conversation {
+        private final String id;
+        private final Session session;
+        private volatile long lastAccess = System.currentTimeMillis();
+        private volatile int entityCount;
+        // guarded by the registry
+        private int busy;
+        private boolean closed;
+
+        private Conversation(@Nonnull String id, @Nonnull Session session) {
+            this.id = id;
+            this.session = session;
+        }
+
+        @Nonnull
+        public String getId() {
+            return id;
+        }
+
+        @Nonnull
+        public Session getSession() {
+            return session;
+        }
+
+        public synchronized boolean isClosed() {
+            return closed;
+        }
+
+        private boolean isBusy() {
+            return busy > 0;
+        }
+
+        /**
+         * Number of entities held by the session after the last unit of work.
+         */
+        public int getEntityCount() {
+            return entityCount;
+        }
+
+        public synchronized void close() {
+            if (!closed) {
+                closed = true;
+                entityCount = 0;
+                session.close();
+            }
+        }
+    }
+}
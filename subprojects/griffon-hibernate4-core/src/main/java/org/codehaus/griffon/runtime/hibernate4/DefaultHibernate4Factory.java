@@ -18,6 +18,7 @@
 package org.codehaus.griffon.runtime.hibernate4;
 
 import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
 import griffon.core.GriffonApplication;
 import griffon.core.env.Metadata;
 import griffon.core.injection.Injector;
@@ -33,21 +34,49 @@ import griffon.plugins.hibernate4.events.Hibernate4DisconnectStartEvent;
 import griffon.plugins.monitor.MBeanManager;
 import griffon.util.CollectionUtils;
 import org.codehaus.griffon.runtime.core.storage.AbstractObjectFactory;
+import org.codehaus.griffon.runtime.hibernate4.internal.ConfigurationCache;
+import org.codehaus.griffon.runtime.hibernate4.internal.DialectCache;
+import org.codehaus.griffon.runtime.hibernate4.internal.DialectVerifyingDataSource;
 import org.codehaus.griffon.runtime.hibernate4.internal.HibernateConfigurationHelper;
+import org.codehaus.griffon.runtime.hibernate4.internal.MappingIndex;
+import org.codehaus.griffon.runtime.hibernate4.internal.NamedThreadFactory;
+import org.codehaus.griffon.runtime.hibernate4.internal.SchemaManager;
+import org.codehaus.griffon.runtime.hibernate4.internal.exceptions.StaleDialectException;
 import org.codehaus.griffon.runtime.hibernate4.monitor.SessionFactoryMonitor;
+import org.hibernate.HibernateException;
+import org.hibernate.PessimisticLockException;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
 import org.hibernate.cfg.Configuration;
+import org.hibernate.cfg.Environment;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.exception.LockAcquisitionException;
+import org.hibernate.exception.LockTimeoutException;
+import org.hibernate.tool.hbm2ddl.SchemaExport;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
 import javax.inject.Named;
 import javax.sql.DataSource;
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import static griffon.util.ConfigUtils.getConfigValue;
 import static griffon.util.ConfigUtils.getConfigValueAsBoolean;
+import static griffon.util.ConfigUtils.getConfigValueAsDouble;
+import static griffon.util.ConfigUtils.getConfigValueAsInt;
+import static griffon.util.ConfigUtils.getConfigValueAsLong;
+import static griffon.util.ConfigUtils.getConfigValueAsString;
 import static griffon.util.GriffonNameUtils.requireNonBlank;
 import static java.util.Objects.requireNonNull;
 
@@ -55,8 +84,12 @@ import static java.util.Objects.requireNonNull;
  * @author Andres Almiray
  */
 public class DefaultHibernate4Factory extends AbstractObjectFactory<SessionFactory> implements Hibernate4Factory {
+    private static final Logger LOG = LoggerFactory.getLogger(DefaultHibernate4Factory.class);
     private static final String ERROR_SESSION_FACTORY_NAME_BLANK = "Argument 'sessionFactoryName' must not be blank";
+    private static final String HBM2DDL_AUTO = "hibernate.hbm2ddl.auto";
     private final Set<String> sessionFactoryNames = new LinkedHashSet<>();
+    private DialectCache dialectCache;
+    private MappingIndex mappingIndex;
 
     @Inject
     private DataSourceFactory dataSourceFactory;
@@ -112,13 +145,46 @@ public class DefaultHibernate4Factory extends AbstractObjectFactory<SessionFacto
     @Nonnull
     @Override
     public SessionFactory create(@Nonnull String name) {
+        return create(name, null);
+    }
+
+    /**
+     * @param current the SessionFactory being replaced, if any. Its schema is left as it is, and the replacement
+     *                takes over dropping it when {@code schema} is {@code create-drop}.
+     */
+    @Nonnull
+    private SessionFactory create(@Nonnull String name, @Nullable SessionFactory current) {
         Map<String, Object> config = narrowConfig(name);
         event(Hibernate4ConnectStartEvent.of(name, config));
 
         Configuration configuration = createConfiguration(config, name);
-        createSchema(name, config, configuration);
+        boolean dropSchema;
+        SessionFactory builtSessionFactory;
+        try {
+            dropSchema = applySchema(name, config, configuration, current);
+            builtSessionFactory = buildSessionFactory(configuration);
+        } catch (RuntimeException e) {
+            if (!isStaleDialect(e)) {
+                throw e;
+            }
+            LOG.info("Detecting the dialect of hibernate '{}' again", name);
+            configuration = createConfiguration(config, name);
+            dropSchema = applySchema(name, config, configuration, current);
+            builtSessionFactory = buildSessionFactory(configuration);
+        }
 
-        SessionFactory sessionFactory = new RecordingSessionFactory(configuration.buildSessionFactory());
+        RecordingSessionFactory recordingSessionFactory = new RecordingSessionFactory(builtSessionFactory);
+        if (dropSchema) {
+            recordingSessionFactory.setSchemaExport(new SchemaExport(((SessionFactoryImplementor) builtSessionFactory).getServiceRegistry(), configuration));
+        }
+        recordingSessionFactory.setAsyncExecutor(createAsyncExecutor(name, config));
+        recordingSessionFactory.setBulkhead(createBulkhead(name, config));
+        recordingSessionFactory.setRetryPolicy(createRetryPolicy(name, config));
+        recordingSessionFactory.setConversations(createConversationRegistry(name, config));
+        recordingSessionFactory.setJoinNestedSessions(getConfigValueAsBoolean(config, "joinNestedSessions", true));
+        recordingSessionFactory.setQueryTimeout(getConfigValueAsInt(config, "queryTimeout", 0));
+        recordingSessionFactory.setReplicas(createReplicaRouter(name, config));
+        SessionFactory sessionFactory = recordingSessionFactory;
 
         if (getConfigValueAsBoolean(config, "jmx", true)) {
             sessionFactory = new JMXAwareSessionFactory(sessionFactory);
@@ -137,10 +203,31 @@ public class DefaultHibernate4Factory extends AbstractObjectFactory<SessionFacto
             }
         }
 
+        warmUp(name, config, configuration, builtSessionFactory, recordingSessionFactory);
         event(Hibernate4ConnectEndEvent.of(name, config, sessionFactory));
         return sessionFactory;
     }
 
+    /**
+     * Runs the steps of the {@code warmup} block, if any, recording how long each one took.
+     */
+    protected void warmUp(@Nonnull String name, @Nonnull Map<String, Object> config, @Nonnull Configuration configuration,
+                          @Nonnull SessionFactory builtSessionFactory, @Nonnull RecordingSessionFactory sessionFactory) {
+        Map<String, Object> warmup = getConfigValue(config, "warmup", Collections.<String, Object>emptyMap());
+        if (warmup.isEmpty()) {
+            return;
+        }
+
+        SessionFactoryWarmer warmer = new SessionFactoryWarmer(name,
+            getConfigValueAsInt(warmup, "connections", 0),
+            getConfigValueAsBoolean(warmup, "namedQueries", true),
+            getConfigValue(warmup, "queries", Collections.<String>emptyList()),
+            getConfigValue(warmup, "cacheRegions", Collections.<String>emptyList()));
+        Set<String> namedQueryNames = new LinkedHashSet<>(configuration.getNamedQueries().keySet());
+        namedQueryNames.addAll(configuration.getNamedSQLQueries().keySet());
+        sessionFactory.setWarmupTimes(warmer.warmUp(getDataSource(name), sessionFactory, (SessionFactoryImplementor) builtSessionFactory, namedQueryNames));
+    }
+
     @Override
     public void destroy(@Nonnull String name, @Nonnull SessionFactory instance) {
         requireNonNull(instance, "Argument 'instance' must not be null");
@@ -159,7 +246,11 @@ public class DefaultHibernate4Factory extends AbstractObjectFactory<SessionFacto
             }
         }
 
+        closeConversations(instance);
+        closeReplicas(instance, true);
+        dropSchema(instance);
         closeDataSource(name);
+        shutdownAsyncExecutor(instance);
 
         if (getConfigValueAsBoolean(config, "jmx", true)) {
             unregisterMBeans((JMXAwareSessionFactory) instance);
@@ -168,6 +259,48 @@ public class DefaultHibernate4Factory extends AbstractObjectFactory<SessionFacto
         event(Hibernate4DisconnectEndEvent.of(name, config));
     }
 
+    @Nonnull
+    @Override
+    public SessionFactory recreate(@Nonnull String name, @Nonnull SessionFactory current) {
+        requireNonNull(current, "Argument 'current' must not be null");
+        // the replacement registers its MBeans under the same names
+        if (current instanceof JMXAwareSessionFactory) {
+            unregisterMBeans((JMXAwareSessionFactory) current);
+        }
+        try {
+            SessionFactory replacement = create(name, current);
+            RecordingSessionFactory recordingSessionFactory = RecordingSessionFactory.unwrap(current);
+            if (recordingSessionFactory != null) {
+                // only the last SessionFactory of this name drops the schema
+                recordingSessionFactory.setSchemaExport(null);
+            }
+            return replacement;
+        } catch (RuntimeException | Error e) {
+            if (current instanceof JMXAwareSessionFactory) {
+                registerMBeans(name, (JMXAwareSessionFactory) current);
+            }
+            throw e;
+        }
+    }
+
+    @Override
+    public void retire(@Nonnull String name, @Nonnull SessionFactory instance) {
+        requireNonNull(instance, "Argument 'instance' must not be null");
+        // the name stays connected, hence no bootstrap destroy nor disconnect events
+        closeConversations(instance);
+        closeReplicas(instance, false);
+        shutdownAsyncExecutor(instance);
+        if (instance instanceof JMXAwareSessionFactory) {
+            unregisterMBeans((JMXAwareSessionFactory) instance);
+        }
+        // closes every decorated SessionFactory down to the one built by Hibernate
+        try {
+            instance.close();
+        } catch (HibernateException e) {
+            LOG.warn("Could not close retired hibernate '{}'", name, e);
+        }
+    }
+
     private void registerMBeans(@Nonnull String name, @Nonnull JMXAwareSessionFactory sessionFactory) {
         RecordingSessionFactory recordingSessionFactory = (RecordingSessionFactory) sessionFactory.getDelegate();
         SessionFactoryMonitor sessionFactoryMonitor = new SessionFactoryMonitor(metadata, recordingSessionFactory, name);
@@ -181,11 +314,66 @@ public class DefaultHibernate4Factory extends AbstractObjectFactory<SessionFacto
         sessionFactory.clearObjectNames();
     }
 
+    /**
+     * @return whether Hibernate should drop the schema of the given configuration, which is then left to destroy()
+     */
+    private boolean applySchema(@Nonnull String name, @Nonnull Map<String, Object> config, @Nonnull Configuration configuration, @Nullable SessionFactory current) {
+        boolean dropSchema;
+        if (current == null) {
+            createSchema(name, config, configuration);
+            dropSchema = "create-drop".equals(configuration.getProperty(HBM2DDL_AUTO));
+        } else {
+            // the live SessionFactory keeps using the schema, it must not be created, dropped nor updated under it
+            RecordingSessionFactory currentRecordingSessionFactory = RecordingSessionFactory.unwrap(current);
+            dropSchema = currentRecordingSessionFactory != null && currentRecordingSessionFactory.getSchemaExport() != null;
+            configuration.setProperty(HBM2DDL_AUTO, "none");
+        }
+        if (dropSchema) {
+            // dropped by destroy() once the last SessionFactory of this name is gone, not by Hibernate when any
+            // of them is closed, as closing one retired by a rebuild would take the tables of its replacement
+            configuration.setProperty(HBM2DDL_AUTO, "create");
+        }
+        return dropSchema;
+    }
+
+    /**
+     * A dialect persisted by an earlier launch is checked on the first connection Hibernate opens while building
+     * the SessionFactory; once built, a stale dialect is left for the next launch to detect again.
+     */
+    @Nonnull
+    private static SessionFactory buildSessionFactory(@Nonnull Configuration configuration) {
+        SessionFactory sessionFactory = configuration.buildSessionFactory();
+        Object dataSource = configuration.getProperties().get(Environment.DATASOURCE);
+        if (dataSource instanceof DialectVerifyingDataSource) {
+            ((DialectVerifyingDataSource) dataSource).setStrict(false);
+        }
+        return sessionFactory;
+    }
+
+    private static boolean isStaleDialect(@Nonnull Throwable throwable) {
+        for (Throwable t = throwable; t != null; t = t.getCause()) {
+            if (t instanceof StaleDialectException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
     @Nonnull
-    @SuppressWarnings("ConstantConditions")
     protected Configuration createConfiguration(@Nonnull Map<String, Object> config, @Nonnull String dataSourceName) {
+        return createConfiguration(config, dataSourceName, dataSourceName);
+    }
+
+    @Nonnull
+    @SuppressWarnings("ConstantConditions")
+    protected Configuration createConfiguration(@Nonnull Map<String, Object> config, @Nonnull String sessionFactoryName, @Nonnull String dataSourceName) {
         DataSource dataSource = getDataSource(dataSourceName);
         HibernateConfigurationHelper configHelper = new HibernateConfigurationHelper(getApplication(), config, dataSourceName, dataSource);
+        configHelper.setSessionFactoryName(sessionFactoryName);
+        configHelper.setConfigurationCache(createConfigurationCache(config));
+        configHelper.setMappingIndex(getMappingIndex());
+        configHelper.setDialectCache(getDialectCache());
+        configHelper.setJdbcUrl(getConfigValueAsString(dataSourceFactory.getConfigurationFor(dataSourceName), "url", null));
         Configuration configuration = configHelper.buildConfiguration();
         getApplication().getEventRouter().publishEvent(Hibernate4ConfigurationAvailableEvent.of(CollectionUtils.<String, Object>map()
             .e("configuration", configuration)
@@ -194,8 +382,233 @@ public class DefaultHibernate4Factory extends AbstractObjectFactory<SessionFacto
         return configuration;
     }
 
+    /**
+     * Keeps parsed mappings on disk between launches when the {@code configurationCache} block is enabled.
+     */
+    @Nullable
+    protected ConfigurationCache createConfigurationCache(@Nonnull Map<String, Object> config) {
+        Map<String, Object> cache = getConfigValue(config, "configurationCache", Collections.<String, Object>emptyMap());
+        if (!getConfigValueAsBoolean(cache, "enabled", false)) {
+            return null;
+        }
+
+        return new ConfigurationCache(new File(getConfigValueAsString(cache, "directory", getDefaultCacheDirectory())),
+            getApplication().getApplicationClassLoader().get(),
+            getConfigValue(cache, "allowedPackages", Collections.<String>emptyList()));
+    }
+
+    /**
+     * Dialects are remembered for the lifetime of the application, and across launches when the top level
+     * {@code dialectCache} block is persistent.
+     */
+    @Nonnull
+    protected synchronized DialectCache getDialectCache() {
+        if (dialectCache == null) {
+            griffon.core.Configuration configuration = getConfiguration();
+            if (configuration.getAsBoolean("dialectCache.persistent", false)) {
+                File directory = new File(configuration.getAsString("dialectCache.directory", getDefaultCacheDirectory()));
+                dialectCache = new DialectCache(new File(directory, "dialects.properties"));
+            } else {
+                dialectCache = new DialectCache();
+            }
+        }
+        return dialectCache;
+    }
+
+    /**
+     * Mappings found on the classpath are looked up once and shared by every session factory.
+     */
+    @Nonnull
+    protected synchronized MappingIndex getMappingIndex() {
+        if (mappingIndex == null) {
+            mappingIndex = MappingIndex.load(getApplication().getApplicationClassLoader().get());
+        }
+        return mappingIndex;
+    }
+
+    /**
+     * Cached files are read back on the next launch, they must not live where other users may write.
+     */
+    @Nonnull
+    private String getDefaultCacheDirectory() {
+        return new File(System.getProperty("user.home"), ".griffon" + File.separator + "hibernate4" + File.separator + metadata.getApplicationName()).getPath();
+    }
+
+    @Nonnull
+    protected ThreadPoolExecutor createAsyncExecutor(@Nonnull String sessionFactoryName, @Nonnull Map<String, Object> config) {
+        Map<String, Object> async = getConfigValue(config, "async", Collections.<String, Object>emptyMap());
+        int poolSize = getConfigValueAsInt(async, "poolSize", 2);
+        int queueDepth = getConfigValueAsInt(async, "queueDepth", 100);
+
+        // a bounded queue plus AbortPolicy rejects work once the pool is saturated instead of queueing forever
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(poolSize, poolSize, 60L, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(queueDepth),
+            new NamedThreadFactory("hibernate4-" + sessionFactoryName + "-async"),
+            new ThreadPoolExecutor.AbortPolicy());
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    @Nullable
+    protected SessionFactoryBulkhead createBulkhead(@Nonnull String sessionFactoryName, @Nonnull Map<String, Object> config) {
+        Map<String, Object> bulkhead = getConfigValue(config, "bulkhead", Collections.<String, Object>emptyMap());
+        int maxConcurrentSessions = getConfigValueAsInt(bulkhead, "maxConcurrentSessions", 0);
+        if (maxConcurrentSessions < 1) {
+            return null;
+        }
+        return new SessionFactoryBulkhead(sessionFactoryName, maxConcurrentSessions, getConfigValueAsLong(bulkhead, "maxWait", 0L));
+    }
+
+    @Nullable
+    @SuppressWarnings("unchecked")
+    protected RetryPolicy createRetryPolicy(@Nonnull String sessionFactoryName, @Nonnull Map<String, Object> config) {
+        Map<String, Object> retry = getConfigValue(config, "retry", Collections.<String, Object>emptyMap());
+        int maxAttempts = getConfigValueAsInt(retry, "maxAttempts", 1);
+        if (maxAttempts < 2) {
+            return null;
+        }
+
+        List<Class<? extends Throwable>> retryableExceptions = new ArrayList<>();
+        Collection<Object> retryOn = getConfigValue(retry, "retryOn", Collections.emptyList());
+        for (Object type : retryOn) {
+            Class<?> exceptionClass = type instanceof Class ? (Class<?>) type : loadClass(String.valueOf(type));
+            if (!Throwable.class.isAssignableFrom(exceptionClass)) {
+                throw new IllegalArgumentException("Cannot retry on " + exceptionClass.getName() + " as it is not a Throwable");
+            }
+            retryableExceptions.add((Class<? extends Throwable>) exceptionClass);
+        }
+        if (retryableExceptions.isEmpty()) {
+            retryableExceptions.add(LockAcquisitionException.class);
+            retryableExceptions.add(LockTimeoutException.class);
+            retryableExceptions.add(PessimisticLockException.class);
+        }
+
+        return new RetryPolicy(sessionFactoryName, maxAttempts,
+            getConfigValueAsLong(retry, "initialBackoff", 50L),
+            getConfigValueAsLong(retry, "maxBackoff", 1000L),
+            getConfigValueAsDouble(retry, "multiplier", 2d),
+            getConfigValueAsDouble(retry, "jitter", 0.5d),
+            retryableExceptions);
+    }
+
+    @Nonnull
+    protected ConversationRegistry createConversationRegistry(@Nonnull String sessionFactoryName, @Nonnull Map<String, Object> config) {
+        Map<String, Object> conversations = getConfigValue(config, "conversations", Collections.<String, Object>emptyMap());
+        return new ConversationRegistry(sessionFactoryName,
+            getConfigValueAsInt(conversations, "maxConversations", 16),
+            getConfigValueAsLong(conversations, "maxIdleTime", 1800000L),
+            getConfigValueAsInt(conversations, "maxEntities", 0));
+    }
+
+    /**
+     * Builds a session factory per read replica. Replicas share the mappings and settings of the primary
+     * but connect to the datasource named after them; their schema is never touched.
+     */
+    @Nullable
+    protected ReplicaRouter createReplicaRouter(@Nonnull String sessionFactoryName, @Nonnull Map<String, Object> config) {
+        Map<String, Object> replicas = getConfigValue(config, "replicas", Collections.<String, Object>emptyMap());
+        Collection<Object> names = getConfigValue(replicas, "names", Collections.emptyList());
+        if (names.isEmpty()) {
+            return null;
+        }
+
+        List<ReplicaRouter.Replica> replicaList = new ArrayList<>();
+        for (Object replicaName : names) {
+            String dataSourceName = String.valueOf(replicaName);
+            SessionFactory built;
+            try {
+                built = buildSessionFactory(createConfiguration(config, sessionFactoryName, dataSourceName));
+            } catch (RuntimeException e) {
+                if (!isStaleDialect(e)) {
+                    throw e;
+                }
+                LOG.info("Detecting the dialect of hibernate replica '{}' again", dataSourceName);
+                built = buildSessionFactory(createConfiguration(config, sessionFactoryName, dataSourceName));
+            }
+            RecordingSessionFactory replica = new RecordingSessionFactory(built);
+            replica.setRetryPolicy(createRetryPolicy(dataSourceName, config));
+            replica.setQueryTimeout(getConfigValueAsInt(config, "queryTimeout", 0));
+            replicaList.add(new ReplicaRouter.Replica(dataSourceName, replica));
+        }
+
+        ReplicaRouter router = new ReplicaRouter(sessionFactoryName, replicaList,
+            parseReplicaStrategy(getConfigValue(replicas, "strategy", "roundRobin")));
+        router.setRetryInterval(getConfigValueAsLong(replicas, "retryInterval", 30000L));
+        router.startHealthChecks(getConfigValueAsLong(replicas, "healthCheckInterval", 30000L));
+        return router;
+    }
+
+    @Nonnull
+    private static ReplicaRouter.Strategy parseReplicaStrategy(@Nonnull String strategy) {
+        switch (strategy.replace("-", "").replace("_", "").toLowerCase()) {
+            case "roundrobin":
+                return ReplicaRouter.Strategy.ROUND_ROBIN;
+            case "leastbusy":
+                return ReplicaRouter.Strategy.LEAST_BUSY;
+            default:
+                throw new IllegalArgumentException("Unknown replica strategy '" + strategy + "', expected one of roundRobin, leastBusy");
+        }
+    }
+
+    @Nonnull
+    private Class<?> loadClass(@Nonnull String className) {
+        try {
+            return getApplication().getApplicationClassLoader().get().loadClass(className);
+        } catch (ClassNotFoundException e) {
+            throw new IllegalArgumentException("Cannot load class " + className, e);
+        }
+    }
+
+    private void closeConversations(@Nonnull SessionFactory sessionFactory) {
+        RecordingSessionFactory recordingSessionFactory = RecordingSessionFactory.unwrap(sessionFactory);
+        if (recordingSessionFactory != null && recordingSessionFactory.getConversations() != null) {
+            recordingSessionFactory.getConversations().close();
+        }
+    }
+
+    private void closeReplicas(@Nonnull SessionFactory sessionFactory, boolean closeDataSources) {
+        RecordingSessionFactory recordingSessionFactory = RecordingSessionFactory.unwrap(sessionFactory);
+        ReplicaRouter replicas = recordingSessionFactory != null ? recordingSessionFactory.getReplicas() : null;
+        if (replicas != null) {
+            replicas.close();
+            if (closeDataSources) {
+                for (ReplicaRouter.Replica replica : replicas.getReplicas()) {
+                    closeDataSource(replica.getName());
+                }
+            }
+            recordingSessionFactory.setReplicas(null);
+        }
+    }
+
+    private void shutdownAsyncExecutor(@Nonnull SessionFactory sessionFactory) {
+        RecordingSessionFactory recordingSessionFactory = RecordingSessionFactory.unwrap(sessionFactory);
+        if (recordingSessionFactory != null && recordingSessionFactory.getAsyncExecutor() != null) {
+            recordingSessionFactory.getAsyncExecutor().shutdown();
+            recordingSessionFactory.setAsyncExecutor(null);
+        }
+    }
+
     protected void createSchema(@Nonnull String dataSourceName, @Nonnull Map<String, Object> config, @Nonnull Configuration configuration) {
-        configuration.setProperty("hibernate.hbm2ddl.auto", getConfigValue(config, "schema", "create-drop"));
+        String schema = getConfigValue(config, "schema", "create-drop");
+        Map<String, Object> schemaManager = getConfigValue(config, "schemaManager", Collections.<String, Object>emptyMap());
+        if ("update".equals(schema) && getConfigValueAsBoolean(schemaManager, "enabled", false)) {
+            SchemaManager manager = new SchemaManager(dataSourceName, getConfigValueAsString(schemaManager, "table", SchemaManager.DEFAULT_TABLE));
+            // the datasource Hibernate is given, which checks a persisted dialect before any statement runs
+            DataSource dataSource = (DataSource) configuration.getProperties().get(Environment.DATASOURCE);
+            if (manager.update(dataSource, configuration) != SchemaManager.Outcome.FAILED) {
+                // already up to date, Hibernate need not look at the schema again
+                schema = "none";
+            }
+        }
+        configuration.setProperty(HBM2DDL_AUTO, schema);
+    }
+
+    private void dropSchema(@Nonnull SessionFactory sessionFactory) {
+        RecordingSessionFactory recordingSessionFactory = RecordingSessionFactory.unwrap(sessionFactory);
+        if (recordingSessionFactory != null && recordingSessionFactory.getSchemaExport() != null) {
+            recordingSessionFactory.getSchemaExport().drop(false, true);
+            recordingSessionFactory.setSchemaExport(null);
+        }
     }
 
     protected void closeDataSource(@Nonnull String dataSourceName) {
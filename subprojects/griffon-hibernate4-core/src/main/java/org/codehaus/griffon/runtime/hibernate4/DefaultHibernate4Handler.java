@@ -19,18 +19,71 @@ package org.codehaus.griffon.runtime.hibernate4;
 
 import griffon.annotations.core.Nonnull;
 import griffon.annotations.core.Nullable;
+import griffon.plugins.hibernate4.Hibernate4BatchResult;
 import griffon.plugins.hibernate4.Hibernate4Callback;
+import griffon.plugins.hibernate4.Hibernate4Cancellation;
 import griffon.plugins.hibernate4.Hibernate4Factory;
+import griffon.plugins.hibernate4.Hibernate4FanOutResult;
 import griffon.plugins.hibernate4.Hibernate4Handler;
+import griffon.plugins.hibernate4.Hibernate4Page;
+import griffon.plugins.hibernate4.Hibernate4ScrollCallback;
+import griffon.plugins.hibernate4.Hibernate4StatelessCallback;
 import griffon.plugins.hibernate4.Hibernate4Storage;
+import griffon.plugins.hibernate4.exceptions.Hibernate4ConversationException;
 import griffon.plugins.hibernate4.exceptions.RuntimeHibernate4Exception;
+import org.codehaus.griffon.runtime.hibernate4.internal.NamedThreadFactory;
+import org.hibernate.CacheMode;
+import org.hibernate.Criteria;
+import org.hibernate.FlushMode;
+import org.hibernate.Query;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+import org.hibernate.criterion.DetachedCriteria;
+import org.hibernate.criterion.Order;
+import org.hibernate.criterion.Restrictions;
+import org.hibernate.engine.spi.SessionImplementor;
+import org.hibernate.exception.JDBCConnectionException;
+import org.hibernate.internal.CriteriaImpl;
+import org.hibernate.internal.util.SerializationHelper;
+import org.hibernate.metadata.ClassMetadata;
+import org.hibernate.proxy.HibernateProxyHelper;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.inject.Inject;
+import java.sql.SQLNonTransientConnectionException;
+import java.sql.SQLTransientConnectionException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeoutException;
+import java.util.function.Supplier;
 
+import static griffon.util.ConfigUtils.getConfigValue;
+import static griffon.util.ConfigUtils.getConfigValueAsInt;
+import static griffon.util.ConfigUtils.getConfigValueAsLong;
 import static griffon.util.GriffonNameUtils.requireNonBlank;
 import static java.util.Objects.requireNonNull;
 
@@ -41,9 +94,35 @@ public class DefaultHibernate4Handler implements Hibernate4Handler {
     private static final Logger LOG = LoggerFactory.getLogger(DefaultHibernate4Handler.class);
     private static final String ERROR_SESSION_FACTORY_NAME_BLANK = "Argument 'sessionFactoryName' must not be blank";
     private static final String ERROR_CALLBACK_NULL = "Argument 'callback' must not be null";
+    private static final String ERROR_CONVERSATION_ID_BLANK = "Argument 'conversationId' must not be blank";
+    private static final String ERROR_ENTITIES_NULL = "Argument 'entities' must not be null";
+    private static final String ERROR_BATCH_SIZE_INVALID = "Argument 'batchSize' must be greater than zero";
+    private static final String ERROR_HQL_BLANK = "Argument 'hql' must not be blank";
+    private static final String ERROR_PARAMETERS_NULL = "Argument 'parameters' must not be null";
+    private static final String ERROR_CRITERIA_NULL = "Argument 'criteria' must not be null";
+    private static final String ERROR_FETCH_SIZE_INVALID = "Argument 'fetchSize' must be greater than zero";
+    private static final String ERROR_CLEAR_EVERY_INVALID = "Argument 'clearEvery' must not be negative";
+    private static final String ERROR_KEY_PROPERTY_BLANK = "Argument 'keyProperty' must not be blank";
+    private static final String ERROR_PAGE_SIZE_INVALID = "Argument 'pageSize' must be greater than zero";
+    private static final String ERROR_CRITERIA_ORDERED = "Argument 'criteria' must not be ordered, pages are ordered by 'keyProperty'";
+    private static final String ERROR_SESSION_FACTORY_NAMES_NULL = "Argument 'sessionFactoryNames' must not be null";
+    private static final String ERROR_TIMEOUT_INVALID = "Argument 'timeout' must not be negative";
+    private static final String ERROR_DRAIN_TIMEOUT_INVALID = "Argument 'drainTimeout' must not be negative";
+    private static final int DEFAULT_QUERY_TIMEOUT = -1;
+    private static final long DEFAULT_DRAIN_TIMEOUT = 30000L;
+    private static final long DRAIN_POLL_INTERVAL = 50L;
+    private static final int DEFAULT_MAX_QUEUED_WRITES = 10000;
+    private static final int BOOTSTRAP_THREADS = Math.max(2, Runtime.getRuntime().availableProcessors());
+    private static final int BOOTSTRAP_QUEUE_CAPACITY = 256;
 
     private final Hibernate4Factory hibernate4Factory;
     private final Hibernate4Storage hibernate4Storage;
+    private final ConcurrentMap<String, FutureTask<SessionFactory>> pendingSessionFactories = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Thread> sessionFactoryBuilders = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, CompletableFuture<Boolean>> pendingRebuilds = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor bootstrapExecutor = newBootstrapExecutor();
+    private final ThreadLocal<Map<String, BoundSession>> boundSessions = new ThreadLocal<>();
+    private final ConcurrentMap<String, GroupCommitter> groupCommitters = new ConcurrentHashMap<>();
 
     @Inject
     public DefaultHibernate4Handler(@Nonnull Hibernate4Factory hibernate4Factory, @Nonnull Hibernate4Storage hibernate4Storage) {
@@ -51,6 +130,25 @@ public class DefaultHibernate4Handler implements Hibernate4Handler {
         this.hibernate4Storage = requireNonNull(hibernate4Storage, "Argument 'hibernate4Storage' must not be null");
     }
 
+    /**
+     * Builds and rebuilds SessionFactories off the calling thread. Both the threads and the queue are bounded,
+     * a task that does not fit is rejected rather than piling up.
+     */
+    @Nonnull
+    private static ThreadPoolExecutor newBootstrapExecutor() {
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(BOOTSTRAP_THREADS, BOOTSTRAP_THREADS, 60L, TimeUnit.SECONDS,
+            new ArrayBlockingQueue<>(BOOTSTRAP_QUEUE_CAPACITY), new NamedThreadFactory("hibernate4-bootstrap"));
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Stops the threads that build SessionFactories in the background. Called once all SessionFactories are closed.
+     */
+    void shutdown() {
+        bootstrapExecutor.shutdownNow();
+    }
+
     @Nullable
     @Override
     public <R> R withHbm4Session(@Nonnull Hibernate4Callback<R> callback) throws RuntimeHibernate4Exception {
@@ -59,33 +157,1018 @@ public class DefaultHibernate4Handler implements Hibernate4Handler {
 
     @Nullable
     @Override
-    @SuppressWarnings("ThrowFromFinallyBlock")
     public <R> R withHbm4Session(@Nonnull String sessionFactoryName, @Nonnull Hibernate4Callback<R> callback) throws RuntimeHibernate4Exception {
+        return doWithSession(sessionFactoryName, callback, false, true);
+    }
+
+    @Nullable
+    @Override
+    public <R> R withHbm4Session(int queryTimeout, @Nullable Hibernate4Cancellation cancellation, @Nonnull Hibernate4Callback<R> callback) throws RuntimeHibernate4Exception {
+        return withHbm4Session(DefaultHibernate4Factory.KEY_DEFAULT, queryTimeout, cancellation, callback);
+    }
+
+    /**
+     * Runs the callback in a session of its own, as its query timeout and cancellation must not leak into
+     * an outer session. A negative timeout stands for the session factory's default.
+     */
+    @Nullable
+    @Override
+    public <R> R withHbm4Session(@Nonnull final String sessionFactoryName, final int queryTimeout, @Nullable final Hibernate4Cancellation cancellation, @Nonnull final Hibernate4Callback<R> callback) throws RuntimeHibernate4Exception {
         requireNonBlank(sessionFactoryName, ERROR_SESSION_FACTORY_NAME_BLANK);
         requireNonNull(callback, ERROR_CALLBACK_NULL);
 
-        SessionFactory sf = getSessionFactory(sessionFactoryName);
+        final SessionFactory sf = getSessionFactory(sessionFactoryName);
+        return execute(sessionFactoryName, sf, () -> doWithSession(sessionFactoryName, sf, callback, false, queryTimeout, cancellation));
+    }
+
+    @Nullable
+    @Override
+    public <R> R withHbm4NewSession(@Nonnull Hibernate4Callback<R> callback) throws RuntimeHibernate4Exception {
+        return withHbm4NewSession(DefaultHibernate4Factory.KEY_DEFAULT, callback);
+    }
+
+    @Nullable
+    @Override
+    public <R> R withHbm4NewSession(@Nonnull String sessionFactoryName, @Nonnull Hibernate4Callback<R> callback) throws RuntimeHibernate4Exception {
+        return doWithSession(sessionFactoryName, callback, false, false);
+    }
+
+    @Nonnull
+    @Override
+    public <R> CompletableFuture<R> withHbm4SessionAsync(@Nonnull Hibernate4Callback<R> callback) {
+        return withHbm4SessionAsync(DefaultHibernate4Factory.KEY_DEFAULT, callback);
+    }
+
+    @Nonnull
+    @Override
+    public <R> CompletableFuture<R> withHbm4SessionAsync(@Nonnull final String sessionFactoryName, @Nonnull final Hibernate4Callback<R> callback) {
+        requireNonBlank(sessionFactoryName, ERROR_SESSION_FACTORY_NAME_BLANK);
+        requireNonNull(callback, ERROR_CALLBACK_NULL);
+
+        return submitAsync(sessionFactoryName, () -> withHbm4Session(sessionFactoryName, callback));
+    }
+
+    @Nonnull
+    private <R> CompletableFuture<R> submitAsync(@Nonnull final String sessionFactoryName, @Nonnull final Supplier<R> unitOfWork) {
+        SessionFactory sessionFactory = hibernate4Storage.get(sessionFactoryName);
+        if (sessionFactory != null) {
+            return submitAsync(sessionFactoryName, sessionFactory, unitOfWork);
+        }
+
+        // never build a SessionFactory on the calling thread, it may well be the UI thread
+        try {
+            return CompletableFuture.supplyAsync(() -> getSessionFactory(sessionFactoryName), bootstrapExecutor)
+                .thenCompose(sf -> submitAsync(sessionFactoryName, sf, unitOfWork));
+        } catch (RejectedExecutionException e) {
+            CompletableFuture<R> future = new CompletableFuture<>();
+            future.completeExceptionally(new RuntimeHibernate4Exception(sessionFactoryName, e));
+            return future;
+        }
+    }
+
+    @Nonnull
+    private <R> CompletableFuture<R> submitAsync(@Nonnull final String sessionFactoryName, @Nonnull SessionFactory sessionFactory, @Nonnull final Supplier<R> unitOfWork) {
+        final CompletableFuture<R> future = new CompletableFuture<>();
+        try {
+            asyncExecutor(sessionFactoryName, sessionFactory).execute(() -> {
+                try {
+                    future.complete(unitOfWork.get());
+                } catch (Throwable t) {
+                    future.completeExceptionally(t);
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            future.completeExceptionally(new RuntimeHibernate4Exception(sessionFactoryName, e));
+        }
+        return future;
+    }
+
+    @Nonnull
+    @Override
+    public <R> Hibernate4FanOutResult<R> withHbm4Sessions(@Nonnull Collection<String> sessionFactoryNames, long timeout, @Nonnull final Hibernate4Callback<R> callback) {
+        requireNonNull(sessionFactoryNames, ERROR_SESSION_FACTORY_NAMES_NULL);
+        requireNonNull(callback, ERROR_CALLBACK_NULL);
+        if (timeout < 0) {
+            throw new IllegalArgumentException(ERROR_TIMEOUT_INVALID);
+        }
+
+        // every shard runs on the executor of its own session factory, so shards never wait on each other
+        Map<String, CompletableFuture<R>> futures = new LinkedHashMap<>();
+        Map<String, Hibernate4Cancellation> cancellations = new LinkedHashMap<>();
+        for (final String sessionFactoryName : new LinkedHashSet<>(sessionFactoryNames)) {
+            requireNonBlank(sessionFactoryName, ERROR_SESSION_FACTORY_NAME_BLANK);
+            final Hibernate4Cancellation cancellation = new Hibernate4Cancellation();
+            cancellations.put(sessionFactoryName, cancellation);
+            futures.put(sessionFactoryName, submitAsync(sessionFactoryName,
+                () -> withHbm4Session(sessionFactoryName, DEFAULT_QUERY_TIMEOUT, cancellation, callback)));
+        }
+
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(timeout);
+        Map<String, R> results = new LinkedHashMap<>();
+        Map<String, Throwable> failures = new LinkedHashMap<>();
+        for (Map.Entry<String, CompletableFuture<R>> entry : futures.entrySet()) {
+            String sessionFactoryName = entry.getKey();
+            try {
+                if (timeout == 0) {
+                    results.put(sessionFactoryName, entry.getValue().get());
+                } else {
+                    results.put(sessionFactoryName, entry.getValue().get(Math.max(0L, deadline - System.nanoTime()), TimeUnit.NANOSECONDS));
+                }
+            } catch (TimeoutException e) {
+                LOG.warn("Session '{}' did not complete within {} ms", sessionFactoryName, timeout);
+                cancellations.get(sessionFactoryName).cancel();
+                failures.put(sessionFactoryName, e);
+            } catch (ExecutionException e) {
+                failures.put(sessionFactoryName, e.getCause());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                for (Hibernate4Cancellation cancellation : cancellations.values()) {
+                    cancellation.cancel();
+                }
+                throw new RuntimeHibernate4Exception(sessionFactoryName, e);
+            }
+        }
+        return new Hibernate4FanOutResult<>(results, failures);
+    }
+
+    @Nonnull
+    private Executor asyncExecutor(@Nonnull String sessionFactoryName, @Nonnull SessionFactory sessionFactory) {
+        RecordingSessionFactory recordingSessionFactory = RecordingSessionFactory.unwrap(sessionFactory);
+        if (recordingSessionFactory == null || recordingSessionFactory.getAsyncExecutor() == null) {
+            throw new RejectedExecutionException("SessionFactory '" + sessionFactoryName + "' does not accept asynchronous work");
+        }
+        return recordingSessionFactory.getAsyncExecutor();
+    }
+
+    @Nonnull
+    @Override
+    public <R> CompletableFuture<R> withHbm4GroupCommit(@Nonnull Hibernate4Callback<R> callback) {
+        return withHbm4GroupCommit(DefaultHibernate4Factory.KEY_DEFAULT, callback);
+    }
+
+    @Nonnull
+    @Override
+    public <R> CompletableFuture<R> withHbm4GroupCommit(@Nonnull String sessionFactoryName, @Nonnull Hibernate4Callback<R> callback) {
+        requireNonBlank(sessionFactoryName, ERROR_SESSION_FACTORY_NAME_BLANK);
+        requireNonNull(callback, ERROR_CALLBACK_NULL);
+
+        GroupCommitter groupCommitter = groupCommitters.computeIfAbsent(sessionFactoryName, this::createGroupCommitter);
+        if (groupCommitter == null) {
+            CompletableFuture<R> future = new CompletableFuture<>();
+            future.completeExceptionally(new RuntimeHibernate4Exception(sessionFactoryName,
+                new RejectedExecutionException("SessionFactory '" + sessionFactoryName + "' does not accept group commits")));
+            return future;
+        }
+        return groupCommitter.submit(callback);
+    }
+
+    @Nullable
+    private GroupCommitter createGroupCommitter(@Nonnull final String sessionFactoryName) {
+        Map<String, Object> config = getConfigValue(hibernate4Factory.getConfigurationFor(sessionFactoryName), "groupCommit", Collections.<String, Object>emptyMap());
+        int maxItems = getConfigValueAsInt(config, "maxItems", 0);
+        if (maxItems < 1) {
+            return null;
+        }
+        return new GroupCommitter(sessionFactoryName, maxItems, getConfigValueAsLong(config, "maxDelay", 5L),
+            getConfigValueAsInt(config, "maxQueued", DEFAULT_MAX_QUEUED_WRITES), group -> commitGroup(sessionFactoryName, group));
+    }
+
+    /**
+     * Runs a group of writes in a single session and transaction. When that fails every write is
+     * attempted again in a session of its own, so that only the writes at fault fail. Callbacks that already
+     * ran are invoked a second time, hence group commit callbacks must be idempotent and free of side effects
+     * outside of the session they are given.
+     */
+    private void commitGroup(@Nonnull String sessionFactoryName, @Nonnull final List<GroupCommitter.PendingWrite<?>> group) {
+        List<Object> results;
+        try {
+            results = doWithSession(sessionFactoryName, (name, session) -> {
+                List<Object> values = new ArrayList<>(group.size());
+                for (GroupCommitter.PendingWrite<?> write : group) {
+                    values.add(write.getCallback().handle(name, session));
+                }
+                return values;
+            }, false, false);
+        } catch (RuntimeException e) {
+            if (group.size() == 1) {
+                group.get(0).fail(e);
+                return;
+            }
+            LOG.debug("Group of {} writes on session '{}' failed, committing them one by one", group.size(), sessionFactoryName, e);
+            for (GroupCommitter.PendingWrite<?> write : group) {
+                try {
+                    write.complete(doWithSession(sessionFactoryName, write.getCallback(), false, false));
+                } catch (RuntimeException x) {
+                    write.fail(x);
+                }
+            }
+            return;
+        }
+
+        for (int i = 0; i < group.size(); i++) {
+            group.get(i).complete(results.get(i));
+        }
+    }
+
+    @Nullable
+    @Override
+    public <R> R withHbm4ReadOnlySession(@Nonnull Hibernate4Callback<R> callback) throws RuntimeHibernate4Exception {
+        return withHbm4ReadOnlySession(DefaultHibernate4Factory.KEY_DEFAULT, callback);
+    }
+
+    @Nullable
+    @Override
+    public <R> R withHbm4ReadOnlySession(@Nonnull String sessionFactoryName, @Nonnull Hibernate4Callback<R> callback) throws RuntimeHibernate4Exception {
+        return doWithSession(sessionFactoryName, callback, true, true);
+    }
+
+    @Nullable
+    @Override
+    public <R> R withHbm4NonTransactionalSession(@Nonnull Hibernate4Callback<R> callback) throws RuntimeHibernate4Exception {
+        return withHbm4NonTransactionalSession(DefaultHibernate4Factory.KEY_DEFAULT, callback);
+    }
+
+    @Nullable
+    @Override
+    public <R> R withHbm4NonTransactionalSession(@Nonnull final String sessionFactoryName, @Nonnull final Hibernate4Callback<R> callback) throws RuntimeHibernate4Exception {
+        requireNonBlank(sessionFactoryName, ERROR_SESSION_FACTORY_NAME_BLANK);
+        requireNonNull(callback, ERROR_CALLBACK_NULL);
+
+        final SessionFactory sf = getSessionFactory(sessionFactoryName);
+        BoundSession bound = boundSession(sessionFactoryName, sf, true);
+        if (bound != null) {
+            return doWithBoundSession(sessionFactoryName, bound, callback);
+        }
+        final ReplicaRouter.Replica replica = selectReplica(sf);
+        if (replica != null) {
+            return doWithReplica(sessionFactoryName, sf, replica,
+                () -> doWithNonTransactionalSession(sessionFactoryName, replica.getSessionFactory(), callback),
+                () -> doWithNonTransactionalSession(sessionFactoryName, sf, callback));
+        }
+        return execute(sessionFactoryName, sf, () -> doWithNonTransactionalSession(sessionFactoryName, sf, callback));
+    }
+
+    /**
+     * Runs the callback on a read-only session without beginning a transaction. Every statement runs in auto-commit
+     * mode; the session holds on to its connection until it is closed, by then the connection's auto-commit mode
+     * has been restored.
+     */
+    @Nullable
+    @SuppressWarnings("ThrowFromFinallyBlock")
+    private <R> R doWithNonTransactionalSession(@Nonnull String sessionFactoryName, @Nonnull SessionFactory sf, @Nonnull Hibernate4Callback<R> callback) throws RuntimeHibernate4Exception {
         if (LOG.isDebugEnabled()) {
-            LOG.debug("Executing statements on session '{}'", sessionFactoryName);
+            LOG.debug("Executing statements on session '{}' (non transactional)", sessionFactoryName);
         }
-        Session session = sf.openSession();
+        Session session = openSession(sf, DEFAULT_QUERY_TIMEOUT, null);
+        boolean autoCommit = true;
         try {
-            session.beginTransaction();
+            session.setFlushMode(FlushMode.MANUAL);
+            session.setDefaultReadOnly(true);
+            autoCommit = session.doReturningWork(connection -> {
+                boolean original = connection.getAutoCommit();
+                if (!original) {
+                    connection.setAutoCommit(true);
+                }
+                return original;
+            });
             return callback.handle(sessionFactoryName, session);
         } catch (Exception e) {
             throw new RuntimeHibernate4Exception(sessionFactoryName, e);
         } finally {
             try {
-                if (!session.getTransaction().wasRolledBack()) {
-                    session.getTransaction().commit();
+                if (!autoCommit) {
+                    session.doWork(connection -> connection.setAutoCommit(false));
+                }
+            } catch (Exception e) {
+                throw new RuntimeHibernate4Exception(sessionFactoryName, e);
+            } finally {
+                session.close();
+            }
+        }
+    }
+
+    @Nullable
+    @Override
+    public <R> R withHbm4StatelessSession(@Nonnull Hibernate4StatelessCallback<R> callback) throws RuntimeHibernate4Exception {
+        return withHbm4StatelessSession(DefaultHibernate4Factory.KEY_DEFAULT, callback);
+    }
+
+    @Nullable
+    @Override
+    public <R> R withHbm4StatelessSession(@Nonnull final String sessionFactoryName, @Nonnull final Hibernate4StatelessCallback<R> callback) throws RuntimeHibernate4Exception {
+        requireNonBlank(sessionFactoryName, ERROR_SESSION_FACTORY_NAME_BLANK);
+        requireNonNull(callback, ERROR_CALLBACK_NULL);
+
+        final SessionFactory sf = getSessionFactory(sessionFactoryName);
+        return execute(sessionFactoryName, sf, () -> doWithStatelessSession(sessionFactoryName, sf, callback));
+    }
+
+    @Nullable
+    @SuppressWarnings("ThrowFromFinallyBlock")
+    private <R> R doWithStatelessSession(@Nonnull String sessionFactoryName, @Nonnull SessionFactory sf, @Nonnull Hibernate4StatelessCallback<R> callback) throws RuntimeHibernate4Exception {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Executing statements on stateless session '{}'", sessionFactoryName);
+        }
+        StatelessSession session = sf.openStatelessSession();
+        boolean successful = false;
+        try {
+            session.beginTransaction();
+            R result = callback.handle(sessionFactoryName, session);
+            successful = true;
+            return result;
+        } catch (Exception e) {
+            throw new RuntimeHibernate4Exception(sessionFactoryName, e);
+        } finally {
+            try {
+                completeTransaction(session.getTransaction(), successful);
+            } catch (Exception e) {
+                throw new RuntimeHibernate4Exception(sessionFactoryName, e);
+            } finally {
+                session.close();
+            }
+        }
+    }
+
+    @Nonnull
+    @Override
+    public Hibernate4BatchResult writeHbm4Batch(@Nonnull Iterator<?> entities, int batchSize) throws RuntimeHibernate4Exception {
+        return writeHbm4Batch(DefaultHibernate4Factory.KEY_DEFAULT, entities, batchSize);
+    }
+
+    @Nonnull
+    @Override
+    public Hibernate4BatchResult writeHbm4Batch(@Nonnull String sessionFactoryName, @Nonnull final Iterator<?> entities, final int batchSize) throws RuntimeHibernate4Exception {
+        requireNonNull(entities, ERROR_ENTITIES_NULL);
+        if (batchSize < 1) {
+            throw new IllegalArgumentException(ERROR_BATCH_SIZE_INVALID);
+        }
+
+        return doWithSession(sessionFactoryName, (name, session) -> {
+            // the periodic flush and clear keep the persistence context bounded, while IGNORE keeps
+            // the written entities out of the 2nd level cache
+            session.setCacheMode(CacheMode.IGNORE);
+            long rows = 0;
+            int flushes = 0;
+            while (entities.hasNext()) {
+                session.saveOrUpdate(entities.next());
+                if (++rows % batchSize == 0) {
+                    session.flush();
+                    session.clear();
+                    flushes++;
+                }
+            }
+            if (rows % batchSize != 0) {
+                session.flush();
+                session.clear();
+                flushes++;
+            }
+            return new Hibernate4BatchResult(rows, flushes);
+        }, false, false);
+    }
+
+    @Override
+    public long withHbm4Scroll(@Nonnull String hql, @Nonnull Map<String, ?> parameters, int fetchSize, int clearEvery, @Nonnull Hibernate4ScrollCallback callback) throws RuntimeHibernate4Exception {
+        return withHbm4Scroll(DefaultHibernate4Factory.KEY_DEFAULT, hql, parameters, fetchSize, clearEvery, callback);
+    }
+
+    @Override
+    public long withHbm4Scroll(@Nonnull String sessionFactoryName, @Nonnull final String hql, @Nonnull final Map<String, ?> parameters, final int fetchSize, final int clearEvery, @Nonnull final Hibernate4ScrollCallback callback) throws RuntimeHibernate4Exception {
+        requireNonBlank(hql, ERROR_HQL_BLANK);
+        requireNonNull(parameters, ERROR_PARAMETERS_NULL);
+        checkScrollArguments(fetchSize, clearEvery, callback);
+
+        return doWithSession(sessionFactoryName, (name, session) -> {
+            Query query = session.createQuery(hql)
+                .setProperties(parameters)
+                .setFetchSize(fetchSize)
+                .setReadOnly(true)
+                .setCacheMode(CacheMode.IGNORE);
+            return scroll(name, session, query.scroll(ScrollMode.FORWARD_ONLY), clearEvery, callback);
+        }, true, false);
+    }
+
+    @Override
+    public long withHbm4Scroll(@Nonnull DetachedCriteria criteria, int fetchSize, int clearEvery, @Nonnull Hibernate4ScrollCallback callback) throws RuntimeHibernate4Exception {
+        return withHbm4Scroll(DefaultHibernate4Factory.KEY_DEFAULT, criteria, fetchSize, clearEvery, callback);
+    }
+
+    @Override
+    public long withHbm4Scroll(@Nonnull String sessionFactoryName, @Nonnull final DetachedCriteria criteria, final int fetchSize, final int clearEvery, @Nonnull final Hibernate4ScrollCallback callback) throws RuntimeHibernate4Exception {
+        requireNonNull(criteria, ERROR_CRITERIA_NULL);
+        checkScrollArguments(fetchSize, clearEvery, callback);
+
+        return doWithSession(sessionFactoryName, (name, session) -> {
+            Criteria executableCriteria = executableCriteria(criteria, session)
+                .setFetchSize(fetchSize)
+                .setReadOnly(true)
+                .setCacheMode(CacheMode.IGNORE);
+            return scroll(name, session, executableCriteria.scroll(ScrollMode.FORWARD_ONLY), clearEvery, callback);
+        }, true, false);
+    }
+
+    @Nonnull
+    @Override
+    public <T> Hibernate4Page<T> withHbm4Page(@Nonnull DetachedCriteria criteria, @Nonnull String keyProperty, int pageSize, @Nullable Object continuation, boolean prefetch) throws RuntimeHibernate4Exception {
+        return withHbm4Page(DefaultHibernate4Factory.KEY_DEFAULT, criteria, keyProperty, pageSize, continuation, prefetch);
+    }
+
+    @Nonnull
+    @Override
+    public <T> Hibernate4Page<T> withHbm4Page(@Nonnull String sessionFactoryName, @Nonnull DetachedCriteria criteria, @Nonnull String keyProperty, int pageSize, @Nullable Object continuation, boolean prefetch) throws RuntimeHibernate4Exception {
+        requireNonBlank(sessionFactoryName, ERROR_SESSION_FACTORY_NAME_BLANK);
+        requireNonNull(criteria, ERROR_CRITERIA_NULL);
+        requireNonBlank(keyProperty, ERROR_KEY_PROPERTY_BLANK);
+        if (pageSize < 1) {
+            throw new IllegalArgumentException(ERROR_PAGE_SIZE_INVALID);
+        }
+
+        // every page adds its own restriction to a copy, as criteria can't be reset
+        DetachedCriteria template = (DetachedCriteria) SerializationHelper.clone(criteria);
+        // any other order would come first and break the seek past the last key
+        if (((CriteriaImpl) template.getExecutableCriteria(null)).iterateOrderings().hasNext()) {
+            throw new IllegalArgumentException(ERROR_CRITERIA_ORDERED);
+        }
+        return readPage(sessionFactoryName, template, keyProperty, pageSize, continuation, prefetch);
+    }
+
+    /**
+     * Reads the entities that follow the continuation in key order. One more entity than the page size is read
+     * to tell whether there's a following page without issuing a count.
+     */
+    @Nonnull
+    @SuppressWarnings("unchecked")
+    private <T> Hibernate4Page<T> readPage(@Nonnull String sessionFactoryName, @Nonnull final DetachedCriteria template, @Nonnull final String keyProperty, final int pageSize, @Nullable final Object continuation, boolean prefetch) {
+        final Object[] nextKey = new Object[1];
+        List<T> items = withHbm4ReadOnlySession(sessionFactoryName, (name, session) -> {
+            DetachedCriteria criteria = (DetachedCriteria) SerializationHelper.clone(template);
+            if (continuation != null) {
+                criteria.add(Restrictions.gt(keyProperty, continuation));
+            }
+            List<T> list = executableCriteria(criteria.addOrder(Order.asc(keyProperty)), session)
+                .setMaxResults(pageSize + 1)
+                .list();
+            if (list.size() > pageSize) {
+                list = list.subList(0, pageSize);
+                nextKey[0] = keyOf(session, list.get(pageSize - 1), keyProperty);
+            }
+            return list;
+        });
+        return page(sessionFactoryName, template, keyProperty, pageSize, items, nextKey[0], prefetch);
+    }
+
+    @Nonnull
+    private <T> Hibernate4Page<T> page(@Nonnull final String sessionFactoryName, @Nonnull final DetachedCriteria template, @Nonnull final String keyProperty, final int pageSize, @Nonnull List<T> items, @Nullable final Object nextKey, boolean prefetch) {
+        if (nextKey == null) {
+            return new Hibernate4Page<>(items, null, null);
+        }
+        final Supplier<Hibernate4Page<T>> loader = () -> readPage(sessionFactoryName, template, keyProperty, pageSize, nextKey, prefetch);
+        if (!prefetch) {
+            return new Hibernate4Page<>(items, nextKey, loader);
+        }
+
+        // the following page is read while the caller works on this one; it starts its own prefetch once handed over
+        final CompletableFuture<Hibernate4Page<T>> prefetched = submitAsync(sessionFactoryName,
+            () -> readPage(sessionFactoryName, template, keyProperty, pageSize, nextKey, false));
+        return new Hibernate4Page<>(items, nextKey, () -> {
+            Hibernate4Page<T> next;
+            try {
+                next = prefetched.join();
+            } catch (CompletionException | CancellationException e) {
+                LOG.debug("Prefetching a page on session '{}' failed, reading it again", sessionFactoryName, e);
+                return loader.get();
+            }
+            return page(sessionFactoryName, template, keyProperty, pageSize, next.getItems(), next.getContinuation(), true);
+        });
+    }
+
+    @Nonnull
+    private static Object keyOf(@Nonnull Session session, @Nonnull Object entity, @Nonnull String keyProperty) {
+        Class<?> entityClass = HibernateProxyHelper.getClassWithoutInitializingProxy(entity);
+        ClassMetadata metadata = session.getSessionFactory().getClassMetadata(entityClass);
+        if (metadata == null) {
+            throw new IllegalArgumentException("Pages must hold entities, found " + entityClass.getName());
+        }
+        Object key = keyProperty.equals(metadata.getIdentifierPropertyName())
+            ? metadata.getIdentifier(entity, (SessionImplementor) unwrap(session))
+            : metadata.getPropertyValue(entity, keyProperty);
+        if (key == null) {
+            throw new IllegalStateException("Key property '" + keyProperty + "' of " + entityClass.getName() + " must not be null");
+        }
+        return key;
+    }
+
+    private static void checkScrollArguments(int fetchSize, int clearEvery, @Nonnull Hibernate4ScrollCallback callback) {
+        requireNonNull(callback, ERROR_CALLBACK_NULL);
+        if (fetchSize < 1) {
+            throw new IllegalArgumentException(ERROR_FETCH_SIZE_INVALID);
+        }
+        if (clearEvery < 0) {
+            throw new IllegalArgumentException(ERROR_CLEAR_EVERY_INVALID);
+        }
+    }
+
+    /**
+     * Feeds every row to the callback, keeping the persistence context bounded. Entities of a processed row
+     * are evicted right away unless {@code clearEvery} is positive, in which case the session is cleared
+     * once that many rows have been processed.
+     */
+    private static long scroll(@Nonnull String sessionFactoryName, @Nonnull Session session, @Nonnull ScrollableResults results, int clearEvery, @Nonnull Hibernate4ScrollCallback callback) {
+        long rows = 0;
+        try {
+            while (results.next()) {
+                Object[] row = results.get();
+                callback.handle(sessionFactoryName, session, row);
+                rows++;
+                if (clearEvery > 0) {
+                    if (rows % clearEvery == 0) {
+                        session.clear();
+                    }
+                } else {
+                    evict(session, row);
+                }
+            }
+        } finally {
+            results.close();
+        }
+        return rows;
+    }
+
+    /**
+     * {@code DetachedCriteria} requires the session implementation itself, not one of our decorators.
+     */
+    @Nonnull
+    private static Criteria executableCriteria(@Nonnull DetachedCriteria criteria, @Nonnull Session session) {
+        // going through the decorator keeps the query timeout and cancellation of the session
+        return session instanceof QueryTimeoutSession
+            ? ((QueryTimeoutSession) session).getExecutableCriteria(criteria)
+            : criteria.getExecutableCriteria(unwrap(session));
+    }
+
+    @Nonnull
+    private static Session unwrap(@Nonnull Session session) {
+        while (session instanceof SessionDecorator) {
+            session = ((SessionDecorator) session).getDelegate();
+        }
+        return session;
+    }
+
+    private static void evict(@Nonnull Session session, @Nonnull Object[] row) {
+        for (Object element : row) {
+            if (element != null && session.contains(element)) {
+                session.evict(element);
+            }
+        }
+    }
+
+    /**
+     * Runs the callback in the session already bound to the current thread for the given name when
+     * {@code join} is set and the session factory allows it, in a new session otherwise. A read-write
+     * callback never joins a read-only session as its changes would not be flushed.
+     */
+    @Nullable
+    private <R> R doWithSession(@Nonnull final String sessionFactoryName, @Nonnull final Hibernate4Callback<R> callback, final boolean readOnly, boolean join) throws RuntimeHibernate4Exception {
+        requireNonBlank(sessionFactoryName, ERROR_SESSION_FACTORY_NAME_BLANK);
+        requireNonNull(callback, ERROR_CALLBACK_NULL);
+
+        final SessionFactory sf = getSessionFactory(sessionFactoryName);
+        BoundSession bound = join ? boundSession(sessionFactoryName, sf, readOnly) : null;
+        if (bound != null) {
+            return doWithBoundSession(sessionFactoryName, bound, callback);
+        }
+        final ReplicaRouter.Replica replica = readOnly ? selectReplica(sf) : null;
+        if (replica != null) {
+            return doWithReplica(sessionFactoryName, sf, replica,
+                () -> doWithSession(sessionFactoryName, replica.getSessionFactory(), callback, true, DEFAULT_QUERY_TIMEOUT, null),
+                () -> doWithSession(sessionFactoryName, sf, callback, true, DEFAULT_QUERY_TIMEOUT, null));
+        }
+        return execute(sessionFactoryName, sf, () -> doWithSession(sessionFactoryName, sf, callback, readOnly, DEFAULT_QUERY_TIMEOUT, null));
+    }
+
+    @Nullable
+    private static ReplicaRouter.Replica selectReplica(@Nonnull SessionFactory sessionFactory) {
+        RecordingSessionFactory recordingSessionFactory = RecordingSessionFactory.unwrap(sessionFactory);
+        ReplicaRouter replicas = recordingSessionFactory != null ? recordingSessionFactory.getReplicas() : null;
+        return replicas != null ? replicas.select() : null;
+    }
+
+    /**
+     * Runs read-only work on a replica. When the work fails because the replica's connection broke, the replica
+     * leaves the rotation until the next successful health check, or retry when health checks are disabled, and the
+     * work runs again on the primary.
+     */
+    @Nullable
+    private <R> R doWithReplica(@Nonnull String sessionFactoryName, @Nonnull SessionFactory sf, @Nonnull ReplicaRouter.Replica replica, @Nonnull Supplier<R> replicaWork, @Nonnull Supplier<R> primaryWork) {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Routing read-only work on session '{}' to replica '{}'", sessionFactoryName, replica.getName());
+        }
+        // a replica read counts as a session of the primary, whose replicas are closed once it is retired
+        RecordingSessionFactory recordingSessionFactory = RecordingSessionFactory.unwrap(sf);
+        if (recordingSessionFactory != null && !recordingSessionFactory.acquire()) {
+            return execute(sessionFactoryName, sf, primaryWork);
+        }
+        replica.acquire();
+        try {
+            R result = execute(sessionFactoryName, replica.getSessionFactory(), replicaWork);
+            // a replica tried again after its retryInterval is back in rotation
+            replica.markUp();
+            return result;
+        } catch (RuntimeHibernate4Exception e) {
+            if (!isConnectionFailure(e)) {
+                throw e;
+            }
+            replica.markDown(e);
+        } finally {
+            replica.release();
+            if (recordingSessionFactory != null) {
+                recordingSessionFactory.release();
+            }
+        }
+        return execute(sessionFactoryName, sf, primaryWork);
+    }
+
+    private static boolean isConnectionFailure(@Nonnull Throwable throwable) {
+        for (Throwable t = throwable; t != null; t = t.getCause() == t ? null : t.getCause()) {
+            if (t instanceof JDBCConnectionException ||
+                t instanceof SQLTransientConnectionException ||
+                t instanceof SQLNonTransientConnectionException) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Nullable
+    private BoundSession boundSession(@Nonnull String sessionFactoryName, @Nonnull SessionFactory sf, boolean readOnly) {
+        if (!joinsNestedSessions(sf)) {
+            return null;
+        }
+        Map<String, BoundSession> sessions = boundSessions.get();
+        BoundSession bound = sessions != null ? sessions.get(sessionFactoryName) : null;
+        return bound != null && (readOnly || !bound.readOnly) ? bound : null;
+    }
+
+    private static boolean joinsNestedSessions(@Nonnull SessionFactory sessionFactory) {
+        RecordingSessionFactory recordingSessionFactory = RecordingSessionFactory.unwrap(sessionFactory);
+        return recordingSessionFactory == null || recordingSessionFactory.isJoinNestedSessions();
+    }
+
+    /**
+     * Runs a nested callback in the outer session and transaction. The outer call alone commits or closes;
+     * a failed nested callback marks the transaction for rollback, even if the outer callback handles the failure.
+     */
+    @Nullable
+    private static <R> R doWithBoundSession(@Nonnull String sessionFactoryName, @Nonnull BoundSession bound, @Nonnull Hibernate4Callback<R> callback) throws RuntimeHibernate4Exception {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Joining session '{}'", sessionFactoryName);
+        }
+        try {
+            return callback.handle(sessionFactoryName, bound.session);
+        } catch (Exception e) {
+            bound.rollbackOnly = true;
+            throw new RuntimeHibernate4Exception(sessionFactoryName, e);
+        }
+    }
+
+    /**
+     * Runs a unit of work holding a bulkhead permit (if any). The unit of work is attempted again,
+     * in a fresh session, when it fails with an exception the retry policy (if any) deems retryable.
+     */
+    @Nullable
+    private <R> R execute(@Nonnull String sessionFactoryName, @Nonnull SessionFactory sf, @Nonnull Supplier<R> unitOfWork) {
+        RecordingSessionFactory recordingSessionFactory = RecordingSessionFactory.unwrap(sf);
+        RetryPolicy retryPolicy = recordingSessionFactory != null ? recordingSessionFactory.getRetryPolicy() : null;
+
+        for (int attempt = 1; ; attempt++) {
+            SessionFactoryBulkhead bulkhead = acquirePermit(sf);
+            try {
+                return unitOfWork.get();
+            } catch (RuntimeHibernate4Exception e) {
+                if (retryPolicy == null || !retryPolicy.canRetry(e, attempt)) {
+                    throw e;
+                }
+                LOG.debug("Attempt {} on session '{}' failed, retrying", attempt, sessionFactoryName, e);
+            } finally {
+                releasePermit(bulkhead);
+            }
+            retryPolicy.backoff(attempt);
+        }
+    }
+
+    @Nullable
+    @SuppressWarnings("ThrowFromFinallyBlock")
+    private <R> R doWithSession(@Nonnull String sessionFactoryName, @Nonnull SessionFactory sf, @Nonnull Hibernate4Callback<R> callback, boolean readOnly, int queryTimeout, @Nullable Hibernate4Cancellation cancellation) throws RuntimeHibernate4Exception {
+        if (LOG.isDebugEnabled()) {
+            LOG.debug("Executing statements on session '{}'{}", sessionFactoryName, readOnly ? " (read-only)" : "");
+        }
+        if (cancellation != null && cancellation.isCancelled()) {
+            throw new RuntimeHibernate4Exception(sessionFactoryName, cancelled(sessionFactoryName));
+        }
+        Session session = openSession(sf, queryTimeout, cancellation);
+        if (cancellation != null) {
+            cancellation.attach(session);
+        }
+        BoundSession bound = new BoundSession(session, readOnly);
+        BoundSession previous = bindSession(sessionFactoryName, bound);
+        boolean successful = false;
+        try {
+            if (readOnly) {
+                setReadOnly(session, true);
+            }
+            session.beginTransaction();
+            R result = callback.handle(sessionFactoryName, session);
+            if (bound.rollbackOnly) {
+                throw new IllegalStateException("Transaction was marked for rollback by a nested call on session '" + sessionFactoryName + "'");
+            }
+            if (cancellation != null && cancellation.isCancelled()) {
+                throw cancelled(sessionFactoryName);
+            }
+            successful = true;
+            return result;
+        } catch (Exception e) {
+            throw new RuntimeHibernate4Exception(sessionFactoryName, e);
+        } finally {
+            try {
+                try {
+                    completeTransaction(session.getTransaction(), successful);
+                } finally {
+                    if (readOnly) {
+                        setReadOnly(session, false);
+                    }
+                }
+            } catch (Exception e) {
+                throw new RuntimeHibernate4Exception(sessionFactoryName, e);
+            } finally {
+                unbindSession(sessionFactoryName, previous);
+                if (cancellation != null) {
+                    cancellation.detach();
                 }
                 session.close();
+            }
+        }
+    }
+
+    /**
+     * Opens a session that applies the given query timeout, or the session factory's default when negative.
+     * The session is only decorated when there's a timeout to apply or a cancellation to honour.
+     */
+    @Nonnull
+    private static Session openSession(@Nonnull SessionFactory sf, int queryTimeout, @Nullable Hibernate4Cancellation cancellation) {
+        if (queryTimeout < 0) {
+            RecordingSessionFactory recordingSessionFactory = RecordingSessionFactory.unwrap(sf);
+            queryTimeout = recordingSessionFactory != null ? recordingSessionFactory.getQueryTimeout() : 0;
+        }
+        Session session = sf.openSession();
+        return queryTimeout > 0 || cancellation != null ? new QueryTimeoutSession(session, queryTimeout, cancellation) : session;
+    }
+
+    @Nonnull
+    private static CancellationException cancelled(@Nonnull String sessionFactoryName) {
+        return new CancellationException("Callback on session '" + sessionFactoryName + "' was cancelled");
+    }
+
+    @Nullable
+    private BoundSession bindSession(@Nonnull String sessionFactoryName, @Nonnull BoundSession bound) {
+        Map<String, BoundSession> sessions = boundSessions.get();
+        if (sessions == null) {
+            sessions = new HashMap<>();
+            boundSessions.set(sessions);
+        }
+        return sessions.put(sessionFactoryName, bound);
+    }
+
+    private void unbindSession(@Nonnull String sessionFactoryName, @Nullable BoundSession previous) {
+        Map<String, BoundSession> sessions = boundSessions.get();
+        if (previous != null) {
+            sessions.put(sessionFactoryName, previous);
+        } else {
+            sessions.remove(sessionFactoryName);
+            if (sessions.isEmpty()) {
+                boundSessions.remove();
+            }
+        }
+    }
+
+    /**
+     * Commits the transaction unless the callback failed or already ended it. A failed callback is rolled back
+     * so that nothing it did is committed, which makes it safe to attempt it again.
+     */
+    private static void completeTransaction(@Nonnull Transaction transaction, boolean successful) {
+        if (!transaction.isActive()) {
+            return;
+        }
+        if (successful) {
+            transaction.commit();
+        } else {
+            transaction.rollback();
+        }
+    }
+
+    @Nullable
+    private static SessionFactoryBulkhead acquirePermit(@Nonnull SessionFactory sessionFactory) {
+        RecordingSessionFactory recordingSessionFactory = RecordingSessionFactory.unwrap(sessionFactory);
+        SessionFactoryBulkhead bulkhead = recordingSessionFactory != null ? recordingSessionFactory.getBulkhead() : null;
+        if (bulkhead != null) {
+            bulkhead.acquire();
+        }
+        return bulkhead;
+    }
+
+    private static void releasePermit(@Nullable SessionFactoryBulkhead bulkhead) {
+        if (bulkhead != null) {
+            bulkhead.release();
+        }
+    }
+
+    private static void setReadOnly(@Nonnull Session session, final boolean readOnly) {
+        if (readOnly) {
+            // entities are loaded without snapshots and nothing is flushed on commit
+            session.setFlushMode(FlushMode.MANUAL);
+            session.setDefaultReadOnly(true);
+        }
+        // must happen outside of a transaction, some drivers reject the change otherwise
+        session.doWork(connection -> connection.setReadOnly(readOnly));
+    }
+
+    private static final class BoundSession {
+        private final Session session;
+        private final boolean readOnly;
+        private boolean rollbackOnly;
+
+        private BoundSession(@Nonnull Session session, boolean readOnly) {
+            this.session = session;
+            this.readOnly = readOnly;
+        }
+    }
+
+    @Override
+    public void beginHbm4Conversation(@Nonnull String conversationId) throws RuntimeHibernate4Exception {
+        beginHbm4Conversation(DefaultHibernate4Factory.KEY_DEFAULT, conversationId);
+    }
+
+    @Override
+    public void beginHbm4Conversation(@Nonnull String sessionFactoryName, @Nonnull String conversationId) throws RuntimeHibernate4Exception {
+        requireNonBlank(sessionFactoryName, ERROR_SESSION_FACTORY_NAME_BLANK);
+        requireNonBlank(conversationId, ERROR_CONVERSATION_ID_BLANK);
+
+        SessionFactory sf = getSessionFactory(sessionFactoryName);
+        conversations(sessionFactoryName, sf).begin(conversationId, sf);
+    }
+
+    @Nullable
+    @Override
+    public <R> R withHbm4Conversation(@Nonnull String conversationId, @Nonnull Hibernate4Callback<R> callback) throws RuntimeHibernate4Exception {
+        return withHbm4Conversation(DefaultHibernate4Factory.KEY_DEFAULT, conversationId, callback);
+    }
+
+    /**
+     * Runs a unit of work in the session of the conversation. The transaction is committed without flushing, then the
+     * session gives its connection back. A failed unit of work ends the conversation, as its session can no longer be trusted.
+     */
+    @Nullable
+    @Override
+    public <R> R withHbm4Conversation(@Nonnull String sessionFactoryName, @Nonnull String conversationId, @Nonnull Hibernate4Callback<R> callback) throws RuntimeHibernate4Exception {
+        requireNonBlank(sessionFactoryName, ERROR_SESSION_FACTORY_NAME_BLANK);
+        requireNonBlank(conversationId, ERROR_CONVERSATION_ID_BLANK);
+        requireNonNull(callback, ERROR_CALLBACK_NULL);
+
+        SessionFactory sf = getSessionFactory(sessionFactoryName);
+        ConversationRegistry conversations = conversations(sessionFactoryName, sf);
+        ConversationRegistry.Conversation conversation = conversations.get(conversationId);
+        if (conversation == null) {
+            throw new Hibernate4ConversationException(sessionFactoryName, conversationId);
+        }
+
+        try {
+            return doWithConversation(sessionFactoryName, sf, conversations, conversation, callback);
+        } finally {
+            conversations.release(conversation);
+        }
+    }
+
+    @Nullable
+    @SuppressWarnings("ThrowFromFinallyBlock")
+    private <R> R doWithConversation(@Nonnull String sessionFactoryName, @Nonnull SessionFactory sf, @Nonnull ConversationRegistry conversations, @Nonnull ConversationRegistry.Conversation conversation, @Nonnull Hibernate4Callback<R> callback) {
+        String conversationId = conversation.getId();
+        synchronized (conversation) {
+            if (conversation.isClosed()) {
+                throw new Hibernate4ConversationException(sessionFactoryName, conversationId);
+            }
+            if (LOG.isDebugEnabled()) {
+                LOG.debug("Executing statements on conversation '{}' of session '{}'", conversationId, sessionFactoryName);
+            }
+
+            SessionFactoryBulkhead bulkhead = acquirePermit(sf);
+            Session session = conversation.getSession();
+            boolean successful = false;
+            try {
+                session.beginTransaction();
+                R result = callback.handle(sessionFactoryName, session);
+                successful = true;
+                return result;
+            } catch (Exception e) {
+                throw new RuntimeHibernate4Exception(sessionFactoryName, e);
+            } finally {
+                try {
+                    completeTransaction(session.getTransaction(), successful);
+                } catch (Exception e) {
+                    successful = false;
+                    throw new RuntimeHibernate4Exception(sessionFactoryName, e);
+                } finally {
+                    releasePermit(bulkhead);
+                    if (successful) {
+                        session.disconnect();
+                        conversations.evictIfOversized(conversation);
+                    } else {
+                        conversations.remove(conversationId);
+                        conversation.close();
+                    }
+                }
+            }
+        }
+    }
+
+    @Override
+    public void commitHbm4Conversation(@Nonnull String conversationId) throws RuntimeHibernate4Exception {
+        commitHbm4Conversation(DefaultHibernate4Factory.KEY_DEFAULT, conversationId);
+    }
+
+    @Override
+    public void commitHbm4Conversation(@Nonnull String sessionFactoryName, @Nonnull String conversationId) throws RuntimeHibernate4Exception {
+        requireNonBlank(sessionFactoryName, ERROR_SESSION_FACTORY_NAME_BLANK);
+        requireNonBlank(conversationId, ERROR_CONVERSATION_ID_BLANK);
+
+        SessionFactory sf = getSessionFactory(sessionFactoryName);
+        ConversationRegistry.Conversation conversation = conversations(sessionFactoryName, sf).remove(conversationId);
+        if (conversation == null) {
+            throw new Hibernate4ConversationException(sessionFactoryName, conversationId);
+        }
+
+        try {
+            return doWithConversation(sessionFactoryName, sf, conversations, conversation, callback);
+        } finally {
+            conversations.release(conversation);
+        }
+    }
+
+    @Nullable
+    @SuppressWarnings("ThrowFromFinallyBlock")
+    private <R> R doWithConversation(@Nonnull String sessionFactoryName, @Nonnull SessionFactory sf, @Nonnull ConversationRegistry conversations, @Nonnull ConversationRegistry.Conversation conversation, @Nonnull Hibernate4Callback<R> callback) {
+        String conversationId = conversation.getId();
+        synchronized (conversation) {
+            if (conversation.isClosed()) {
+                throw new Hibernate4ConversationException(sessionFactoryName, conversationId);
+            }
+            SessionFactoryBulkhead bulkhead = acquirePermit(sf);
+            Session session = conversation.getSession();
+            boolean successful = false;
+            try {
+                session.beginTransaction();
+                session.flush();
+                successful = true;
             } catch (Exception e) {
                 throw new RuntimeHibernate4Exception(sessionFactoryName, e);
+            } finally {
+                try {
+                    completeTransaction(session.getTransaction(), successful);
+                } catch (Exception e) {
+                    throw new RuntimeHibernate4Exception(sessionFactoryName, e);
+                } finally {
+                    releasePermit(bulkhead);
+                    conversation.close();
+                }
             }
         }
     }
 
+    @Override
+    public void discardHbm4Conversation(@Nonnull String conversationId) {
+        discardHbm4Conversation(DefaultHibernate4Factory.KEY_DEFAULT, conversationId);
+    }
+
+    @Override
+    public void discardHbm4Conversation(@Nonnull String sessionFactoryName, @Nonnull String conversationId) {
+        requireNonBlank(sessionFactoryName, ERROR_SESSION_FACTORY_NAME_BLANK);
+        requireNonBlank(conversationId, ERROR_CONVERSATION_ID_BLANK);
+
+        SessionFactory sessionFactory = hibernate4Storage.get(sessionFactoryName);
+        RecordingSessionFactory recordingSessionFactory = sessionFactory != null ? RecordingSessionFactory.unwrap(sessionFactory) : null;
+        ConversationRegistry conversations = recordingSessionFactory != null ? recordingSessionFactory.getConversations() : null;
+        ConversationRegistry.Conversation conversation = conversations != null ? conversations.remove(conversationId) : null;
+        if (conversation != null) {
+            conversation.close();
+        }
+    }
+
+    @Nonnull
+    private static ConversationRegistry conversations(@Nonnull String sessionFactoryName, @Nonnull SessionFactory sessionFactory) {
+        RecordingSessionFactory recordingSessionFactory = RecordingSessionFactory.unwrap(sessionFactory);
+        if (recordingSessionFactory == null || recordingSessionFactory.getConversations() == null) {
+            throw new RuntimeHibernate4Exception(sessionFactoryName,
+                new UnsupportedOperationException("SessionFactory '" + sessionFactoryName + "' does not support conversations"));
+        }
+        return recordingSessionFactory.getConversations();
+    }
+
     @Override
     public void closeHbm4Session() {
         closeHbm4Session(DefaultHibernate4Factory.KEY_DEFAULT);
@@ -94,6 +1177,10 @@ public class DefaultHibernate4Handler implements Hibernate4Handler {
     @Override
     public void closeHbm4Session(@Nonnull String sessionFactoryName) {
         requireNonBlank(sessionFactoryName, ERROR_SESSION_FACTORY_NAME_BLANK);
+        GroupCommitter groupCommitter = groupCommitters.remove(sessionFactoryName);
+        if (groupCommitter != null) {
+            groupCommitter.close();
+        }
         SessionFactory hibernate4 = hibernate4Storage.get(sessionFactoryName);
         if (hibernate4 != null) {
             hibernate4Factory.destroy(sessionFactoryName, hibernate4);
@@ -102,12 +1189,169 @@ public class DefaultHibernate4Handler implements Hibernate4Handler {
     }
 
     @Nonnull
-    private SessionFactory getSessionFactory(@Nonnull String sessionFactoryName) {
+    @Override
+    public CompletableFuture<Boolean> rebuildHbm4Session() {
+        return rebuildHbm4Session(DefaultHibernate4Factory.KEY_DEFAULT);
+    }
+
+    @Nonnull
+    @Override
+    public CompletableFuture<Boolean> rebuildHbm4Session(@Nonnull String sessionFactoryName) {
+        requireNonBlank(sessionFactoryName, ERROR_SESSION_FACTORY_NAME_BLANK);
+        return rebuildHbm4Session(sessionFactoryName,
+            getConfigValueAsLong(hibernate4Factory.getConfigurationFor(sessionFactoryName), "drainTimeout", DEFAULT_DRAIN_TIMEOUT));
+    }
+
+    /**
+     * Builds a replacement SessionFactory in the background and switches new sessions over to it. The replaced
+     * SessionFactory is retired once its open sessions, including those of its replicas and of open conversations,
+     * have been closed, or once the drain timeout elapses.
+     * The returned future yields {@code false} when sessions were still open at that point, and fails when the
+     * replacement could not be built, in which case the current SessionFactory stays in place.
+     */
+    @Nonnull
+    @Override
+    public CompletableFuture<Boolean> rebuildHbm4Session(@Nonnull final String sessionFactoryName, final long drainTimeout) {
+        requireNonBlank(sessionFactoryName, ERROR_SESSION_FACTORY_NAME_BLANK);
+        if (drainTimeout < 0) {
+            throw new IllegalArgumentException(ERROR_DRAIN_TIMEOUT_INVALID);
+        }
+
+        // concurrent requests share a single rebuild
+        final CompletableFuture<Boolean> rebuild = new CompletableFuture<>();
+        CompletableFuture<Boolean> pending = pendingRebuilds.putIfAbsent(sessionFactoryName, rebuild);
+        if (pending != null) {
+            return pending;
+        }
+
+        try {
+            bootstrapExecutor.execute(() -> runRebuild(sessionFactoryName, drainTimeout, rebuild));
+        } catch (RejectedExecutionException e) {
+            pendingRebuilds.remove(sessionFactoryName, rebuild);
+            rebuild.completeExceptionally(new RuntimeHibernate4Exception(sessionFactoryName, e));
+        }
+        return rebuild;
+    }
+
+    private void runRebuild(@Nonnull String sessionFactoryName, long drainTimeout, @Nonnull CompletableFuture<Boolean> rebuild) {
+        Throwable failure;
+        try {
+            boolean drained = rebuild(sessionFactoryName, drainTimeout);
+            pendingRebuilds.remove(sessionFactoryName, rebuild);
+            rebuild.complete(drained);
+            return;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            failure = new RuntimeHibernate4Exception(sessionFactoryName, e);
+        } catch (RuntimeException | Error e) {
+            failure = e;
+        }
+        pendingRebuilds.remove(sessionFactoryName, rebuild);
+        rebuild.completeExceptionally(failure);
+    }
+
+    private boolean rebuild(@Nonnull String sessionFactoryName, long drainTimeout) throws InterruptedException {
+        SessionFactory current = hibernate4Storage.get(sessionFactoryName);
+        if (current == null) {
+            // nothing to replace yet
+            getSessionFactory(sessionFactoryName);
+            return true;
+        }
+
+        long start = System.nanoTime();
+        SessionFactory replacement = hibernate4Factory.recreate(sessionFactoryName, current);
+        hibernate4Storage.set(sessionFactoryName, replacement);
+        LOG.info("Rebuilt hibernate '{}' in {} ms", sessionFactoryName, (System.nanoTime() - start) / 1_000_000);
+
+        boolean drained = drain(sessionFactoryName, current, replacement, drainTimeout);
+        hibernate4Factory.retire(sessionFactoryName, current);
+        return drained;
+    }
+
+    private static boolean drain(@Nonnull String sessionFactoryName, @Nonnull SessionFactory sessionFactory, @Nonnull SessionFactory replacement, long drainTimeout) throws InterruptedException {
+        RecordingSessionFactory recordingSessionFactory = RecordingSessionFactory.unwrap(sessionFactory);
+        if (recordingSessionFactory == null) {
+            return true;
+        }
+
+        // callers that looked up the old SessionFactory before the swap get their sessions from the replacement
+        // once it is retired, which happens as soon as nothing is in use so that no session starts before closing
+        recordingSessionFactory.setSuccessor(replacement);
+        long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(drainTimeout);
+        while (!recordingSessionFactory.retireIfUnused()) {
+            if (System.nanoTime() - deadline >= 0) {
+                recordingSessionFactory.retire();
+                LOG.warn("Retiring hibernate '{}' with {} sessions still open", sessionFactoryName, recordingSessionFactory.getUsage());
+                return false;
+            }
+            Thread.sleep(DRAIN_POLL_INTERVAL);
+        }
+        return true;
+    }
+
+    @Nonnull
+    private SessionFactory getSessionFactory(@Nonnull final String sessionFactoryName) {
         SessionFactory sessionFactory = hibernate4Storage.get(sessionFactoryName);
-        if (sessionFactory == null) {
-            sessionFactory = hibernate4Factory.create(sessionFactoryName);
-            hibernate4Storage.set(sessionFactoryName, sessionFactory);
+        if (sessionFactory != null) {
+            return sessionFactory;
         }
-        return sessionFactory;
+
+        // only one thread builds a given SessionFactory, every other caller waits for its outcome
+        FutureTask<SessionFactory> task = new FutureTask<>(() -> {
+            SessionFactory sf = hibernate4Storage.get(sessionFactoryName);
+            if (sf == null) {
+                sf = hibernate4Factory.create(sessionFactoryName);
+                hibernate4Storage.set(sessionFactoryName, sf);
+            }
+            return sf;
+        });
+
+        FutureTask<SessionFactory> pending = pendingSessionFactories.putIfAbsent(sessionFactoryName, task);
+        if (pending == null) {
+            pending = task;
+            Thread builder = Thread.currentThread();
+            int priority = builder.getPriority();
+            sessionFactoryBuilders.put(sessionFactoryName, builder);
+            try {
+                task.run();
+            } finally {
+                // a failed build is not cached; the next caller tries again
+                pendingSessionFactories.remove(sessionFactoryName, task);
+                sessionFactoryBuilders.remove(sessionFactoryName, builder);
+                builder.setPriority(priority);
+            }
+        } else {
+            boostBuilder(sessionFactoryName);
+        }
+
+        try {
+            return pending.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeHibernate4Exception(sessionFactoryName, e);
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof RuntimeException) {
+                throw (RuntimeException) cause;
+            } else if (cause instanceof Error) {
+                throw (Error) cause;
+            }
+            throw new RuntimeHibernate4Exception(sessionFactoryName, (Exception) cause);
+        }
+    }
+
+    /**
+     * Raises the priority of a thread building a SessionFactory, i.e, a background build at low priority,
+     * to that of a caller waiting for it. The builder restores its own priority once done.
+     */
+    private void boostBuilder(@Nonnull String sessionFactoryName) {
+        final int priority = Thread.currentThread().getPriority();
+        // atomic with the builder deregistering itself, so that a finished builder is never boosted
+        sessionFactoryBuilders.computeIfPresent(sessionFactoryName, (name, builder) -> {
+            if (builder.getPriority() < priority) {
+                builder.setPriority(priority);
+            }
+            return builder;
+        });
     }
 }
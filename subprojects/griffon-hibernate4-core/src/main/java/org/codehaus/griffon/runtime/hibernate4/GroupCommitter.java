@@ -0,0 +1,226 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codehaus.griffon.runtime.hibernate4;
+
+import griffon.annotations.core.Nonnull;
+import griffon.plugins.hibernate4.Hibernate4Callback;
+import griffon.plugins.hibernate4.exceptions.RuntimeHibernate4Exception;
+import org.codehaus.griffon.runtime.hibernate4.internal.NamedThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Queues write callbacks and hands them over in groups to a single worker thread, which runs each group
+ * in one session and transaction. A group is closed once it holds {@code maxItems} writes or
+ * {@code maxDelay} milliseconds after its first write was taken, whichever comes first. At most
+ * {@code maxQueued} writes wait for the worker, further writes are rejected.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class GroupCommitter {
+    private static final Logger LOG = LoggerFactory.getLogger(GroupCommitter.class);
+    private static final PendingWrite<Object> SHUTDOWN = new PendingWrite<>((sessionFactoryName, session) -> null);
+
+    private final String sessionFactoryName;
+    private final int maxItems;
+    private final long maxDelay;
+    private final int maxQueued;
+    private final Consumer<List<PendingWrite<?>>> committer;
+    private final BlockingQueue<PendingWrite<?>> queue;
+    private final Object lock = new Object();
+    private final AtomicLong groupCount = new AtomicLong(0);
+    private final AtomicLong writeCount = new AtomicLong(0);
+    private final Thread worker;
+    private boolean closed;
+
+    public GroupCommitter(@Nonnull String sessionFactoryName, int maxItems, long maxDelay, int maxQueued, @Nonnull Consumer<List<PendingWrite<?>>> committer) {
+        this.sessionFactoryName = requireNonBlank(sessionFactoryName, "Argument 'sessionFactoryName' must not be blank");
+        if (maxItems < 1) {
+            throw new IllegalArgumentException("Argument 'maxItems' must be greater than zero");
+        }
+        this.maxItems = maxItems;
+        this.maxDelay = Math.max(0L, maxDelay);
+        if (maxQueued < 1) {
+            throw new IllegalArgumentException("Argument 'maxQueued' must be greater than zero");
+        }
+        this.maxQueued = maxQueued;
+        this.queue = new LinkedBlockingQueue<>(maxQueued);
+        this.committer = requireNonNull(committer, "Argument 'committer' must not be null");
+        this.worker = new NamedThreadFactory("hibernate4-" + sessionFactoryName + "-group-commit").newThread(this::run);
+        this.worker.start();
+    }
+
+    @Nonnull
+    public <R> CompletableFuture<R> submit(@Nonnull Hibernate4Callback<R> callback) {
+        PendingWrite<R> write = new PendingWrite<>(requireNonNull(callback, "Argument 'callback' must not be null"));
+        // the lock keeps writes from being queued behind SHUTDOWN, where the worker would never see them
+        synchronized (lock) {
+            if (closed) {
+                write.fail(rejected("has been shut down"));
+            } else if (!queue.offer(write)) {
+                write.fail(rejected("has too many pending writes"));
+            }
+        }
+        return write.future;
+    }
+
+    /**
+     * Commits the writes already queued, then stops the worker thread.
+     */
+    public void close() {
+        synchronized (lock) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        try {
+            // nothing is queued once closed, the worker is bound to make room
+            queue.put(SHUTDOWN);
+            worker.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            worker.interrupt();
+        }
+    }
+
+    public int getMaxItems() {
+        return maxItems;
+    }
+
+    public long getMaxDelay() {
+        return maxDelay;
+    }
+
+    public int getMaxQueued() {
+        return maxQueued;
+    }
+
+    public int getQueueDepth() {
+        return queue.size();
+    }
+
+    public long getGroupCount() {
+        return groupCount.get();
+    }
+
+    public long getWriteCount() {
+        return writeCount.get();
+    }
+
+    private void run() {
+        List<PendingWrite<?>> group = new ArrayList<>(maxItems);
+        boolean running = true;
+        try {
+            while (running) {
+                PendingWrite<?> write = queue.take();
+                long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxDelay);
+                while (write != null) {
+                    if (write == SHUTDOWN) {
+                        running = false;
+                        break;
+                    }
+                    group.add(write);
+                    if (group.size() == maxItems) {
+                        break;
+                    }
+                    write = queue.poll(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                }
+                commit(group);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            commit(group);
+        }
+
+        List<PendingWrite<?>> rejected = new ArrayList<>();
+        synchronized (lock) {
+            closed = true;
+            queue.drainTo(rejected);
+        }
+        for (PendingWrite<?> write : rejected) {
+            if (write != SHUTDOWN) {
+                write.fail(rejected("has been shut down"));
+            }
+        }
+    }
+
+    @Nonnull
+    private RuntimeHibernate4Exception rejected(@Nonnull String reason) {
+        return new RuntimeHibernate4Exception(sessionFactoryName, new RejectedExecutionException("Group commit on '" + sessionFactoryName + "' " + reason));
+    }
+
+    private void commit(@Nonnull List<PendingWrite<?>> group) {
+        if (group.isEmpty()) {
+            return;
+        }
+        try {
+            committer.accept(group);
+        } catch (Throwable t) {
+            LOG.error("Unexpected failure while committing a group of writes on '{}'", sessionFactoryName, t);
+            for (PendingWrite<?> write : group) {
+                write.fail(t);
+            }
+        } finally {
+            groupCount.incrementAndGet();
+            writeCount.addAndGet(group.size());
+            group.clear();
+        }
+    }
+
+    /**
+     * A write callback waiting to be committed, and the future its caller is waiting on.
+     */
+    public static final class PendingWrite<R> {
+        private final Hibernate4Callback<R> callback;
+        private final CompletableFuture<R> future = new CompletableFuture<>();
+
+        private PendingWrite(@Nonnull Hibernate4Callback<R> callback) {
+            this.callback = callback;
+        }
+
+        @Nonnull
+        public Hibernate4Callback<R> getCallback() {
+            return callback;
+        }
+
+        @SuppressWarnings("unchecked")
+        public void complete(Object result) {
+            future.complete((R) result);
+        }
+
+        public void fail(@Nonnull Throwable throwable) {
+            future.completeExceptionally(throwable);
+        }
+    }
+}
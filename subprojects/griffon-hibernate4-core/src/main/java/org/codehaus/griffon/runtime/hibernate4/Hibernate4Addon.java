@@ -19,22 +19,29 @@ package org.codehaus.griffon.runtime.hibernate4;
 
 import griffon.annotations.core.Nonnull;
 import griffon.annotations.inject.DependsOn;
+import griffon.core.Configuration;
 import griffon.core.GriffonApplication;
 import griffon.core.env.Metadata;
 import griffon.core.events.StartupStartEvent;
-import griffon.plugins.hibernate4.Hibernate4Callback;
 import griffon.plugins.hibernate4.Hibernate4Factory;
 import griffon.plugins.hibernate4.Hibernate4Handler;
 import griffon.plugins.hibernate4.Hibernate4Storage;
 import griffon.plugins.monitor.MBeanManager;
 import org.codehaus.griffon.runtime.core.addon.AbstractGriffonAddon;
+import org.codehaus.griffon.runtime.hibernate4.internal.NamedThreadFactory;
 import org.codehaus.griffon.runtime.hibernate4.monitor.Hibernate4StorageMonitor;
-import org.hibernate.Session;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 
 import javax.application.event.EventHandler;
 import javax.inject.Inject;
 import javax.inject.Named;
+import java.util.ArrayList;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
 
 import static griffon.util.ConfigUtils.getConfigValueAsBoolean;
 
@@ -45,6 +52,8 @@ import static griffon.util.ConfigUtils.getConfigValueAsBoolean;
 @DependsOn("datasource")
 @Named("hibernate4")
 public class Hibernate4Addon extends AbstractGriffonAddon {
+    private static final Logger LOG = LoggerFactory.getLogger(Hibernate4Addon.class);
+
     @Inject
     private Hibernate4Handler hibernate4Handler;
 
@@ -60,6 +69,14 @@ public class Hibernate4Addon extends AbstractGriffonAddon {
     @Inject
     private Metadata metadata;
 
+    @Inject
+    @Named("hibernate4")
+    private Configuration configuration;
+
+    private CompletableFuture<Void> startup = CompletableFuture.completedFuture(null);
+    private CompletableFuture<Void> preload = CompletableFuture.completedFuture(null);
+    private SessionFactoryInitializer preloader;
+
     @Override
     public void init(@Nonnull GriffonApplication application) {
         mbeanManager.registerMBean(new Hibernate4StorageMonitor(metadata, hibernate4Storage));
@@ -67,23 +84,66 @@ public class Hibernate4Addon extends AbstractGriffonAddon {
 
     @EventHandler
     public void handleStartupStartEvent(@Nonnull StartupStartEvent event) {
+        List<String> sessionFactoryNames = new ArrayList<>();
+        List<String> lazySessionFactoryNames = new ArrayList<>();
         for (String sessionFactoryName : hibernate4Factory.getSessionFactoryNames()) {
             Map<String, Object> config = hibernate4Factory.getConfigurationFor(sessionFactoryName);
             if (getConfigValueAsBoolean(config, "connect_on_startup", false)) {
-                hibernate4Handler.withHbm4Session(sessionFactoryName, new Hibernate4Callback<Void>() {
-                    @Override
-                    public Void handle(@Nonnull String sessionFactoryName, @Nonnull Session session) {
-                        return null;
-                    }
-                });
+                sessionFactoryNames.add(sessionFactoryName);
+            } else {
+                lazySessionFactoryNames.add(sessionFactoryName);
             }
         }
+
+        int parallelism = configuration.getAsInt("startup.parallelism", Runtime.getRuntime().availableProcessors());
+        SessionFactoryInitializer initializer = new SessionFactoryInitializer(hibernate4Handler, parallelism);
+        if (configuration.getAsBoolean("startup.background", false)) {
+            startup = initializer.initializeAsync(sessionFactoryNames).whenComplete((ignored, failure) -> {
+                if (failure != null) {
+                    LOG.error("Background initialization of hibernate failed", failure instanceof CompletionException ? failure.getCause() : failure);
+                }
+            });
+        } else {
+            initializer.initialize(sessionFactoryNames);
+        }
+
+        if (configuration.getAsBoolean("startup.preload", false)) {
+            preloadSessionFactories(lazySessionFactoryNames);
+        }
+    }
+
+    private void preloadSessionFactories(@Nonnull List<String> sessionFactoryNames) {
+        // low priority threads leave the CPU to the application; callers build what they need themselves
+        preloader = new SessionFactoryInitializer(hibernate4Handler, configuration.getAsInt("startup.preloadParallelism", 1),
+            new NamedThreadFactory("hibernate4-preload", Thread.MIN_PRIORITY));
+        preload = preloader.initializeAsync(sessionFactoryNames).whenComplete((ignored, failure) -> {
+            if (failure != null) {
+                LOG.warn("Background build of hibernate failed, affected session factories are built on first use", failure instanceof CompletionException ? failure.getCause() : failure);
+            }
+        });
     }
 
     @Override
     public void onShutdown(@Nonnull GriffonApplication application) {
+        if (preloader != null) {
+            preloader.cancel();
+        }
+        // let background builds finish so that their SessionFactories are closed too
+        awaitQuietly(startup);
+        awaitQuietly(preload);
         for (String sessionFactoryName : hibernate4Factory.getSessionFactoryNames()) {
             hibernate4Handler.closeHbm4Session(sessionFactoryName);
         }
+        if (hibernate4Handler instanceof DefaultHibernate4Handler) {
+            ((DefaultHibernate4Handler) hibernate4Handler).shutdown();
+        }
+    }
+
+    private static void awaitQuietly(@Nonnull CompletableFuture<Void> future) {
+        try {
+            future.join();
+        } catch (CompletionException | CancellationException e) {
+            // already reported
+        }
     }
 }
@@ -44,6 +44,7 @@ public class LinkedSession extends SessionDecorator {
     public Connection close() throws HibernateException {
         Connection connection = super.close();
         sessionFactory.decreaseSessionCount();
+        sessionFactory.release();
         return connection;
     }
 }
@@ -0,0 +1,126 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codehaus.griffon.runtime.hibernate4;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import griffon.plugins.hibernate4.Hibernate4Cancellation;
+import org.hibernate.Criteria;
+import org.hibernate.HibernateException;
+import org.hibernate.Query;
+import org.hibernate.SQLQuery;
+import org.hibernate.Session;
+import org.hibernate.criterion.DetachedCriteria;
+
+/**
+ * Applies a statement timeout to every query and criteria created through the session, and refuses to create
+ * new ones once the owning callback was cancelled.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class QueryTimeoutSession extends SessionDecorator {
+    private final int queryTimeout;
+    private final Hibernate4Cancellation cancellation;
+
+    /**
+     * @param delegate     the session to decorate
+     * @param queryTimeout timeout in seconds, no timeout is set when 0
+     * @param cancellation handle of the owning callback, if any
+     */
+    public QueryTimeoutSession(@Nonnull Session delegate, int queryTimeout, @Nullable Hibernate4Cancellation cancellation) {
+        super(delegate);
+        this.queryTimeout = queryTimeout;
+        this.cancellation = cancellation;
+    }
+
+    public int getQueryTimeout() {
+        return queryTimeout;
+    }
+
+    @Override
+    public Query createFilter(Object collection, String queryString) {
+        return apply(super.createFilter(collection, queryString));
+    }
+
+    @Override
+    public Query getNamedQuery(String queryName) {
+        return apply(super.getNamedQuery(queryName));
+    }
+
+    @Override
+    public Query createQuery(String queryString) {
+        return apply(super.createQuery(queryString));
+    }
+
+    @Override
+    public SQLQuery createSQLQuery(String queryString) {
+        return (SQLQuery) apply(super.createSQLQuery(queryString));
+    }
+
+    @Override
+    public Criteria createCriteria(Class persistentClass) {
+        return apply(super.createCriteria(persistentClass));
+    }
+
+    @Override
+    public Criteria createCriteria(Class persistentClass, String alias) {
+        return apply(super.createCriteria(persistentClass, alias));
+    }
+
+    @Override
+    public Criteria createCriteria(String entityName) {
+        return apply(super.createCriteria(entityName));
+    }
+
+    @Override
+    public Criteria createCriteria(String entityName, String alias) {
+        return apply(super.createCriteria(entityName, alias));
+    }
+
+    /**
+     * Binds the criteria to the undecorated session, as Hibernate requires, and applies the timeout to it.
+     */
+    @Nonnull
+    public Criteria getExecutableCriteria(@Nonnull DetachedCriteria criteria) {
+        Session session = getDelegate();
+        while (session instanceof SessionDecorator) {
+            session = ((SessionDecorator) session).getDelegate();
+        }
+        return apply(criteria.getExecutableCriteria(session));
+    }
+
+    @Nonnull
+    private Query apply(@Nonnull Query query) {
+        checkCancelled();
+        return queryTimeout > 0 ? query.setTimeout(queryTimeout) : query;
+    }
+
+    @Nonnull
+    private Criteria apply(@Nonnull Criteria criteria) {
+        checkCancelled();
+        return queryTimeout > 0 ? criteria.setTimeout(queryTimeout) : criteria;
+    }
+
+    private void checkCancelled() {
+        if (cancellation != null && cancellation.isCancelled()) {
+            throw new HibernateException("Callback was cancelled");
+        }
+    }
+}
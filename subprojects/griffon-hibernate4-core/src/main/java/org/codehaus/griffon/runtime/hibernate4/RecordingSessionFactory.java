@@ -19,22 +19,199 @@ package org.codehaus.griffon.runtime.hibernate4;
 
 
 import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
 import org.hibernate.HibernateException;
 import org.hibernate.Session;
 import org.hibernate.SessionFactory;
+import org.hibernate.StatelessSession;
+import org.hibernate.tool.hbm2ddl.SchemaExport;
 
+import java.sql.Connection;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ThreadPoolExecutor;
 import java.util.concurrent.atomic.AtomicInteger;
 
+import static java.util.Objects.requireNonNull;
+
 /**
  * @author Andres Almiray
  */
 public class RecordingSessionFactory extends SessionFactoryDecorator {
+    private static final int RETIRED = Integer.MIN_VALUE;
+
     private AtomicInteger sessionCount = new AtomicInteger(0);
+    private AtomicInteger statelessSessionCount = new AtomicInteger(0);
+    // sessions and replica reads in use, with the sign bit set once retired
+    private final AtomicInteger usage = new AtomicInteger(0);
+    private volatile SessionFactory successor;
+    private ThreadPoolExecutor asyncExecutor;
+    private SessionFactoryBulkhead bulkhead;
+    private RetryPolicy retryPolicy;
+    private ConversationRegistry conversations;
+    private ReplicaRouter replicas;
+    private SchemaExport schemaExport;
+    private boolean joinNestedSessions = true;
+    private int queryTimeout;
+    private Map<String, Long> warmupTimes = Collections.emptyMap();
 
     public RecordingSessionFactory(@Nonnull SessionFactory delegate) {
         super(delegate);
     }
 
+    /**
+     * Finds the {@code RecordingSessionFactory} in a chain of decorators.
+     *
+     * @param sessionFactory the (possibly decorated) SessionFactory
+     * @return the matching {@code RecordingSessionFactory} or {@code null} if there's none
+     */
+    @Nullable
+    public static RecordingSessionFactory unwrap(@Nonnull SessionFactory sessionFactory) {
+        SessionFactory candidate = sessionFactory;
+        while (candidate instanceof SessionFactoryDecorator) {
+            if (candidate instanceof RecordingSessionFactory) {
+                return (RecordingSessionFactory) candidate;
+            }
+            candidate = ((SessionFactoryDecorator) candidate).getDelegate();
+        }
+        return null;
+    }
+
+    @Nullable
+    public ThreadPoolExecutor getAsyncExecutor() {
+        return asyncExecutor;
+    }
+
+    public void setAsyncExecutor(@Nullable ThreadPoolExecutor asyncExecutor) {
+        this.asyncExecutor = asyncExecutor;
+    }
+
+    @Nullable
+    public SessionFactoryBulkhead getBulkhead() {
+        return bulkhead;
+    }
+
+    public void setBulkhead(@Nullable SessionFactoryBulkhead bulkhead) {
+        this.bulkhead = bulkhead;
+    }
+
+    @Nullable
+    public RetryPolicy getRetryPolicy() {
+        return retryPolicy;
+    }
+
+    public void setRetryPolicy(@Nullable RetryPolicy retryPolicy) {
+        this.retryPolicy = retryPolicy;
+    }
+
+    @Nullable
+    public ConversationRegistry getConversations() {
+        return conversations;
+    }
+
+    public void setConversations(@Nullable ConversationRegistry conversations) {
+        this.conversations = conversations;
+    }
+
+    @Nullable
+    public ReplicaRouter getReplicas() {
+        return replicas;
+    }
+
+    public void setReplicas(@Nullable ReplicaRouter replicas) {
+        this.replicas = replicas;
+    }
+
+    /**
+     * Drops the schema once this SessionFactory is destroyed. Only set when its schema is {@code create-drop}.
+     */
+    @Nullable
+    public SchemaExport getSchemaExport() {
+        return schemaExport;
+    }
+
+    public void setSchemaExport(@Nullable SchemaExport schemaExport) {
+        this.schemaExport = schemaExport;
+    }
+
+    public boolean isJoinNestedSessions() {
+        return joinNestedSessions;
+    }
+
+    public void setJoinNestedSessions(boolean joinNestedSessions) {
+        this.joinNestedSessions = joinNestedSessions;
+    }
+
+    public int getQueryTimeout() {
+        return queryTimeout;
+    }
+
+    public void setQueryTimeout(int queryTimeout) {
+        this.queryTimeout = queryTimeout;
+    }
+
+    @Nonnull
+    public Map<String, Long> getWarmupTimes() {
+        return warmupTimes;
+    }
+
+    public void setWarmupTimes(@Nonnull Map<String, Long> warmupTimes) {
+        this.warmupTimes = requireNonNull(warmupTimes, "Argument 'warmupTimes' must not be null");
+    }
+
+    /**
+     * Records a session or a replica read about to start.
+     *
+     * @return {@code false} if this SessionFactory has been retired, in which case nothing was recorded
+     */
+    public boolean acquire() {
+        for (int current = usage.get(); (current & RETIRED) == 0; current = usage.get()) {
+            if (usage.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public void release() {
+        usage.decrementAndGet();
+    }
+
+    /**
+     * @return how many sessions and replica reads are in use
+     */
+    public int getUsage() {
+        return usage.get() & ~RETIRED;
+    }
+
+    public boolean isRetired() {
+        return (usage.get() & RETIRED) != 0;
+    }
+
+    /**
+     * Sets the SessionFactory that takes over once this one is retired. Sessions requested afterwards, for instance
+     * by callers that looked this one up before it was replaced, are opened by the successor instead.
+     */
+    public void setSuccessor(@Nonnull SessionFactory successor) {
+        this.successor = requireNonNull(successor, "Argument 'successor' must not be null");
+    }
+
+    /**
+     * Retires this SessionFactory if nothing is in use, in a single step so that no session may start in between.
+     *
+     * @return {@code true} if this SessionFactory is retired
+     */
+    public boolean retireIfUnused() {
+        return usage.compareAndSet(0, RETIRED) || isRetired();
+    }
+
+    /**
+     * Retires this SessionFactory even though sessions or replica reads are still in use.
+     */
+    public void retire() {
+        usage.getAndUpdate(current -> current | RETIRED);
+    }
+
     public int increaseSessionCount() {
         return sessionCount.incrementAndGet();
     }
@@ -47,22 +224,94 @@ public class RecordingSessionFactory extends SessionFactoryDecorator {
         return sessionCount.get();
     }
 
+    public int increaseStatelessSessionCount() {
+        return statelessSessionCount.incrementAndGet();
+    }
+
+    public int decreaseStatelessSessionCount() {
+        return statelessSessionCount.decrementAndGet();
+    }
+
+    public int getStatelessSessionCount() {
+        return statelessSessionCount.get();
+    }
+
     @Override
     public Session openSession() throws HibernateException {
-        Session session = super.openSession();
-        increaseSessionCount();
-        return wrap(session);
+        if (!acquire()) {
+            return successor().openSession();
+        }
+        try {
+            Session session = super.openSession();
+            increaseSessionCount();
+            return wrap(session);
+        } catch (RuntimeException | Error e) {
+            release();
+            throw e;
+        }
     }
 
     @Override
     public Session getCurrentSession() throws HibernateException {
-        Session session = super.getCurrentSession();
-        increaseSessionCount();
-        return wrap(session);
+        if (!acquire()) {
+            return successor().getCurrentSession();
+        }
+        try {
+            Session session = super.getCurrentSession();
+            increaseSessionCount();
+            return wrap(session);
+        } catch (RuntimeException | Error e) {
+            release();
+            throw e;
+        }
+    }
+
+    @Override
+    public StatelessSession openStatelessSession() {
+        if (!acquire()) {
+            return successor().openStatelessSession();
+        }
+        try {
+            StatelessSession session = super.openStatelessSession();
+            increaseStatelessSessionCount();
+            return wrap(session);
+        } catch (RuntimeException | Error e) {
+            release();
+            throw e;
+        }
+    }
+
+    @Override
+    public StatelessSession openStatelessSession(Connection connection) {
+        if (!acquire()) {
+            return successor().openStatelessSession(connection);
+        }
+        try {
+            StatelessSession session = super.openStatelessSession(connection);
+            increaseStatelessSessionCount();
+            return wrap(session);
+        } catch (RuntimeException | Error e) {
+            release();
+            throw e;
+        }
+    }
+
+    @Nonnull
+    private SessionFactory successor() {
+        SessionFactory sessionFactory = successor;
+        if (sessionFactory == null) {
+            throw new HibernateException("SessionFactory has been retired");
+        }
+        return sessionFactory;
     }
 
     @Nonnull
     private Session wrap(@Nonnull Session session) {
         return session instanceof LinkedSession ? session : new LinkedSession(session, this);
     }
+
+    @Nonnull
+    private StatelessSession wrap(@Nonnull StatelessSession session) {
+        return session instanceof LinkedStatelessSession ? session : new LinkedStatelessSession(session, this);
+    }
 }
@@ -0,0 +1,283 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codehaus.griffon.runtime.hibernate4;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import org.codehaus.griffon.runtime.hibernate4.internal.NamedThreadFactory;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Routes read-only work of a session factory to its read replicas, either in turn or to the replica
+ * with the fewest sessions in use. Replicas that fail a health check, or a read because their connection
+ * broke, are taken out of rotation until a later health check succeeds. Without health checks, a single read
+ * tries a replica out of rotation again once {@code retryInterval} elapsed, bringing it back when it succeeds.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class ReplicaRouter {
+    private static final Logger LOG = LoggerFactory.getLogger(ReplicaRouter.class);
+    private static final int VALIDATION_TIMEOUT = 5;
+
+    public enum Strategy {
+        ROUND_ROBIN,
+        LEAST_BUSY
+    }
+
+    private final String sessionFactoryName;
+    private final List<Replica> replicas;
+    private final Strategy strategy;
+    private final AtomicInteger next = new AtomicInteger(0);
+    private volatile ScheduledExecutorService healthChecker;
+    private volatile long retryInterval = 30000L;
+
+    public ReplicaRouter(@Nonnull String sessionFactoryName, @Nonnull List<Replica> replicas, @Nonnull Strategy strategy) {
+        this.sessionFactoryName = requireNonBlank(sessionFactoryName, "Argument 'sessionFactoryName' must not be blank");
+        this.replicas = Collections.unmodifiableList(new ArrayList<>(requireNonNull(replicas, "Argument 'replicas' must not be null")));
+        this.strategy = requireNonNull(strategy, "Argument 'strategy' must not be null");
+    }
+
+    /**
+     * Runs health checks every {@code interval} milliseconds on a background thread.
+     *
+     * @param interval time between two checks of every replica
+     */
+    public synchronized void startHealthChecks(long interval) {
+        if (interval < 1 || healthChecker != null) {
+            return;
+        }
+        healthChecker = Executors.newSingleThreadScheduledExecutor(new NamedThreadFactory("hibernate4-" + sessionFactoryName + "-replica-health"));
+        healthChecker.scheduleWithFixedDelay(this::checkHealth, interval, interval, TimeUnit.MILLISECONDS);
+    }
+
+    public long getRetryInterval() {
+        return retryInterval;
+    }
+
+    /**
+     * @param retryInterval time a replica stays out of rotation before a read tries it again, in milliseconds.
+     *                      Only used when health checks are disabled.
+     */
+    public void setRetryInterval(long retryInterval) {
+        this.retryInterval = retryInterval;
+    }
+
+    /**
+     * Picks the replica for the next read.
+     *
+     * @return a healthy replica, or one out of rotation whose retry is due, or {@code null} if there's none, in
+     * which case the read goes to the primary
+     */
+    @Nullable
+    public Replica select() {
+        if (healthChecker == null) {
+            for (Replica replica : replicas) {
+                if (!replica.isHealthy() && replica.claimRetry(retryInterval)) {
+                    return replica;
+                }
+            }
+        }
+
+        List<Replica> candidates = new ArrayList<>(replicas.size());
+        for (Replica replica : replicas) {
+            if (replica.isHealthy()) {
+                candidates.add(replica);
+            }
+        }
+        if (candidates.isEmpty()) {
+            return null;
+        }
+
+        if (strategy == Strategy.LEAST_BUSY) {
+            Replica selected = candidates.get(0);
+            for (Replica candidate : candidates) {
+                if (candidate.getActiveCount() < selected.getActiveCount()) {
+                    selected = candidate;
+                }
+            }
+            return selected;
+        }
+        return candidates.get(Math.floorMod(next.getAndIncrement(), candidates.size()));
+    }
+
+    public void checkHealth() {
+        for (Replica replica : replicas) {
+            Session session = null;
+            try {
+                session = replica.getSessionFactory().openSession();
+                session.doWork(connection -> {
+                    if (!connection.isValid(VALIDATION_TIMEOUT)) {
+                        throw new SQLException("Connection is not valid");
+                    }
+                });
+                replica.markUp();
+            } catch (RuntimeException e) {
+                replica.markDown(e);
+            } finally {
+                if (session != null) {
+                    session.close();
+                }
+            }
+        }
+    }
+
+    public void close() {
+        synchronized (this) {
+            if (healthChecker != null) {
+                healthChecker.shutdownNow();
+                healthChecker = null;
+            }
+        }
+        for (Replica replica : replicas) {
+            replica.getSessionFactory().close();
+        }
+    }
+
+    @Nonnull
+    public List<Replica> getReplicas() {
+        return replicas;
+    }
+
+    @Nonnull
+    public Strategy getStrategy() {
+        return strategy;
+    }
+
+    public int getHealthyCount() {
+        int count = 0;
+        for (Replica replica : replicas) {
+            count += replica.isHealthy() ? 1 : 0;
+        }
+        return count;
+    }
+
+    @Nonnull
+    public Map<String, Long> getReadCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (Replica replica : replicas) {
+            counts.put(replica.getName(), replica.getReadCount());
+        }
+        return counts;
+    }
+
+    @Nonnull
+    public Map<String, Long> getFailureCounts() {
+        Map<String, Long> counts = new LinkedHashMap<>();
+        for (Replica replica : replicas) {
+            counts.put(replica.getName(), replica.getFailureCount());
+        }
+        return counts;
+    }
+
+    public static final class Replica {
+        private final String name;
+        private final SessionFactory sessionFactory;
+        private final AtomicInteger activeCount = new AtomicInteger(0);
+        private final AtomicLong readCount = new AtomicLong(0);
+        private final AtomicLong failureCount = new AtomicLong(0);
+        private final AtomicLong downSince = new AtomicLong(0);
+        private volatile boolean healthy = true;
+
+        public Replica(@Nonnull String name, @Nonnull SessionFactory sessionFactory) {
+            this.name = requireNonBlank(name, "Argument 'name' must not be blank");
+            this.sessionFactory = requireNonNull(sessionFactory, "Argument 'sessionFactory' must not be null");
+        }
+
+        @Nonnull
+        public String getName() {
+            return name;
+        }
+
+        @Nonnull
+        public SessionFactory getSessionFactory() {
+            return sessionFactory;
+        }
+
+        public boolean isHealthy() {
+            return healthy;
+        }
+
+        public int getActiveCount() {
+            return activeCount.get();
+        }
+
+        public long getReadCount() {
+            return readCount.get();
+        }
+
+        public long getFailureCount() {
+            return failureCount.get();
+        }
+
+        public void acquire() {
+            activeCount.incrementAndGet();
+            readCount.incrementAndGet();
+        }
+
+        public void release() {
+            activeCount.decrementAndGet();
+        }
+
+        public void markDown(@Nonnull Exception cause) {
+            failureCount.incrementAndGet();
+            // a failed retry waits for another retryInterval
+            downSince.set(System.nanoTime());
+            if (healthy) {
+                LOG.warn("Replica '{}' is out of rotation", name, cause);
+                healthy = false;
+            }
+        }
+
+        public void markUp() {
+            if (!healthy) {
+                LOG.info("Replica '{}' is back in rotation", name);
+                healthy = true;
+            }
+        }
+
+        /**
+         * Lets a single read try this replica once {@code retryInterval} milliseconds elapsed since it went out of
+         * rotation, or since the last retry.
+         */
+        public boolean claimRetry(long retryInterval) {
+            long since = downSince.get();
+            return System.nanoTime() - since >= TimeUnit.MILLISECONDS.toNanos(retryInterval) &&
+                downSince.compareAndSet(since, System.nanoTime());
+        }
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codehaus.griffon.runtime.hibernate4;
+
+import griffon.annotations.core.Nonnull;
+import griffon.plugins.hibernate4.exceptions.RuntimeHibernate4Exception;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Decides whether a failed unit of work should be attempted again, and how long to wait before doing so.
+ * Delays grow exponentially from {@code initialBackoff} up to {@code maxBackoff}; each delay is randomized
+ * by &plusmn;{@code jitter} so that colliding writers do not retry in lockstep.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class RetryPolicy {
+    private final String sessionFactoryName;
+    private final int maxAttempts;
+    private final long initialBackoff;
+    private final long maxBackoff;
+    private final double multiplier;
+    private final double jitter;
+    private final List<Class<? extends Throwable>> retryableExceptions;
+    private final AtomicLong retryCount = new AtomicLong(0);
+
+    public RetryPolicy(@Nonnull String sessionFactoryName, int maxAttempts, long initialBackoff, long maxBackoff,
+                       double multiplier, double jitter, @Nonnull Collection<Class<? extends Throwable>> retryableExceptions) {
+        this.sessionFactoryName = requireNonBlank(sessionFactoryName, "Argument 'sessionFactoryName' must not be blank");
+        this.maxAttempts = Math.max(1, maxAttempts);
+        this.initialBackoff = Math.max(0L, initialBackoff);
+        this.maxBackoff = Math.max(this.initialBackoff, maxBackoff);
+        this.multiplier = Math.max(1d, multiplier);
+        this.jitter = Math.min(1d, Math.max(0d, jitter));
+        this.retryableExceptions = Collections.unmodifiableList(new ArrayList<>(requireNonNull(retryableExceptions, "Argument 'retryableExceptions' must not be null")));
+    }
+
+    public int getMaxAttempts() {
+        return maxAttempts;
+    }
+
+    @Nonnull
+    public List<Class<? extends Throwable>> getRetryableExceptions() {
+        return retryableExceptions;
+    }
+
+    public long getRetryCount() {
+        return retryCount.get();
+    }
+
+    /**
+     * @param failure the failure of the last attempt
+     * @param attempt the number of the last attempt, starting at 1
+     * @return {@code true} if there are attempts left and {@code failure} (or any of its causes) is retryable
+     */
+    public boolean canRetry(@Nonnull Throwable failure, int attempt) {
+        if (attempt >= maxAttempts) {
+            return false;
+        }
+        for (Throwable t = failure; t != null; t = t.getCause() == t ? null : t.getCause()) {
+            for (Class<? extends Throwable> type : retryableExceptions) {
+                if (type.isInstance(t)) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Waits before the next attempt and records the retry.
+     *
+     * @param attempt the number of the last attempt, starting at 1
+     */
+    public void backoff(int attempt) throws RuntimeHibernate4Exception {
+        retryCount.incrementAndGet();
+        long delay = computeDelay(attempt);
+        if (delay <= 0) {
+            return;
+        }
+        try {
+            Thread.sleep(delay);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new RuntimeHibernate4Exception(sessionFactoryName, e);
+        }
+    }
+
+    protected long computeDelay(int attempt) {
+        double delay = Math.min((double) maxBackoff, initialBackoff * Math.pow(multiplier, attempt - 1));
+        if (jitter > 0) {
+            delay = delay * (1d - jitter + ThreadLocalRandom.current().nextDouble() * 2d * jitter);
+        }
+        // jitter may push the delay past the cap
+        return Math.max(0L, Math.min(maxBackoff, Math.round(delay)));
+    }
+}
@@ -0,0 +1,90 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codehaus.griffon.runtime.hibernate4;
+
+import griffon.annotations.core.Nonnull;
+import griffon.plugins.hibernate4.exceptions.Hibernate4BulkheadException;
+import griffon.plugins.hibernate4.exceptions.RuntimeHibernate4Exception;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+
+/**
+ * Limits the number of sessions that may be open at the same time on a session factory.
+ * Callers wait up to {@code maxWait} milliseconds for a permit, then fail fast.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class SessionFactoryBulkhead {
+    private final String sessionFactoryName;
+    private final int maxConcurrentSessions;
+    private final long maxWait;
+    private final Semaphore permits;
+    private final AtomicLong rejectedCount = new AtomicLong(0);
+
+    public SessionFactoryBulkhead(@Nonnull String sessionFactoryName, int maxConcurrentSessions, long maxWait) {
+        this.sessionFactoryName = requireNonBlank(sessionFactoryName, "Argument 'sessionFactoryName' must not be blank");
+        if (maxConcurrentSessions < 1) {
+            throw new IllegalArgumentException("Argument 'maxConcurrentSessions' must be greater than zero");
+        }
+        this.maxConcurrentSessions = maxConcurrentSessions;
+        this.maxWait = Math.max(0L, maxWait);
+        this.permits = new Semaphore(maxConcurrentSessions, true);
+    }
+
+    public void acquire() throws RuntimeHibernate4Exception {
+        boolean acquired;
+        try {
+            acquired = permits.tryAcquire(maxWait, TimeUnit.MILLISECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            rejectedCount.incrementAndGet();
+            throw new RuntimeHibernate4Exception(sessionFactoryName, e);
+        }
+
+        if (!acquired) {
+            rejectedCount.incrementAndGet();
+            throw new Hibernate4BulkheadException(sessionFactoryName, maxConcurrentSessions, maxWait);
+        }
+    }
+
+    public void release() {
+        permits.release();
+    }
+
+    public int getMaxConcurrentSessions() {
+        return maxConcurrentSessions;
+    }
+
+    public long getMaxWait() {
+        return maxWait;
+    }
+
+    public int getPermitsInUse() {
+        return maxConcurrentSessions - permits.availablePermits();
+    }
+
+    public long getRejectedCount() {
+        return rejectedCount.get();
+    }
+}
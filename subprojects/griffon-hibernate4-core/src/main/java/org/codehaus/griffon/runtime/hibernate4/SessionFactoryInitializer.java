@@ -0,0 +1,142 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codehaus.griffon.runtime.hibernate4;
+
+import griffon.annotations.core.Nonnull;
+import griffon.plugins.hibernate4.Hibernate4Handler;
+import griffon.plugins.hibernate4.exceptions.Hibernate4StartupException;
+import org.codehaus.griffon.runtime.hibernate4.internal.NamedThreadFactory;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Builds several SessionFactories at once on a bounded pool by opening a first session on each one of them.
+ * Every SessionFactory is attempted even when another one fails; all failures are reported together by a
+ * {@code Hibernate4StartupException}.
+ * <p>
+ * A SessionFactory that is still queued when a caller needs it is built by that caller right away, as builds
+ * go through the handler.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class SessionFactoryInitializer {
+    private static final Logger LOG = LoggerFactory.getLogger(SessionFactoryInitializer.class);
+
+    private final Hibernate4Handler hibernate4Handler;
+    private final int parallelism;
+    private final ThreadFactory threadFactory;
+    private volatile boolean cancelled;
+
+    public SessionFactoryInitializer(@Nonnull Hibernate4Handler hibernate4Handler, int parallelism) {
+        this(hibernate4Handler, parallelism, new NamedThreadFactory("hibernate4-startup"));
+    }
+
+    public SessionFactoryInitializer(@Nonnull Hibernate4Handler hibernate4Handler, int parallelism, @Nonnull ThreadFactory threadFactory) {
+        this.hibernate4Handler = requireNonNull(hibernate4Handler, "Argument 'hibernate4Handler' must not be null");
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Argument 'parallelism' must be greater than 0");
+        }
+        this.parallelism = parallelism;
+        this.threadFactory = requireNonNull(threadFactory, "Argument 'threadFactory' must not be null");
+    }
+
+    /**
+     * Skips every SessionFactory whose build has not started yet. Builds in progress run to completion.
+     */
+    public void cancel() {
+        cancelled = true;
+    }
+
+    /**
+     * Initializes the given SessionFactories, waiting for all of them.
+     *
+     * @throws Hibernate4StartupException if any SessionFactory could not be initialized
+     */
+    public void initialize(@Nonnull Collection<String> sessionFactoryNames) {
+        try {
+            initializeAsync(sessionFactoryNames).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Initializes the given SessionFactories in the background. The returned future completes exceptionally
+     * with a {@code Hibernate4StartupException} if any SessionFactory could not be initialized.
+     */
+    @Nonnull
+    public CompletableFuture<Void> initializeAsync(@Nonnull Collection<String> sessionFactoryNames) {
+        requireNonNull(sessionFactoryNames, "Argument 'sessionFactoryNames' must not be null");
+        if (sessionFactoryNames.isEmpty()) {
+            return CompletableFuture.completedFuture(null);
+        }
+
+        ExecutorService executor = Executors.newFixedThreadPool(Math.min(parallelism, sessionFactoryNames.size()), threadFactory);
+        final List<String> names = new ArrayList<>(sessionFactoryNames);
+        final List<CompletableFuture<Throwable>> outcomes = new ArrayList<>(names.size());
+        try {
+            for (String sessionFactoryName : names) {
+                outcomes.add(CompletableFuture.runAsync(() -> connect(sessionFactoryName), executor)
+                    .handle((ignored, failure) -> failure));
+            }
+        } finally {
+            // threads exit as soon as the queued builds are done
+            executor.shutdown();
+        }
+
+        return CompletableFuture.allOf(outcomes.toArray(new CompletableFuture[0])).thenRun(() -> {
+            Map<String, Throwable> failures = new LinkedHashMap<>();
+            for (int i = 0; i < names.size(); i++) {
+                Throwable failure = outcomes.get(i).join();
+                if (failure != null) {
+                    failures.put(names.get(i), failure instanceof CompletionException && failure.getCause() != null ? failure.getCause() : failure);
+                }
+            }
+            if (!failures.isEmpty()) {
+                throw new Hibernate4StartupException(failures);
+            }
+        });
+    }
+
+    private void connect(@Nonnull String sessionFactoryName) {
+        if (cancelled) {
+            return;
+        }
+        long start = System.nanoTime();
+        hibernate4Handler.withHbm4Session(sessionFactoryName, (name, session) -> null);
+        LOG.debug("Initialized hibernate '{}' in {} ms", sessionFactoryName, (System.nanoTime() - start) / 1_000_000);
+    }
+}
@@ -0,0 +1,219 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.hibernate4;
+
+import griffon.annotations.core.Nonnull;
+import org.hibernate.CacheMode;
+import org.hibernate.ScrollMode;
+import org.hibernate.ScrollableResults;
+import org.hibernate.Session;
+import org.hibernate.SessionFactory;
+import org.hibernate.Transaction;
+import org.hibernate.engine.spi.SessionFactoryImplementor;
+import org.hibernate.persister.entity.EntityPersister;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Warms up a freshly built SessionFactory before it is handed out: fills the connection pool, compiles queries into
+ * the query plan cache and loads second-level cache regions. Every step is timed; a failing step is logged and
+ * does not prevent the remaining ones from running.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class SessionFactoryWarmer {
+    public static final String STEP_CONNECTIONS = "connections";
+    public static final String STEP_NAMED_QUERIES = "namedQueries";
+    public static final String STEP_QUERIES = "queries";
+    public static final String STEP_CACHE_REGIONS = "cacheRegions";
+    private static final Logger LOG = LoggerFactory.getLogger(SessionFactoryWarmer.class);
+    private static final int PRELOAD_BATCH_SIZE = 100;
+
+    private final String sessionFactoryName;
+    private final int connections;
+    private final boolean namedQueries;
+    private final List<String> queries;
+    private final Set<String> cacheRegions;
+
+    public SessionFactoryWarmer(@Nonnull String sessionFactoryName, int connections, boolean namedQueries,
+                                @Nonnull Collection<String> queries, @Nonnull Collection<String> cacheRegions) {
+        this.sessionFactoryName = requireNonBlank(sessionFactoryName, "Argument 'sessionFactoryName' must not be blank");
+        this.connections = Math.max(0, connections);
+        this.namedQueries = namedQueries;
+        this.queries = new ArrayList<>(requireNonNull(queries, "Argument 'queries' must not be null"));
+        this.cacheRegions = new LinkedHashSet<>(requireNonNull(cacheRegions, "Argument 'cacheRegions' must not be null"));
+    }
+
+    /**
+     * Runs every configured step.
+     *
+     * @param dataSource          the datasource of the SessionFactory
+     * @param sessionFactory      the SessionFactory handing out sessions
+     * @param implementor         the SessionFactory built by Hibernate, used to look up entity persisters
+     * @param namedQueryNames     names of the named HQL and SQL queries
+     * @return the time taken by every step that ran, in milliseconds
+     */
+    @Nonnull
+    public Map<String, Long> warmUp(@Nonnull DataSource dataSource, @Nonnull SessionFactory sessionFactory,
+                                    @Nonnull SessionFactoryImplementor implementor, @Nonnull Collection<String> namedQueryNames) {
+        Map<String, Long> times = new LinkedHashMap<>();
+        if (connections > 0) {
+            long start = System.nanoTime();
+            openConnections(dataSource);
+            times.put(STEP_CONNECTIONS, elapsed(start));
+        }
+        if (namedQueries && !namedQueryNames.isEmpty()) {
+            long start = System.nanoTime();
+            compileNamedQueries(sessionFactory, namedQueryNames);
+            times.put(STEP_NAMED_QUERIES, elapsed(start));
+        }
+        if (!queries.isEmpty()) {
+            long start = System.nanoTime();
+            compileQueries(sessionFactory);
+            times.put(STEP_QUERIES, elapsed(start));
+        }
+        if (!cacheRegions.isEmpty()) {
+            long start = System.nanoTime();
+            preloadCacheRegions(sessionFactory, implementor);
+            times.put(STEP_CACHE_REGIONS, elapsed(start));
+        }
+
+        if (!times.isEmpty()) {
+            LOG.info("Warmed up hibernate '{}' in {} (ms)", sessionFactoryName, times);
+        }
+        return Collections.unmodifiableMap(times);
+    }
+
+    private void openConnections(@Nonnull DataSource dataSource) {
+        // hold every connection at once, forcing the pool to open that many
+        List<Connection> opened = new ArrayList<>(connections);
+        try {
+            for (int i = 0; i < connections; i++) {
+                opened.add(dataSource.getConnection());
+            }
+        } catch (SQLException e) {
+            LOG.warn("Could only open {} of {} connections while warming up hibernate '{}'", opened.size(), connections, sessionFactoryName, e);
+        } finally {
+            for (Connection connection : opened) {
+                try {
+                    connection.close();
+                } catch (SQLException e) {
+                    LOG.debug("Could not close connection while warming up hibernate '{}'", sessionFactoryName, e);
+                }
+            }
+        }
+    }
+
+    private void compileNamedQueries(@Nonnull SessionFactory sessionFactory, @Nonnull Collection<String> namedQueryNames) {
+        Session session = sessionFactory.openSession();
+        try {
+            for (String name : namedQueryNames) {
+                try {
+                    // creating the query compiles its plan into the query plan cache
+                    session.getNamedQuery(name);
+                } catch (RuntimeException e) {
+                    LOG.warn("Could not compile named query '{}' while warming up hibernate '{}'", name, sessionFactoryName, e);
+                }
+            }
+        } finally {
+            session.close();
+        }
+    }
+
+    private void compileQueries(@Nonnull SessionFactory sessionFactory) {
+        Session session = sessionFactory.openSession();
+        try {
+            for (String query : queries) {
+                try {
+                    session.createQuery(query);
+                } catch (RuntimeException e) {
+                    LOG.warn("Could not compile query '{}' while warming up hibernate '{}'", query, sessionFactoryName, e);
+                }
+            }
+        } finally {
+            session.close();
+        }
+    }
+
+    private void preloadCacheRegions(@Nonnull SessionFactory sessionFactory, @Nonnull SessionFactoryImplementor implementor) {
+        Set<String> pending = new LinkedHashSet<>(cacheRegions);
+        for (Map.Entry<String, EntityPersister> entry : implementor.getEntityPersisters().entrySet()) {
+            EntityPersister persister = entry.getValue();
+            if (!persister.hasCache()) {
+                continue;
+            }
+            String regionName = persister.getCacheAccessStrategy().getRegion().getName();
+            if (pending.remove(regionName) | pending.remove(entry.getKey())) {
+                preload(sessionFactory, entry.getKey());
+            }
+        }
+        if (!pending.isEmpty()) {
+            LOG.warn("No cached entities found for regions {} while warming up hibernate '{}'", pending, sessionFactoryName);
+        }
+    }
+
+    private void preload(@Nonnull SessionFactory sessionFactory, @Nonnull String entityName) {
+        Session session = sessionFactory.openSession();
+        Transaction transaction = null;
+        try {
+            session.setDefaultReadOnly(true);
+            session.setCacheMode(CacheMode.PUT);
+            transaction = session.beginTransaction();
+            ScrollableResults results = session.createQuery("from " + entityName)
+                .setFetchSize(PRELOAD_BATCH_SIZE)
+                .scroll(ScrollMode.FORWARD_ONLY);
+            try {
+                for (int count = 1; results.next(); count++) {
+                    if (count % PRELOAD_BATCH_SIZE == 0) {
+                        session.clear();
+                    }
+                }
+            } finally {
+                results.close();
+            }
+            transaction.commit();
+        } catch (RuntimeException e) {
+            if (transaction != null && transaction.isActive()) {
+                transaction.rollback();
+            }
+            LOG.warn("Could not preload {} while warming up hibernate '{}'", entityName, sessionFactoryName, e);
+        } finally {
+            session.close();
+        }
+    }
+
+    private static long elapsed(long start) {
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.codehaus.griffon.runtime.hibernate4;
+
+import griffon.annotations.core.Nonnull;
+import org.hibernate.Criteria;
+import org.hibernate.LockMode;
+import org.hibernate.Query;
+import org.hibernate.SQLQuery;
+import org.hibernate.StatelessSession;
+import org.hibernate.Transaction;
+import org.hibernate.procedure.ProcedureCall;
+
+import java.io.Serializable;
+import java.sql.Connection;
+
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Delegates every call to a {@code StatelessSession}. Decorators do not implement {@code SessionImplementor},
+ * thus they can't be given to {@code DetachedCriteria.getExecutableCriteria}; use {@link #createCriteria(Class)}.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class StatelessSessionDecorator implements StatelessSession {
+    private final StatelessSession delegate;
+
+    public StatelessSessionDecorator(@Nonnull StatelessSession delegate) {
+        this.delegate = requireNonNull(delegate, "Argument 'delegate' must not be null");
+    }
+
+    @Nonnull
+    protected StatelessSession getDelegate() {
+        return delegate;
+    }
+
+    @Override
+    public void close() {
+        delegate.close();
+    }
+
+    @Override
+    public Serializable insert(Object entity) {
+        return delegate.insert(entity);
+    }
+
+    @Override
+    public Serializable insert(String entityName, Object entity) {
+        return delegate.insert(entityName, entity);
+    }
+
+    @Override
+    public void update(Object entity) {
+        delegate.update(entity);
+    }
+
+    @Override
+    public void update(String entityName, Object entity) {
+        delegate.update(entityName, entity);
+    }
+
+    @Override
+    public void delete(Object entity) {
+        delegate.delete(entity);
+    }
+
+    @Override
+    public void delete(String entityName, Object entity) {
+        delegate.delete(entityName, entity);
+    }
+
+    @Override
+    public Object get(String entityName, Serializable id) {
+        return delegate.get(entityName, id);
+    }
+
+    @Override
+    public Object get(Class entityClass, Serializable id) {
+        return delegate.get(entityClass, id);
+    }
+
+    @Override
+    public Object get(String entityName, Serializable id, LockMode lockMode) {
+        return delegate.get(entityName, id, lockMode);
+    }
+
+    @Override
+    public Object get(Class entityClass, Serializable id, LockMode lockMode) {
+        return delegate.get(entityClass, id, lockMode);
+    }
+
+    @Override
+    public void refresh(Object entity) {
+        delegate.refresh(entity);
+    }
+
+    @Override
+    public void refresh(String entityName, Object entity) {
+        delegate.refresh(entityName, entity);
+    }
+
+    @Override
+    public void refresh(Object entity, LockMode lockMode) {
+        delegate.refresh(entity, lockMode);
+    }
+
+    @Override
+    public void refresh(String entityName, Object entity, LockMode lockMode) {
+        delegate.refresh(entityName, entity, lockMode);
+    }
+
+    @Override
+    @Deprecated
+    public Connection connection() {
+        return delegate.connection();
+    }
+
+    @Override
+    public String getTenantIdentifier() {
+        return delegate.getTenantIdentifier();
+    }
+
+    @Override
+    public Transaction beginTransaction() {
+        return delegate.beginTransaction();
+    }
+
+    @Override
+    public Transaction getTransaction() {
+        return delegate.getTransaction();
+    }
+
+    @Override
+    public Query getNamedQuery(String queryName) {
+        return delegate.getNamedQuery(queryName);
+    }
+
+    @Override
+    public Query createQuery(String queryString) {
+        return delegate.createQuery(queryString);
+    }
+
+    @Override
+    public SQLQuery createSQLQuery(String queryString) {
+        return delegate.createSQLQuery(queryString);
+    }
+
+    @Override
+    public ProcedureCall getNamedProcedureCall(String name) {
+        return delegate.getNamedProcedureCall(name);
+    }
+
+    @Override
+    public ProcedureCall createStoredProcedureCall(String procedureName) {
+        return delegate.createStoredProcedureCall(procedureName);
+    }
+
+    @Override
+    public ProcedureCall createStoredProcedureCall(String procedureName, Class... resultClasses) {
+        return delegate.createStoredProcedureCall(procedureName, resultClasses);
+    }
+
+    @Override
+    public ProcedureCall createStoredProcedureCall(String procedureName, String... resultSetMappings) {
+        return delegate.createStoredProcedureCall(procedureName, resultSetMappings);
+    }
+
+    @Override
+    public Criteria createCriteria(Class persistentClass) {
+        return delegate.createCriteria(persistentClass);
+    }
+
+    @Override
+    public Criteria createCriteria(Class persistentClass, String alias) {
+        return delegate.createCriteria(persistentClass, alias);
+    }
+
+    @Override
+    public Criteria createCriteria(String entityName) {
+        return delegate.createCriteria(entityName);
+    }
+
+    @Override
+    public Criteria createCriteria(String entityName, String alias) {
+        return delegate.createCriteria(entityName, alias);
+    }
+}
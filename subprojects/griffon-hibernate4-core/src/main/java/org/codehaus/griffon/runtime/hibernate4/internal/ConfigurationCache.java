@@ -0,0 +1,353 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.hibernate4.internal;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import org.hibernate.Version;
+import org.hibernate.cfg.Configuration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InvalidClassException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.PosixFileAttributeView;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermission;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.nio.file.attribute.UserPrincipal;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Keeps a serialized copy of a {@code Configuration} holding nothing but parsed mappings on disk, so that
+ * mapping files need not be parsed again on the next launch.
+ * <p>
+ * Every entry is keyed by a digest of the Hibernate version, the session configuration and the contents of
+ * every mapping resource. An entry whose key does not match is stale and is ignored; it is replaced the
+ * next time the configuration is stored.
+ * <p>
+ * Entries are only read from files owned by the current user that no one else may write to, and only classes
+ * of the JDK, Hibernate, dom4j and the given packages are deserialized. New directories are private to their owner.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class ConfigurationCache {
+    private static final Logger LOG = LoggerFactory.getLogger(ConfigurationCache.class);
+    private static final String CACHE_FILE_SUFFIX = ".cfg.ser";
+    private static final List<String> ALLOWED_PACKAGES = Arrays.asList("java.", "javax.", "org.hibernate.", "org.dom4j.");
+
+    private final File directory;
+    private final ClassLoader classLoader;
+    private final List<String> allowedPackages;
+
+    public ConfigurationCache(@Nonnull File directory, @Nonnull ClassLoader classLoader) {
+        this(directory, classLoader, Collections.<String>emptyList());
+    }
+
+    /**
+     * @param allowedPackages prefixes of further classes that may be deserialized, such as those of custom types
+     */
+    public ConfigurationCache(@Nonnull File directory, @Nonnull ClassLoader classLoader, @Nonnull Collection<String> allowedPackages) {
+        this.directory = requireNonNull(directory, "Argument 'directory' must not be null");
+        this.classLoader = requireNonNull(classLoader, "Argument 'classLoader' must not be null");
+        this.allowedPackages = new ArrayList<>(ALLOWED_PACKAGES);
+        this.allowedPackages.addAll(requireNonNull(allowedPackages, "Argument 'allowedPackages' must not be null"));
+    }
+
+    @Nonnull
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Computes the key of a configuration.
+     *
+     * @return the key, or {@code null} when a mapping resource cannot be found or when the configuration holds
+     * values that render differently on every launch, such as closures, in which case nothing should be cached
+     */
+    @Nullable
+    public String computeKey(@Nonnull Map<String, Object> sessionConfig, @Nonnull List<String> resources) {
+        String config = render(sessionConfig);
+        if (config == null) {
+            LOG.debug("Not caching a hibernate configuration holding values without a stable rendering");
+            return null;
+        }
+
+        MessageDigest digest = newDigest();
+        update(digest, Version.getVersionString());
+        update(digest, config);
+
+        byte[] buffer = new byte[8192];
+        for (String resource : resources) {
+            update(digest, resource);
+            try (InputStream in = classLoader.getResourceAsStream(resource)) {
+                if (in == null) {
+                    return null;
+                }
+                for (int read = in.read(buffer); read != -1; read = in.read(buffer)) {
+                    digest.update(buffer, 0, read);
+                }
+            } catch (IOException e) {
+                LOG.warn("Could not read hibernate resource {}", resource, e);
+                return null;
+            }
+        }
+
+        StringBuilder key = new StringBuilder();
+        for (byte b : digest.digest()) {
+            key.append(String.format("%02x", b));
+        }
+        return key.toString();
+    }
+
+    /**
+     * @return the cached configuration, or {@code null} when there is none or when it is stale
+     */
+    @Nullable
+    public Configuration load(@Nonnull String name, @Nonnull String key) {
+        File file = fileFor(name);
+        if (!file.isFile()) {
+            LOG.debug("No cached hibernate configuration for '{}'", name);
+            return null;
+        }
+        if (!isPrivate(directory.toPath()) || !isPrivate(file.toPath())) {
+            LOG.warn("Ignoring cached hibernate configuration for '{}', {} may be written to by other users", name, file);
+            return null;
+        }
+
+        try (ObjectInputStream in = new FilteringObjectInputStream(new BufferedInputStream(Files.newInputStream(file.toPath())), classLoader, allowedPackages)) {
+            if (!key.equals(in.readUTF())) {
+                LOG.debug("Cached hibernate configuration for '{}' is stale", name);
+                return null;
+            }
+            return (Configuration) in.readObject();
+        } catch (IOException | ClassNotFoundException | ClassCastException e) {
+            LOG.warn("Could not read cached hibernate configuration for '{}' from {}", name, file, e);
+            return null;
+        }
+    }
+
+    /**
+     * Writes the given configuration, replacing any previous entry atomically. Failures are logged and otherwise ignored.
+     */
+    public void store(@Nonnull String name, @Nonnull String key, @Nonnull Configuration configuration) {
+        File file = fileFor(name);
+        Path tmp = null;
+        try {
+            createDirectories(directory.toPath());
+            tmp = Files.createTempFile(directory.toPath(), name, ".tmp");
+            try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp)))) {
+                out.writeUTF(key);
+                out.writeObject(configuration);
+            }
+            Files.move(tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException e) {
+            LOG.warn("Could not cache hibernate configuration for '{}' at {}", name, file, e);
+            if (tmp != null) {
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException ignored) {
+                    // nothing left to do
+                }
+            }
+        }
+    }
+
+    private static void createDirectories(@Nonnull Path path) throws IOException {
+        if (Files.getFileStore(existingParent(path)).supportsFileAttributeView(PosixFileAttributeView.class)) {
+            Files.createDirectories(path, PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rwx------")));
+        } else {
+            Files.createDirectories(path);
+        }
+    }
+
+    @Nonnull
+    private static Path existingParent(@Nonnull Path path) {
+        Path existing = path.toAbsolutePath();
+        while (!Files.exists(existing) && existing.getParent() != null) {
+            existing = existing.getParent();
+        }
+        return existing;
+    }
+
+    /**
+     * Tells whether the path is owned by the current user and can't be written to by anyone else. File systems
+     * without POSIX attributes are trusted, the default cache directory lives in the user's home.
+     */
+    private static boolean isPrivate(@Nonnull Path path) {
+        try {
+            PosixFileAttributeView view = Files.getFileAttributeView(path, PosixFileAttributeView.class);
+            if (view == null) {
+                return true;
+            }
+            PosixFileAttributes attributes = view.readAttributes();
+            UserPrincipal user = path.getFileSystem().getUserPrincipalLookupService().lookupPrincipalByName(System.getProperty("user.name"));
+            return attributes.owner().equals(user) &&
+                !attributes.permissions().contains(PosixFilePermission.GROUP_WRITE) &&
+                !attributes.permissions().contains(PosixFilePermission.OTHERS_WRITE);
+        } catch (IOException | UnsupportedOperationException e) {
+            LOG.debug("Could not read the owner and permissions of {}", path, e);
+            return false;
+        }
+    }
+
+    @Nonnull
+    private File fileFor(@Nonnull String name) {
+        requireNonBlank(name, "Argument 'name' must not be blank");
+        return new File(directory, name + CACHE_FILE_SUFFIX);
+    }
+
+    /**
+     * Renders config values in a stable order so that equal configurations produce equal keys.
+     *
+     * @return the rendered value, or {@code null} when the value, or any value it holds, is not a string, number,
+     * boolean, class, enum, collection or map, as its rendering may change from one launch to the next
+     */
+    @Nullable
+    @SuppressWarnings("unchecked")
+    private static String render(@Nullable Object value) {
+        if (value instanceof Map) {
+            Map<String, String> sorted = new TreeMap<>();
+            for (Map.Entry<Object, Object> entry : ((Map<Object, Object>) value).entrySet()) {
+                String key = render(entry.getKey());
+                String rendered = render(entry.getValue());
+                if (key == null || rendered == null) {
+                    return null;
+                }
+                sorted.put(key, rendered);
+            }
+            return sorted.toString();
+        } else if (value instanceof Collection) {
+            StringBuilder b = new StringBuilder("[");
+            for (Object element : (Collection<Object>) value) {
+                String rendered = render(element);
+                if (rendered == null) {
+                    return null;
+                }
+                b.append(rendered).append(',');
+            }
+            return b.append(']').toString();
+        } else if (value instanceof Class) {
+            return ((Class<?>) value).getName();
+        } else if (value instanceof Enum) {
+            return ((Enum<?>) value).getDeclaringClass().getName() + "." + ((Enum<?>) value).name();
+        } else if (value == null || value instanceof CharSequence || value instanceof Number ||
+            value instanceof Boolean || value instanceof Character) {
+            return String.valueOf(value);
+        }
+        return null;
+    }
+
+    private static void update(@Nonnull MessageDigest digest, @Nonnull String value) {
+        digest.update(value.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    @Nonnull
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    /**
+     * Resolves classes with the application's class loader, as long as they belong to one of the allowed packages.
+     */
+    private static class FilteringObjectInputStream extends ObjectInputStream {
+        private static final String PRIMITIVE = "primitive";
+        private static final List<String> PRIMITIVES = Arrays.asList("boolean", "byte", "char", "short", "int", "long", "float", "double", "void");
+
+        private final ClassLoader classLoader;
+        private final List<String> allowedPackages;
+
+        private FilteringObjectInputStream(@Nonnull InputStream in, @Nonnull ClassLoader classLoader, @Nonnull List<String> allowedPackages) throws IOException {
+            super(in);
+            this.classLoader = classLoader;
+            this.allowedPackages = allowedPackages;
+        }
+
+        @Override
+        protected Class<?> resolveProxyClass(String[] interfaces) throws IOException {
+            throw new InvalidClassException("Proxy classes are not allowed in a cached hibernate configuration");
+        }
+
+        @Override
+        protected Class<?> resolveClass(ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            if (!isAllowed(elementName(desc.getName()))) {
+                throw new InvalidClassException(desc.getName(), "Class is not allowed in a cached hibernate configuration");
+            }
+            try {
+                return Class.forName(desc.getName(), false, classLoader);
+            } catch (ClassNotFoundException e) {
+                return super.resolveClass(desc);
+            }
+        }
+
+        /**
+         * Arrays are named after their element type, such as {@code [Ljava.lang.String;} or {@code [I}.
+         */
+        @Nonnull
+        private static String elementName(@Nonnull String className) {
+            int dimensions = 0;
+            while (className.charAt(dimensions) == '[') {
+                dimensions++;
+            }
+            if (dimensions == 0) {
+                return className;
+            }
+            return className.charAt(dimensions) == 'L' ? className.substring(dimensions + 1, className.length() - 1) : PRIMITIVE;
+        }
+
+        private boolean isAllowed(@Nonnull String className) {
+            if (PRIMITIVE.equals(className) || PRIMITIVES.contains(className)) {
+                return true;
+            }
+            for (String allowedPackage : allowedPackages) {
+                if (className.startsWith(allowedPackage)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
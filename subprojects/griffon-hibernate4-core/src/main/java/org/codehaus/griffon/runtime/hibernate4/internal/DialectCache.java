@@ -0,0 +1,186 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.hibernate4.internal;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import org.hibernate.Version;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Remembers the dialect resolved for every JDBC URL, along with the database product and version it was
+ * resolved for, so that datasources sharing a URL are probed once. Entries are also written to a file when
+ * one is given, letting later launches skip resolving the dialect; the file is ignored when it was written
+ * by another Hibernate version. An entry read from the file is trusted without a probe; it is checked against the
+ * database product and version of the first connection Hibernate opens, and dropped when either changed.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class DialectCache {
+    private static final Logger LOG = LoggerFactory.getLogger(DialectCache.class);
+    private static final String KEY_HIBERNATE_VERSION = "hibernate.version";
+    private static final String SEPARATOR = "\t";
+
+    private final ConcurrentMap<String, DialectDetector.Detection> detections = new ConcurrentHashMap<>();
+    private final Set<String> verifiedUrls = ConcurrentHashMap.newKeySet();
+    private final File file;
+
+    public DialectCache() {
+        this(null);
+    }
+
+    public DialectCache(@Nullable File file) {
+        this.file = file;
+        if (file != null) {
+            read(file);
+        }
+    }
+
+    /**
+     * Returns the dialect of the given JDBC URL, running the detector only if the URL is neither persisted nor was
+     * probed during this launch.
+     */
+    @Nonnull
+    public String getDialect(@Nonnull String jdbcUrl, @Nonnull DialectDetector detector) {
+        requireNonBlank(jdbcUrl, "Argument 'jdbcUrl' must not be blank");
+        requireNonNull(detector, "Argument 'detector' must not be null");
+
+        DialectDetector.Detection detection = detections.get(jdbcUrl);
+        if (detection == null) {
+            final boolean[] detected = new boolean[1];
+            // one probe per URL even when several datasources share it
+            detection = detections.computeIfAbsent(jdbcUrl, url -> {
+                DialectDetector.Detection d = detector.detect();
+                verifiedUrls.add(url);
+                detected[0] = true;
+                LOG.debug("Detected {} for {} {} at {}", d.getDialect(), d.getProductName(), d.getProductVersion(), url);
+                return d;
+            });
+            if (detected[0] && file != null) {
+                write(file);
+            }
+        }
+        return detection.getDialect();
+    }
+
+    /**
+     * @return whether the dialect of the given JDBC URL was detected or verified during this launch
+     */
+    public boolean isVerified(@Nonnull String jdbcUrl) {
+        return verifiedUrls.contains(jdbcUrl);
+    }
+
+    /**
+     * Checks the dialect of the given JDBC URL against the database product and version it is used with. A stale
+     * entry is dropped, so that the dialect is detected again the next time it is asked for.
+     *
+     * @return {@code false} if the entry was stale
+     */
+    public boolean verify(@Nonnull String jdbcUrl, @Nullable String productName, @Nullable String productVersion) {
+        requireNonBlank(jdbcUrl, "Argument 'jdbcUrl' must not be blank");
+        DialectDetector.Detection detection = detections.get(jdbcUrl);
+        if (detection == null || detection.matches(productName, productVersion)) {
+            verifiedUrls.add(jdbcUrl);
+            return true;
+        }
+
+        LOG.debug("Cached {} for {} {} at {} is stale, database is {} {}", detection.getDialect(), detection.getProductName(),
+            detection.getProductVersion(), jdbcUrl, productName, productVersion);
+        if (detections.remove(jdbcUrl, detection) && file != null) {
+            write(file);
+        }
+        return false;
+    }
+
+    @Nullable
+    public DialectDetector.Detection getDetection(@Nonnull String jdbcUrl) {
+        return detections.get(jdbcUrl);
+    }
+
+    private void read(@Nonnull File file) {
+        if (!file.isFile()) {
+            return;
+        }
+
+        Properties properties = new Properties();
+        try (InputStream in = Files.newInputStream(file.toPath())) {
+            properties.load(in);
+        } catch (IOException e) {
+            LOG.warn("Could not read cached hibernate dialects from {}", file, e);
+            return;
+        }
+
+        if (!Version.getVersionString().equals(properties.getProperty(KEY_HIBERNATE_VERSION))) {
+            LOG.debug("Cached hibernate dialects at {} were resolved by another hibernate version", file);
+            return;
+        }
+        for (String url : properties.stringPropertyNames()) {
+            String[] parts = properties.getProperty(url).split(SEPARATOR, -1);
+            if (!KEY_HIBERNATE_VERSION.equals(url) && parts.length == 3) {
+                detections.put(url, new DialectDetector.Detection(parts[0], parts[1], parts[2]));
+            }
+        }
+    }
+
+    private synchronized void write(@Nonnull File file) {
+        Properties properties = new Properties();
+        properties.setProperty(KEY_HIBERNATE_VERSION, Version.getVersionString());
+        for (Map.Entry<String, DialectDetector.Detection> entry : detections.entrySet()) {
+            DialectDetector.Detection d = entry.getValue();
+            properties.setProperty(entry.getKey(), d.getDialect() + SEPARATOR + d.getProductName() + SEPARATOR + d.getProductVersion());
+        }
+
+        Path tmp = null;
+        try {
+            Path directory = file.getAbsoluteFile().getParentFile().toPath();
+            Files.createDirectories(directory);
+            tmp = Files.createTempFile(directory, "dialects", ".tmp");
+            try (OutputStream out = Files.newOutputStream(tmp)) {
+                properties.store(out, "hibernate dialects by JDBC URL");
+            }
+            Files.move(tmp, file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            LOG.warn("Could not cache hibernate dialects at {}", file, e);
+            if (tmp != null) {
+                try {
+                    Files.deleteIfExists(tmp);
+                } catch (IOException ignored) {
+                    // nothing left to do
+                }
+            }
+        }
+    }
+}
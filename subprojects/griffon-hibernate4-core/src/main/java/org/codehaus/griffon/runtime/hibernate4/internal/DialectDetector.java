@@ -27,7 +27,9 @@ import org.hibernate.engine.jdbc.dialect.spi.DialectResolver;
 
 import javax.sql.DataSource;
 import java.sql.Connection;
+import java.sql.DatabaseMetaData;
 import java.sql.SQLException;
+import java.util.Objects;
 
 /**
  * @author Andres Almiray
@@ -42,26 +44,63 @@ public class DialectDetector {
     }
 
     public String getDialect() {
+        return detect().getDialect();
+    }
+
+    /**
+     * Resolves the dialect together with the database product it was resolved for, over a single connection.
+     */
+    public Detection detect() {
         Connection connection = null;
 
         try {
-            String dbName = (String) JdbcUtils.extractDatabaseMetaData(dataSource, "getDatabaseProductName");
             connection = dataSource.getConnection();
+            DatabaseMetaData metaData = connection.getMetaData();
+            String dbName = metaData.getDatabaseProductName();
+            String dbVersion = metaData.getDatabaseProductVersion();
 
-            DialectResolutionInfo dialectResolutionInfo = new DatabaseMetaDataDialectResolutionInfoAdapter(connection.getMetaData());
+            DialectResolutionInfo dialectResolutionInfo = new DatabaseMetaDataDialectResolutionInfoAdapter(metaData);
             Dialect hibernateDialect = dialectResolver.resolveDialect(dialectResolutionInfo);
-            String hibernateDialectClassName = hibernateDialect.getClass().getName();
+            String hibernateDialectClassName = hibernateDialect != null ? hibernateDialect.getClass().getName() : null;
 
             if (GriffonNameUtils.isBlank(hibernateDialectClassName)) {
                 throw new DatabaseException(
                     "Could not determine Hibernate dialect for database name [" + dbName + "]!");
             }
 
-            return hibernateDialectClassName;
+            return new Detection(hibernateDialectClassName, dbName, dbVersion);
         } catch (SQLException e) {
             throw new DatabaseException(e);
         } finally {
             JdbcUtils.closeConnection(connection);
         }
     }
+
+    public static final class Detection {
+        private final String dialect;
+        private final String productName;
+        private final String productVersion;
+
+        public Detection(String dialect, String productName, String productVersion) {
+            this.dialect = dialect;
+            this.productName = productName;
+            this.productVersion = productVersion;
+        }
+
+        public String getDialect() {
+            return dialect;
+        }
+
+        public String getProductName() {
+            return productName;
+        }
+
+        public String getProductVersion() {
+            return productVersion;
+        }
+
+        public boolean matches(String productName, String productVersion) {
+            return Objects.equals(this.productName, productName) && Objects.equals(this.productVersion, productVersion);
+        }
+    }
 }
@@ -0,0 +1,136 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.hibernate4.internal;
+
+import griffon.annotations.core.Nonnull;
+import org.codehaus.griffon.runtime.hibernate4.internal.exceptions.StaleDialectException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.io.PrintWriter;
+import java.sql.Connection;
+import java.sql.DatabaseMetaData;
+import java.sql.SQLException;
+import java.sql.SQLFeatureNotSupportedException;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Hands a persisted dialect to Hibernate without probing the database, and checks it against the first connection
+ * Hibernate opens anyway, usually while building the SessionFactory. A stale dialect is dropped from the cache and,
+ * while {@code strict}, reported with a {@code StaleDialectException} so that the SessionFactory is built again.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class DialectVerifyingDataSource implements DataSource {
+    private static final Logger LOG = LoggerFactory.getLogger(DialectVerifyingDataSource.class);
+
+    private final DataSource dataSource;
+    private final DialectCache dialectCache;
+    private final String jdbcUrl;
+    private volatile boolean strict = true;
+
+    public DialectVerifyingDataSource(@Nonnull DataSource dataSource, @Nonnull DialectCache dialectCache, @Nonnull String jdbcUrl) {
+        this.dataSource = requireNonNull(dataSource, "Argument 'dataSource' must not be null");
+        this.dialectCache = requireNonNull(dialectCache, "Argument 'dialectCache' must not be null");
+        this.jdbcUrl = requireNonBlank(jdbcUrl, "Argument 'jdbcUrl' must not be blank");
+    }
+
+    @Nonnull
+    public DataSource getDataSource() {
+        return dataSource;
+    }
+
+    /**
+     * A SessionFactory that is already built no longer fails on a stale dialect, which is then detected again
+     * by the next launch.
+     */
+    public void setStrict(boolean strict) {
+        this.strict = strict;
+    }
+
+    @Override
+    public Connection getConnection() throws SQLException {
+        return verify(dataSource.getConnection());
+    }
+
+    @Override
+    public Connection getConnection(String username, String password) throws SQLException {
+        return verify(dataSource.getConnection(username, password));
+    }
+
+    @Nonnull
+    private Connection verify(@Nonnull Connection connection) throws SQLException {
+        if (dialectCache.isVerified(jdbcUrl)) {
+            return connection;
+        }
+
+        DatabaseMetaData metaData = connection.getMetaData();
+        String productName = metaData.getDatabaseProductName();
+        String productVersion = metaData.getDatabaseProductVersion();
+        if (dialectCache.verify(jdbcUrl, productName, productVersion)) {
+            return connection;
+        }
+
+        String message = "Cached hibernate dialect for " + jdbcUrl + " does not match " + productName + " " + productVersion;
+        if (!strict) {
+            LOG.warn("{}, it will be detected again", message);
+            return connection;
+        }
+        JdbcUtils.closeConnection(connection);
+        throw new StaleDialectException(message);
+    }
+
+    @Override
+    public PrintWriter getLogWriter() throws SQLException {
+        return dataSource.getLogWriter();
+    }
+
+    @Override
+    public void setLogWriter(PrintWriter out) throws SQLException {
+        dataSource.setLogWriter(out);
+    }
+
+    @Override
+    public void setLoginTimeout(int seconds) throws SQLException {
+        dataSource.setLoginTimeout(seconds);
+    }
+
+    @Override
+    public int getLoginTimeout() throws SQLException {
+        return dataSource.getLoginTimeout();
+    }
+
+    @Override
+    public java.util.logging.Logger getParentLogger() throws SQLFeatureNotSupportedException {
+        return dataSource.getParentLogger();
+    }
+
+    @Override
+    public <T> T unwrap(Class<T> iface) throws SQLException {
+        return iface.isInstance(this) ? iface.cast(this) : dataSource.unwrap(iface);
+    }
+
+    @Override
+    public boolean isWrapperFor(Class<?> iface) throws SQLException {
+        return iface.isInstance(this) || dataSource.isWrapperFor(iface);
+    }
+}
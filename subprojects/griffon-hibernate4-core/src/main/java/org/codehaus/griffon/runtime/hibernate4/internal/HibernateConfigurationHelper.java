@@ -18,24 +18,25 @@
 package org.codehaus.griffon.runtime.hibernate4.internal;
 
 import griffon.core.GriffonApplication;
-import griffon.plugins.hibernate4.Hibernate4Mapping;
 import org.hibernate.HibernateException;
 import org.hibernate.Interceptor;
 import org.hibernate.cfg.Configuration;
 import org.hibernate.cfg.Environment;
 import org.hibernate.cfg.NamingStrategy;
-import org.kordamp.jipsy.util.TypeLoader;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import javax.sql.DataSource;
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
 import java.util.Properties;
 
 import static griffon.util.ConfigUtils.getConfigValue;
 import static griffon.util.ConfigUtils.getConfigValueAsBoolean;
+import static griffon.util.ConfigUtils.getConfigValueAsInt;
 import static griffon.util.GriffonNameUtils.isBlank;
+import static java.util.Objects.requireNonNull;
 
 /**
  * Sets up a shared Hibernate SessionFactory.
@@ -48,13 +49,18 @@ public class HibernateConfigurationHelper {
     public static final String ENTITY_INTERCEPTOR = "entityInterceptor";
     public static final String NAMING_STRATEGY = "namingStrategy";
     public static final String PROPS = "props";
+    public static final String BATCH = "batch";
     private static final Logger LOG = LoggerFactory.getLogger(HibernateConfigurationHelper.class);
-    private static final String HBM_XML_SUFFIX = ".hbm.xml";
 
     private final Map<String, Object> sessionConfig;
     private final String dataSourceName;
     private final DataSource dataSource;
     private final GriffonApplication application;
+    private ConfigurationCache configurationCache;
+    private DialectCache dialectCache;
+    private String jdbcUrl;
+    private MappingIndex mappingIndex;
+    private String sessionFactoryName;
 
     public HibernateConfigurationHelper(GriffonApplication application, Map<String, Object> sessionConfig, String dataSourceName, DataSource dataSource) {
         this.application = application;
@@ -71,15 +77,69 @@ public class HibernateConfigurationHelper {
         return sessionConfig;
     }
 
+    public ConfigurationCache getConfigurationCache() {
+        return configurationCache;
+    }
+
+    /**
+     * Parsed mappings are read from and written to the given cache when set.
+     */
+    public void setConfigurationCache(ConfigurationCache configurationCache) {
+        this.configurationCache = configurationCache;
+    }
+
+    public DialectCache getDialectCache() {
+        return dialectCache;
+    }
+
+    /**
+     * Dialects are looked up by {@code jdbcUrl} in the given cache when both are set.
+     */
+    public void setDialectCache(DialectCache dialectCache) {
+        this.dialectCache = dialectCache;
+    }
+
+    public String getJdbcUrl() {
+        return jdbcUrl;
+    }
+
+    public void setJdbcUrl(String jdbcUrl) {
+        this.jdbcUrl = jdbcUrl;
+    }
+
+    public MappingIndex getMappingIndex() {
+        return mappingIndex;
+    }
+
+    /**
+     * Mappings and entities shared by every SessionFactory are taken from the given index, which is owned by the
+     * factory that builds SessionFactories and read once per application.
+     */
+    public void setMappingIndex(MappingIndex mappingIndex) {
+        this.mappingIndex = mappingIndex;
+    }
+
+    public String getSessionFactoryName() {
+        return sessionFactoryName != null ? sessionFactoryName : dataSourceName;
+    }
+
+    /**
+     * Name used to select annotated entities, defaults to the name of the datasource.
+     */
+    public void setSessionFactoryName(String sessionFactoryName) {
+        this.sessionFactoryName = sessionFactoryName;
+    }
+
     public Configuration buildConfiguration() {
-        // Create Configuration instance.
-        Configuration config = newConfiguration();
+        // Create Configuration instance, mappings included.
+        Configuration config = newConfiguration(resolveMappings());
+        // annotated classes are never serialized, they are added after the cache is written
+        applyEntities(config);
 
         applyEntityInterceptor(config);
         applyNamingStrategy(config);
         applyProperties(config);
         applyDialect(config);
-        applyMappings(config);
 
         return config;
     }
@@ -118,6 +178,20 @@ public class HibernateConfigurationHelper {
         if (getConfigValueAsBoolean(sessionConfig, "formatSql", false)) {
             config.setProperty("hibernate.format_sql", "true");
         }
+
+        applyBatchSettings(config);
+    }
+
+    private void applyBatchSettings(Configuration config) {
+        Map<String, Object> batch = getConfigValue(sessionConfig, BATCH, Collections.<String, Object>emptyMap());
+        if (batch.isEmpty()) {
+            return;
+        }
+
+        config.setProperty(Environment.STATEMENT_BATCH_SIZE, String.valueOf(getConfigValueAsInt(batch, "size", 50)));
+        config.setProperty(Environment.ORDER_INSERTS, String.valueOf(getConfigValueAsBoolean(batch, "orderInserts", true)));
+        config.setProperty(Environment.ORDER_UPDATES, String.valueOf(getConfigValueAsBoolean(batch, "orderUpdates", true)));
+        config.setProperty(Environment.BATCH_VERSIONED_DATA, String.valueOf(getConfigValueAsBoolean(batch, "versionedData", true)));
     }
 
     private void applyDialect(Configuration config) {
@@ -126,31 +200,37 @@ public class HibernateConfigurationHelper {
             config.setProperty("hibernate.dialect", ((Class) dialect).getName());
         } else if (dialect != null) {
             config.setProperty("hibernate.dialect", dialect.toString());
+        } else if (dialectCache != null && !isBlank(jdbcUrl)) {
+            config.setProperty("hibernate.dialect", dialectCache.getDialect(jdbcUrl, new DialectDetector(dataSource)));
+            if (!dialectCache.isVerified(jdbcUrl)) {
+                // persisted by an earlier launch, checked on the first connection Hibernate opens
+                config.getProperties().put(Environment.DATASOURCE, new DialectVerifyingDataSource(dataSource, dialectCache, jdbcUrl));
+            }
         } else {
             DialectDetector dialectDetector = new DialectDetector(dataSource);
             config.setProperty("hibernate.dialect", dialectDetector.getDialect());
         }
     }
 
-    private void applyMappings(final Configuration config) {
-        TypeLoader.load(application.getApplicationClassLoader().get(), "META-INF/types", Hibernate4Mapping.class, new TypeLoader.LineProcessor() {
-            @Override
-            public void process(ClassLoader classLoader, Class<?> type, String line) {
-                line = line.trim();
-                if (isBlank(line)) return;
-                line = line.replace('.', '/');
-                LOG.debug("Registering {} as hibernate resource", line + HBM_XML_SUFFIX);
-                config.addResource(line + HBM_XML_SUFFIX);
-            }
-        });
+    private MappingIndex mappingIndex() {
+        return requireNonNull(mappingIndex, "Property 'mappingIndex' must be set");
+    }
 
-        for (String mapping : getConfigValue(sessionConfig, "mappings", Collections.<String>emptyList())) {
-            mapping = mapping.replace('.', '/');
-            if (!mapping.endsWith(HBM_XML_SUFFIX)) {
-                mapping = mapping + HBM_XML_SUFFIX;
-            }
-            LOG.debug("Registering {} as hibernate resource", mapping);
-            config.addResource(mapping);
+    private List<String> resolveMappings() {
+        return mappingIndex().resolve(getConfigValue(sessionConfig, "mappings", Collections.<String>emptyList()));
+    }
+
+    private void applyEntities(Configuration config) {
+        for (Class<?> entity : mappingIndex().resolveEntities(getSessionFactoryName(), getConfigValue(sessionConfig, "entities", Collections.<Object>emptyList()))) {
+            LOG.debug("Registering {} as hibernate entity", entity.getName());
+            config.addAnnotatedClass(entity);
+        }
+    }
+
+    private void applyMappings(Configuration config, List<String> resources) {
+        for (String resource : resources) {
+            LOG.debug("Registering {} as hibernate resource", resource);
+            config.addResource(resource);
         }
     }
 
@@ -172,9 +252,35 @@ public class HibernateConfigurationHelper {
 
     // -------------------------------------------------
 
-    private Configuration newConfiguration() throws HibernateException {
-        Configuration configuration = new Configuration();
+    private Configuration newConfiguration(List<String> resources) throws HibernateException {
+        Configuration configuration = configurationCache != null ? loadOrCreateConfiguration(resources) : null;
+        if (configuration == null) {
+            configuration = new Configuration();
+            applyMappings(configuration, resources);
+        }
         configuration.getProperties().put(Environment.DATASOURCE, dataSource);
         return configuration;
     }
+
+    private Configuration loadOrCreateConfiguration(List<String> resources) {
+        long start = System.nanoTime();
+        String key = configurationCache.computeKey(sessionConfig, resources);
+        if (key == null) {
+            return null;
+        }
+
+        Configuration configuration = configurationCache.load(dataSourceName, key);
+        if (configuration != null) {
+            // properties are those of the launch that wrote the cache
+            configuration.setProperties(Environment.getProperties());
+            LOG.debug("Loaded {} cached hibernate resources for '{}' in {} ms", resources.size(), dataSourceName, (System.nanoTime() - start) / 1_000_000);
+            return configuration;
+        }
+
+        // the cached copy holds parsed mappings only, nothing specific to this launch such as the datasource
+        configuration = new Configuration();
+        applyMappings(configuration, resources);
+        configurationCache.store(dataSourceName, key, configuration);
+        return configuration;
+    }
 }
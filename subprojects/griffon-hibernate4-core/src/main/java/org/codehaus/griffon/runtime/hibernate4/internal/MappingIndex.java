@@ -0,0 +1,193 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.hibernate4.internal;
+
+import griffon.annotations.core.Nonnull;
+import griffon.plugins.hibernate4.Hibernate4Entity;
+import griffon.plugins.hibernate4.Hibernate4Mapping;
+import griffon.plugins.hibernate4.Hibernate4SessionFactories;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Consumer;
+
+import static griffon.util.GriffonNameUtils.isBlank;
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Mapping resources and annotated entities shared by every SessionFactory, read once per application.
+ * <p>
+ * Both are read from the {@code META-INF/griffon/hibernate4.index} files generated at compile time, where
+ * mappings are already resource paths, i.e, {@code mapping:com/acme/Person.hbm.xml}, and entities are class names,
+ * i.e, {@code entity:com.acme.Book}. The index is written by both the AST transformation for Groovy sources and the
+ * annotation processor for Java sources. The {@code META-INF/types} listings of {@code Hibernate4Mapping} and
+ * {@code Hibernate4Entity} are read instead for every classpath entry that holds no index.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class MappingIndex {
+    public static final String INDEX_RESOURCE = "META-INF/griffon/hibernate4.index";
+    public static final String MAPPING_PREFIX = "mapping:";
+    public static final String ENTITY_PREFIX = "entity:";
+    public static final String HBM_XML_SUFFIX = ".hbm.xml";
+    private static final String MAPPING_TYPES_RESOURCE = "META-INF/types/" + Hibernate4Mapping.class.getName();
+    private static final String ENTITY_TYPES_RESOURCE = "META-INF/types/" + Hibernate4Entity.class.getName();
+    private static final Logger LOG = LoggerFactory.getLogger(MappingIndex.class);
+
+    private final List<String> mappings;
+    private final List<String> entities;
+    private final ClassLoader classLoader;
+    private final ConcurrentMap<String, String> resources = new ConcurrentHashMap<>();
+    private final ConcurrentMap<String, Class<?>> entityClasses = new ConcurrentHashMap<>();
+
+    public MappingIndex(@Nonnull Collection<String> mappings, @Nonnull Collection<String> entities, @Nonnull ClassLoader classLoader) {
+        this.mappings = Collections.unmodifiableList(new ArrayList<>(new LinkedHashSet<>(requireNonNull(mappings, "Argument 'mappings' must not be null"))));
+        this.entities = Collections.unmodifiableList(new ArrayList<>(new LinkedHashSet<>(requireNonNull(entities, "Argument 'entities' must not be null"))));
+        this.classLoader = requireNonNull(classLoader, "Argument 'classLoader' must not be null");
+    }
+
+    @Nonnull
+    public static MappingIndex load(@Nonnull ClassLoader classLoader) {
+        requireNonNull(classLoader, "Argument 'classLoader' must not be null");
+        long start = System.nanoTime();
+        Set<String> mappings = new LinkedHashSet<>();
+        Set<String> entities = new LinkedHashSet<>();
+        Set<String> indexedRoots = new LinkedHashSet<>();
+        read(classLoader, INDEX_RESOURCE, indexedRoots, Collections.<String>emptySet(), line -> {
+            if (line.startsWith(MAPPING_PREFIX)) {
+                mappings.add(line.substring(MAPPING_PREFIX.length()));
+            } else if (line.startsWith(ENTITY_PREFIX)) {
+                entities.add(line.substring(ENTITY_PREFIX.length()));
+            }
+        });
+        // only artifacts compiled without an index are scanned
+        read(classLoader, MAPPING_TYPES_RESOURCE, new LinkedHashSet<>(), indexedRoots, line -> mappings.add(toResource(line)));
+        read(classLoader, ENTITY_TYPES_RESOURCE, new LinkedHashSet<>(), indexedRoots, entities::add);
+        LOG.debug("Found {} hibernate mappings and {} entities in {} ms", mappings.size(), entities.size(), (System.nanoTime() - start) / 1_000_000);
+        return new MappingIndex(mappings, entities, classLoader);
+    }
+
+    /**
+     * @return the resource path of every mapping found on the classpath
+     */
+    @Nonnull
+    public List<String> getMappings() {
+        return mappings;
+    }
+
+    /**
+     * @return the class name of every annotated entity found on the classpath
+     */
+    @Nonnull
+    public List<String> getEntities() {
+        return entities;
+    }
+
+    /**
+     * Combines indexed mappings with additional mappings given as class names or resource paths, dropping duplicates.
+     */
+    @Nonnull
+    public List<String> resolve(@Nonnull Collection<String> additionalMappings) {
+        Set<String> resolved = new LinkedHashSet<>(mappings);
+        for (String mapping : additionalMappings) {
+            resolved.add(resources.computeIfAbsent(mapping, MappingIndex::toResource));
+        }
+        return new ArrayList<>(resolved);
+    }
+
+    /**
+     * Loads the indexed entities that belong to the given SessionFactory, plus additional entities given as classes
+     * or class names, dropping duplicates. Indexed entities belong to every SessionFactory unless they are annotated
+     * with {@code Hibernate4SessionFactories}; additional entities always belong to it.
+     */
+    @Nonnull
+    public List<Class<?>> resolveEntities(@Nonnull String sessionFactoryName, @Nonnull Collection<?> additionalEntities) {
+        requireNonBlank(sessionFactoryName, "Argument 'sessionFactoryName' must not be blank");
+        Set<Class<?>> resolved = new LinkedHashSet<>();
+        for (String entity : entities) {
+            Class<?> entityClass = loadEntity(entity);
+            Hibernate4SessionFactories sessionFactories = entityClass.getAnnotation(Hibernate4SessionFactories.class);
+            if (sessionFactories == null || Arrays.asList(sessionFactories.value()).contains(sessionFactoryName)) {
+                resolved.add(entityClass);
+            }
+        }
+        for (Object entity : additionalEntities) {
+            resolved.add(entity instanceof Class ? (Class<?>) entity : loadEntity(String.valueOf(entity)));
+        }
+        return new ArrayList<>(resolved);
+    }
+
+    @Nonnull
+    private Class<?> loadEntity(@Nonnull String className) {
+        return entityClasses.computeIfAbsent(className, name -> {
+            try {
+                return Class.forName(name, false, classLoader);
+            } catch (ClassNotFoundException e) {
+                throw new IllegalArgumentException("Cannot load hibernate entity " + name, e);
+            }
+        });
+    }
+
+    @Nonnull
+    public static String toResource(@Nonnull String mapping) {
+        String resource = mapping.endsWith(HBM_XML_SUFFIX) ? mapping.substring(0, mapping.length() - HBM_XML_SUFFIX.length()) : mapping;
+        return resource.replace('.', '/') + HBM_XML_SUFFIX;
+    }
+
+    private static void read(@Nonnull ClassLoader classLoader, @Nonnull String resource, @Nonnull Set<String> roots, @Nonnull Set<String> skippedRoots, @Nonnull Consumer<String> lineProcessor) {
+        try {
+            Enumeration<URL> urls = classLoader.getResources(resource);
+            while (urls.hasMoreElements()) {
+                URL url = urls.nextElement();
+                String location = url.toExternalForm();
+                String root = location.substring(0, location.length() - resource.length());
+                if (skippedRoots.contains(root)) {
+                    continue;
+                }
+                roots.add(root);
+                try (BufferedReader reader = new BufferedReader(new InputStreamReader(url.openStream(), StandardCharsets.UTF_8))) {
+                    for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                        line = line.trim();
+                        if (!isBlank(line) && !line.startsWith("#")) {
+                            lineProcessor.accept(line);
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            LOG.warn("Could not read {}", resource, e);
+        }
+    }
+}
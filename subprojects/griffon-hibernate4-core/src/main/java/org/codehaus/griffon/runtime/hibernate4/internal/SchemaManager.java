@@ -0,0 +1,194 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.runtime.hibernate4.internal;
+
+import griffon.annotations.core.Nonnull;
+import griffon.annotations.core.Nullable;
+import org.hibernate.cfg.Configuration;
+import org.hibernate.dialect.Dialect;
+import org.hibernate.tool.hbm2ddl.DatabaseMetadata;
+import org.hibernate.tool.hbm2ddl.SchemaUpdateScript;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import javax.sql.DataSource;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+
+import static griffon.util.GriffonNameUtils.requireNonBlank;
+import static java.util.Objects.requireNonNull;
+
+/**
+ * Keeps a database schema up to date without introspecting it on every launch.
+ * <p>
+ * A checksum of the DDL generated from the mappings is stored, together with the time the last update took, in a
+ * metadata table of the same database. While the checksum matches nothing else is done; otherwise the schema is
+ * compared with the mappings and only the missing tables, columns and constraints are created, as
+ * {@code hibernate.hbm2ddl.auto=update} would.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+public class SchemaManager {
+    public static final String DEFAULT_TABLE = "GRIFFON_HIBERNATE4_SCHEMA";
+    private static final Logger LOG = LoggerFactory.getLogger(SchemaManager.class);
+
+    public enum Outcome {
+        /**
+         * The checksum matched; the schema was left alone.
+         */
+        UNCHANGED,
+        /**
+         * The incremental DDL was applied and the new checksum stored.
+         */
+        UPDATED,
+        /**
+         * The schema could not be managed; the checksum was not stored.
+         */
+        FAILED
+    }
+
+    private final String sessionFactoryName;
+    private final String table;
+
+    public SchemaManager(@Nonnull String sessionFactoryName, @Nonnull String table) {
+        this.sessionFactoryName = requireNonBlank(sessionFactoryName, "Argument 'sessionFactoryName' must not be blank");
+        this.table = requireNonBlank(table, "Argument 'table' must not be blank");
+    }
+
+    /**
+     * Brings the schema in line with the mappings of the given configuration, which must define a dialect.
+     */
+    @Nonnull
+    public Outcome update(@Nonnull DataSource dataSource, @Nonnull Configuration configuration) {
+        requireNonNull(dataSource, "Argument 'dataSource' must not be null");
+        requireNonNull(configuration, "Argument 'configuration' must not be null");
+
+        long start = System.nanoTime();
+        Dialect dialect = Dialect.getDialect(configuration.getProperties());
+        String checksum = checksum(dialect, configuration.generateSchemaCreationScript(dialect));
+
+        try (Connection connection = dataSource.getConnection()) {
+            connection.setAutoCommit(true);
+            Entry stored = read(connection);
+            if (stored != null && checksum.equals(stored.checksum)) {
+                LOG.info("Schema of hibernate '{}' is unchanged, skipped its update and saved {} ms",
+                    sessionFactoryName, Math.max(0L, stored.duration - elapsed(start)));
+                return Outcome.UNCHANGED;
+            }
+
+            int statements = 0;
+            int failures = 0;
+            List<SchemaUpdateScript> scripts = configuration.generateSchemaUpdateScriptList(dialect, new DatabaseMetadata(connection, dialect, configuration));
+            try (Statement statement = connection.createStatement()) {
+                for (SchemaUpdateScript script : scripts) {
+                    try {
+                        statement.executeUpdate(script.getScript());
+                        statements++;
+                    } catch (SQLException e) {
+                        if (!script.isQuiet()) {
+                            failures++;
+                            LOG.error("Could not update schema of hibernate '{}': {}", sessionFactoryName, script.getScript(), e);
+                        }
+                    }
+                }
+            }
+            if (failures > 0) {
+                // leave the checksum stale so that the next launch tries again
+                return Outcome.FAILED;
+            }
+
+            long duration = elapsed(start);
+            write(connection, stored != null, checksum, duration);
+            LOG.info("Updated schema of hibernate '{}' with {} statements in {} ms", sessionFactoryName, statements, duration);
+            return Outcome.UPDATED;
+        } catch (SQLException | RuntimeException e) {
+            LOG.warn("Could not manage schema of hibernate '{}'", sessionFactoryName, e);
+            return Outcome.FAILED;
+        }
+    }
+
+    @Nullable
+    private Entry read(@Nonnull Connection connection) throws SQLException {
+        try (PreparedStatement statement = connection.prepareStatement("select CHECKSUM, DURATION from " + table + " where SESSION_FACTORY = ?")) {
+            statement.setString(1, sessionFactoryName);
+            try (ResultSet resultSet = statement.executeQuery()) {
+                return resultSet.next() ? new Entry(resultSet.getString(1), resultSet.getLong(2)) : null;
+            }
+        } catch (SQLException e) {
+            LOG.debug("Creating schema metadata table {}", table, e);
+            try (Statement statement = connection.createStatement()) {
+                statement.executeUpdate("create table " + table +
+                    " (SESSION_FACTORY varchar(255) not null primary key, CHECKSUM varchar(64) not null, DURATION bigint not null)");
+            }
+            return null;
+        }
+    }
+
+    private void write(@Nonnull Connection connection, boolean exists, @Nonnull String checksum, long duration) throws SQLException {
+        String sql = exists ?
+            "update " + table + " set CHECKSUM = ?, DURATION = ? where SESSION_FACTORY = ?" :
+            "insert into " + table + " (CHECKSUM, DURATION, SESSION_FACTORY) values (?, ?, ?)";
+        try (PreparedStatement statement = connection.prepareStatement(sql)) {
+            statement.setString(1, checksum);
+            statement.setLong(2, duration);
+            statement.setString(3, sessionFactoryName);
+            statement.executeUpdate();
+        }
+    }
+
+    @Nonnull
+    private static String checksum(@Nonnull Dialect dialect, @Nonnull String[] script) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(dialect.getClass().getName().getBytes(StandardCharsets.UTF_8));
+            for (String line : script) {
+                digest.update((byte) '\n');
+                digest.update(line.getBytes(StandardCharsets.UTF_8));
+            }
+            StringBuilder checksum = new StringBuilder();
+            for (byte b : digest.digest()) {
+                checksum.append(String.format("%02x", b));
+            }
+            return checksum.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static long elapsed(long start) {
+        return (System.nanoTime() - start) / 1_000_000;
+    }
+
+    private static final class Entry {
+        private final String checksum;
+        private final long duration;
+
+        private Entry(@Nonnull String checksum, long duration) {
+            this.checksum = checksum;
+            this.duration = duration;
+        }
+    }
+}
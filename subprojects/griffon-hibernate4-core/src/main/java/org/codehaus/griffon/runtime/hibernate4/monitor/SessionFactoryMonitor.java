@@ -19,11 +19,18 @@ package org.codehaus.griffon.runtime.hibernate4.monitor;
 
 import griffon.annotations.core.Nonnull;
 import griffon.core.env.Metadata;
+import org.codehaus.griffon.runtime.hibernate4.ConversationRegistry;
 import org.codehaus.griffon.runtime.hibernate4.RecordingSessionFactory;
+import org.codehaus.griffon.runtime.hibernate4.ReplicaRouter;
+import org.codehaus.griffon.runtime.hibernate4.RetryPolicy;
+import org.codehaus.griffon.runtime.hibernate4.SessionFactoryBulkhead;
 import org.codehaus.griffon.runtime.monitor.AbstractMBeanRegistration;
 
 import javax.management.MBeanServer;
 import javax.management.ObjectName;
+import java.util.Collections;
+import java.util.Map;
+import java.util.concurrent.ThreadPoolExecutor;
 
 import static java.util.Objects.requireNonNull;
 
@@ -56,4 +63,80 @@ public class SessionFactoryMonitor extends AbstractMBeanRegistration implements
     public int getSessionCount() {
         return delegate.getSessionCount();
     }
+
+    @Override
+    public int getStatelessSessionCount() {
+        return delegate.getStatelessSessionCount();
+    }
+
+    @Override
+    public int getAsyncQueueDepth() {
+        ThreadPoolExecutor executor = delegate.getAsyncExecutor();
+        return executor != null ? executor.getQueue().size() : 0;
+    }
+
+    @Override
+    public int getAsyncActiveCount() {
+        ThreadPoolExecutor executor = delegate.getAsyncExecutor();
+        return executor != null ? executor.getActiveCount() : 0;
+    }
+
+    @Override
+    public int getBulkheadPermitsInUse() {
+        SessionFactoryBulkhead bulkhead = delegate.getBulkhead();
+        return bulkhead != null ? bulkhead.getPermitsInUse() : 0;
+    }
+
+    @Override
+    public long getBulkheadRejectedCount() {
+        SessionFactoryBulkhead bulkhead = delegate.getBulkhead();
+        return bulkhead != null ? bulkhead.getRejectedCount() : 0L;
+    }
+
+    @Override
+    public long getRetryCount() {
+        RetryPolicy retryPolicy = delegate.getRetryPolicy();
+        return retryPolicy != null ? retryPolicy.getRetryCount() : 0L;
+    }
+
+    @Override
+    public int getConversationCount() {
+        ConversationRegistry conversations = delegate.getConversations();
+        return conversations != null ? conversations.getConversationCount() : 0;
+    }
+
+    @Override
+    public int getConversationEntityCount() {
+        ConversationRegistry conversations = delegate.getConversations();
+        return conversations != null ? conversations.getEntityCount() : 0;
+    }
+
+    @Override
+    public long getConversationEvictionCount() {
+        ConversationRegistry conversations = delegate.getConversations();
+        return conversations != null ? conversations.getEvictionCount() : 0L;
+    }
+
+    @Override
+    public int getHealthyReplicaCount() {
+        ReplicaRouter replicas = delegate.getReplicas();
+        return replicas != null ? replicas.getHealthyCount() : 0;
+    }
+
+    @Override
+    public Map<String, Long> getReplicaReadCounts() {
+        ReplicaRouter replicas = delegate.getReplicas();
+        return replicas != null ? replicas.getReadCounts() : Collections.<String, Long>emptyMap();
+    }
+
+    @Override
+    public Map<String, Long> getReplicaFailureCounts() {
+        ReplicaRouter replicas = delegate.getReplicas();
+        return replicas != null ? replicas.getFailureCounts() : Collections.<String, Long>emptyMap();
+    }
+
+    @Override
+    public Map<String, Long> getWarmupTimes() {
+        return delegate.getWarmupTimes();
+    }
 }
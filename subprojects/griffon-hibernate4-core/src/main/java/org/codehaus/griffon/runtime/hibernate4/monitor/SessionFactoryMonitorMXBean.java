@@ -17,10 +17,38 @@
  */
 package org.codehaus.griffon.runtime.hibernate4.monitor;
 
+import java.util.Map;
+
 /**
  * @author Andres Almiray
  * @since 1.2.0
  */
 public interface SessionFactoryMonitorMXBean {
     int getSessionCount();
+
+    int getStatelessSessionCount();
+
+    int getAsyncQueueDepth();
+
+    int getAsyncActiveCount();
+
+    int getBulkheadPermitsInUse();
+
+    long getBulkheadRejectedCount();
+
+    long getRetryCount();
+
+    int getConversationCount();
+
+    int getConversationEntityCount();
+
+    long getConversationEvictionCount();
+
+    int getHealthyReplicaCount();
+
+    Map<String, Long> getReplicaReadCounts();
+
+    Map<String, Long> getReplicaFailureCounts();
+
+    Map<String, Long> getWarmupTimes();
 }
@@ -0,0 +1,32 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.plugins.hibernate4
+
+import org.kordamp.jipsy.annotations.TypeProviderFor
+
+import javax.persistence.Entity
+import javax.persistence.Id
+
+@Entity
+@Hibernate4SessionFactories('people')
+@TypeProviderFor(Hibernate4Entity)
+class Book implements Hibernate4Entity {
+    @Id
+    Integer id
+    String title
+}
@@ -0,0 +1,124 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.hibernate4
+
+import griffon.test.core.GriffonUnitRule
+import org.hibernate.Session
+import org.junit.Rule
+import spock.lang.Requires
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import javax.inject.Inject
+
+@Unroll
+class Hibernate4BatchSpec extends Specification {
+    private static final int ROWS = 20000
+    // run with -Dhibernate4.benchmark=true, and optionally -Dhibernate4.benchmark.rows, to compare throughput
+    private static final int BENCHMARK_ROWS = Integer.getInteger('hibernate4.benchmark.rows', 100000)
+
+    static {
+        System.setProperty("org.slf4j.simpleLogger.defaultLogLevel", "warn")
+    }
+
+    @Rule
+    public final GriffonUnitRule griffon = new GriffonUnitRule()
+
+    @Inject
+    private Hibernate4Handler hibernate4Handler
+
+    void 'Writing #rows entities in batches of #batchSize flushes #flushes times'() {
+        when:
+        Hibernate4BatchResult result = hibernate4Handler.writeHbm4Batch('people', people(rows), batchSize)
+
+        then:
+        result.rowsWritten == rows
+        result.flushes == flushes
+        countPeople() == rows
+
+        where:
+        rows | batchSize || flushes
+        0    | 50        || 0
+        49   | 50        || 1
+        50   | 50        || 1
+        1005 | 50        || 21
+    }
+
+    void 'Batch size must be positive'() {
+        when:
+        hibernate4Handler.writeHbm4Batch('people', people(1), 0)
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+
+    void 'Batched writes store as many rows as a plain callback'() {
+        when:
+        hibernate4Handler.withHbm4Session('people') { String sessionFactoryName, Session session ->
+            Iterator<Person> iterator = people(ROWS)
+            while (iterator.hasNext()) {
+                session.save(iterator.next())
+            }
+        }
+        Hibernate4BatchResult result = hibernate4Handler.writeHbm4Batch('people', people(ROWS), 50)
+
+        then:
+        result.rowsWritten == ROWS
+        result.flushes == ROWS.intdiv(50)
+        countPeople() == ROWS * 2
+    }
+
+    @Requires({ Boolean.getBoolean('hibernate4.benchmark') })
+    void 'Batched writes outpace a plain callback'() {
+        given: 'a warmed up SessionFactory'
+        hibernate4Handler.writeHbm4Batch('people', people(1000), 50)
+
+        when:
+        long plainStart = System.nanoTime()
+        hibernate4Handler.withHbm4Session('people') { String sessionFactoryName, Session session ->
+            Iterator<Person> iterator = people(BENCHMARK_ROWS)
+            while (iterator.hasNext()) {
+                session.save(iterator.next())
+            }
+        }
+        long plainMillis = (System.nanoTime() - plainStart).intdiv(1_000_000)
+
+        long batchStart = System.nanoTime()
+        Hibernate4BatchResult result = hibernate4Handler.writeHbm4Batch('people', people(BENCHMARK_ROWS), 50)
+        long batchMillis = (System.nanoTime() - batchStart).intdiv(1_000_000)
+
+        then: 'a failure reports both timings'
+        result.rowsWritten == BENCHMARK_ROWS
+        batchMillis < plainMillis
+    }
+
+    private static Iterator<Person> people(int count) {
+        List<Person> people = []
+        for (int i = 1; i <= count; i++) {
+            people << new Person(name: "name${i}", lastname: "lastname${i}")
+        }
+        people.iterator()
+    }
+
+    private long countPeople() {
+        hibernate4Handler.withHbm4Session('people') { String sessionFactoryName, Session session ->
+            session.createQuery('select count(p) from Person p').uniqueResult()
+        }
+    }
+}
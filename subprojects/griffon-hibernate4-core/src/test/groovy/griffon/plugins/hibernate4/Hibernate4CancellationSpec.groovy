@@ -0,0 +1,154 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.plugins.hibernate4
+
+import griffon.plugins.hibernate4.exceptions.RuntimeHibernate4Exception
+import griffon.test.core.GriffonUnitRule
+import org.codehaus.griffon.runtime.hibernate4.RecordingSessionFactory
+import org.hibernate.QueryTimeoutException
+import org.hibernate.Session
+import org.hibernate.criterion.DetachedCriteria
+import org.hibernate.criterion.Restrictions
+import org.junit.Rule
+import spock.lang.Specification
+
+import javax.inject.Inject
+import java.util.concurrent.CancellationException
+import java.util.concurrent.Callable
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.TimeUnit
+
+class Hibernate4CancellationSpec extends Specification {
+    private static final String SLOW_QUERY = 'select count(*) from system_range(1, 100000) a, system_range(1, 100000) b'
+
+    static {
+        System.setProperty("org.slf4j.simpleLogger.defaultLogLevel", "warn")
+    }
+
+    @Rule
+    public final GriffonUnitRule griffon = new GriffonUnitRule()
+
+    @Inject
+    private Hibernate4Handler hibernate4Handler
+
+    @Inject
+    private Hibernate4Storage hibernate4Storage
+
+    private final ExecutorService executor = Executors.newSingleThreadExecutor()
+
+    void cleanup() {
+        executor.shutdownNow()
+    }
+
+    void 'A per call query timeout aborts a long running query'() {
+        when:
+        long start = System.nanoTime()
+        hibernate4Handler.withHbm4Session('people', 1, null) { String sessionFactoryName, Session session ->
+            session.createSQLQuery(SLOW_QUERY).uniqueResult()
+        }
+
+        then:
+        RuntimeHibernate4Exception e = thrown()
+        e.cause instanceof QueryTimeoutException
+        TimeUnit.NANOSECONDS.toSeconds(System.nanoTime() - start) < 10
+    }
+
+    void 'The session factory query timeout applies to every session'() {
+        given:
+        hibernate4Handler.withHbm4Session('people') { String sessionFactoryName, Session session -> }
+        RecordingSessionFactory.unwrap(hibernate4Storage.get('people')).queryTimeout = 1
+
+        when:
+        hibernate4Handler.withHbm4Session('people') { String sessionFactoryName, Session session ->
+            session.createSQLQuery(SLOW_QUERY).uniqueResult()
+        }
+
+        then:
+        RuntimeHibernate4Exception e = thrown()
+        e.cause instanceof QueryTimeoutException
+    }
+
+    void 'The session factory query timeout applies to detached criteria'() {
+        given:
+        hibernate4Handler.withHbm4Session('people') { String sessionFactoryName, Session session ->
+            session.save(new Person(id: 1, name: 'Danno', lastname: 'Ferrin'))
+        }
+        RecordingSessionFactory.unwrap(hibernate4Storage.get('people')).queryTimeout = 1
+        DetachedCriteria criteria = DetachedCriteria.forClass(Person)
+            .add(Restrictions.sqlRestriction("(${SLOW_QUERY}) > 0"))
+
+        when:
+        hibernate4Handler.withHbm4Scroll('people', criteria, 100, 0) { String sessionFactoryName, Session session, Object[] row -> }
+
+        then:
+        RuntimeHibernate4Exception e = thrown()
+        e.cause instanceof QueryTimeoutException
+    }
+
+    void 'Cancelling aborts the running statement and rolls back'() {
+        given:
+        Hibernate4Cancellation cancellation = new Hibernate4Cancellation()
+        CountDownLatch running = new CountDownLatch(1)
+        Future<?> search = executor.submit({
+            hibernate4Handler.withHbm4Session('people', -1, cancellation) { String sessionFactoryName, Session session ->
+                session.save(new Person(id: 1, name: 'Danno', lastname: 'Ferrin'))
+                session.flush()
+                running.countDown()
+                session.createSQLQuery(SLOW_QUERY).uniqueResult()
+            }
+        } as Callable)
+        running.await(60, TimeUnit.SECONDS)
+        Thread.sleep(200)
+
+        when:
+        cancellation.cancel()
+        search.get(10, TimeUnit.SECONDS)
+
+        then:
+        ExecutionException e = thrown()
+        e.cause instanceof RuntimeHibernate4Exception
+        cancellation.cancelled
+        countPeople() == 0
+    }
+
+    void 'Cancelling outside of a query fails the callback'() {
+        given:
+        Hibernate4Cancellation cancellation = new Hibernate4Cancellation()
+
+        when:
+        hibernate4Handler.withHbm4Session('people', -1, cancellation) { String sessionFactoryName, Session session ->
+            session.save(new Person(id: 1, name: 'Danno', lastname: 'Ferrin'))
+            cancellation.cancel()
+        }
+
+        then:
+        RuntimeHibernate4Exception e = thrown()
+        e.cause instanceof CancellationException
+        countPeople() == 0
+    }
+
+    private long countPeople() {
+        hibernate4Handler.withHbm4Session('people') { String sessionFactoryName, Session session ->
+            ((Number) session.createQuery('select count(p) from Person p').uniqueResult()).longValue()
+        }
+    }
+}
@@ -0,0 +1,514 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package griffon.plugins.hibernate4
+
+import griffon.core.GriffonApplication
+import griffon.plugins.hibernate4.events.Hibernate4ConnectEndEvent
+import griffon.plugins.hibernate4.exceptions.Hibernate4BulkheadException
+import griffon.plugins.hibernate4.exceptions.Hibernate4StartupException
+import griffon.plugins.hibernate4.exceptions.RuntimeHibernate4Exception
+import griffon.test.core.GriffonUnitRule
+import org.codehaus.griffon.runtime.hibernate4.GroupCommitter
+import org.codehaus.griffon.runtime.hibernate4.LinkedSession
+import org.codehaus.griffon.runtime.hibernate4.RecordingSessionFactory
+import org.codehaus.griffon.runtime.hibernate4.SessionFactoryBulkhead
+import org.codehaus.griffon.runtime.hibernate4.SessionFactoryInitializer
+import org.codehaus.griffon.runtime.hibernate4.internal.NamedThreadFactory
+import org.hibernate.Session
+import org.hibernate.SessionFactory
+import org.junit.Rule
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import javax.application.event.EventHandler
+import javax.inject.Inject
+import java.util.concurrent.Callable
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutionException
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.RejectedExecutionException
+import java.util.concurrent.TimeUnit
+import java.util.concurrent.TimeoutException
+import java.util.concurrent.atomic.AtomicInteger
+import java.util.function.Consumer
+
+@Unroll
+class Hibernate4ConcurrencySpec extends Specification {
+    private static final int THREADS = 32
+
+    static {
+        System.setProperty("org.slf4j.simpleLogger.defaultLogLevel", "warn")
+    }
+
+    @Rule
+    public final GriffonUnitRule griffon = new GriffonUnitRule()
+
+    @Inject
+    private Hibernate4Handler hibernate4Handler
+
+    @Inject
+    private GriffonApplication application
+
+    @Inject
+    private Hibernate4Storage hibernate4Storage
+
+    private ExecutorService executor
+
+    void setup() {
+        executor = Executors.newFixedThreadPool(THREADS)
+    }
+
+    void cleanup() {
+        executor.shutdownNow()
+        executor.awaitTermination(10, TimeUnit.SECONDS)
+    }
+
+    void 'Concurrent first access to #name builds a single SessionFactory'() {
+        given:
+        ConnectCounter counter = new ConnectCounter()
+        application.eventRouter.subscribe(counter)
+        CountDownLatch start = new CountDownLatch(1)
+
+        when:
+        List<Future<SessionFactory>> futures = (1..THREADS).collect {
+            executor.submit({
+                start.await()
+                hibernate4Handler.withHbm4Session(name) { String sessionFactoryName, Session session ->
+                    session.sessionFactory
+                }
+            } as Callable<SessionFactory>)
+        }
+        start.countDown()
+        Set<SessionFactory> sessionFactories = futures.collect { it.get(60, TimeUnit.SECONDS) } as Set
+
+        then:
+        counter.connections.get() == 1
+        sessionFactories.size() == 1
+
+        where:
+        name       | _
+        'default'  | _
+        'people'   | _
+    }
+
+    void 'Concurrent first access to a bogus SessionFactory reports the failure to every caller'() {
+        given:
+        CountDownLatch start = new CountDownLatch(1)
+
+        when:
+        List<Future<Object>> futures = (1..THREADS).collect {
+            executor.submit({
+                start.await()
+                hibernate4Handler.withHbm4Session('bogus') { String sessionFactoryName, Session session -> true }
+            } as Callable<Object>)
+        }
+        start.countDown()
+        List<Throwable> failures = futures.collect { Future<Object> future ->
+            try {
+                future.get(60, TimeUnit.SECONDS)
+                null
+            } catch (ExecutionException e) {
+                e.cause
+            }
+        }
+
+        then:
+        failures.every { it instanceof IllegalArgumentException }
+    }
+
+    void 'Startup initializes every SessionFactory in parallel'() {
+        given:
+        ConnectCounter counter = new ConnectCounter()
+        application.eventRouter.subscribe(counter)
+
+        when:
+        new SessionFactoryInitializer(hibernate4Handler, 3).initialize(['default', 'people', 'reports'])
+
+        then:
+        counter.connections.get() == 3
+    }
+
+    void 'Startup reports every SessionFactory that could not be initialized'() {
+        when:
+        new SessionFactoryInitializer(hibernate4Handler, 2).initialize(['bogus', 'people', 'missing'])
+
+        then:
+        Hibernate4StartupException e = thrown(Hibernate4StartupException)
+        e.failures.keySet() as List == ['bogus', 'missing']
+        e.cause instanceof IllegalArgumentException
+        e.suppressed.length == 1
+    }
+
+    void 'Background startup completes exceptionally when a SessionFactory could not be initialized'() {
+        when:
+        new SessionFactoryInitializer(hibernate4Handler, 2).initializeAsync(['people', 'bogus']).get(60, TimeUnit.SECONDS)
+
+        then:
+        ExecutionException e = thrown(ExecutionException)
+        e.cause instanceof Hibernate4StartupException
+        e.cause.failures.keySet() == ['bogus'] as Set
+    }
+
+    void 'Callers build the session factory they need while others are preloaded in the background'() {
+        given:
+        ConnectCounter counter = new ConnectCounter()
+        application.eventRouter.subscribe(counter)
+        int priority = Thread.currentThread().priority
+        SessionFactoryInitializer preloader = new SessionFactoryInitializer(hibernate4Handler, 1,
+            new NamedThreadFactory('hibernate4-preload', Thread.MIN_PRIORITY))
+
+        when:
+        CompletableFuture<Void> preload = preloader.initializeAsync(['people', 'reports', 'internal'])
+        hibernate4Handler.withHbm4Session('internal') { String sessionFactoryName, Session session -> true }
+        preload.get(60, TimeUnit.SECONDS)
+
+        then: 'every session factory is built once'
+        counter.connections.get() == 3
+        Thread.currentThread().priority == priority
+    }
+
+    void 'Cancelled preloads skip session factories not yet built'() {
+        given:
+        ConnectCounter counter = new ConnectCounter()
+        application.eventRouter.subscribe(counter)
+        SessionFactoryInitializer preloader = new SessionFactoryInitializer(hibernate4Handler, 1,
+            new NamedThreadFactory('hibernate4-preload', Thread.MIN_PRIORITY))
+
+        when:
+        preloader.cancel()
+        preloader.initializeAsync(['people', 'reports']).get(60, TimeUnit.SECONDS)
+
+        then:
+        counter.connections.get() == 0
+    }
+
+    void 'Asynchronous session work runs off the calling thread'() {
+        given:
+        Thread caller = Thread.currentThread()
+
+        when:
+        CompletableFuture<Map> future = hibernate4Handler.withHbm4SessionAsync('people') { String sessionFactoryName, Session session ->
+            [name: sessionFactoryName, thread: Thread.currentThread()]
+        }
+        Map result = future.get(60, TimeUnit.SECONDS)
+
+        then:
+        result.name == 'people'
+        result.thread != caller
+        result.thread.name.startsWith('hibernate4-people-async-')
+    }
+
+    void 'Asynchronous session work is rejected when the pool is saturated'() {
+        given: 'internal is configured with one thread and a queue depth of one'
+        hibernate4Handler.withHbm4Session('internal') { String sessionFactoryName, Session session -> null }
+        CountDownLatch release = new CountDownLatch(1)
+        Hibernate4Callback<Boolean> blocker = { String sessionFactoryName, Session session ->
+            release.await(60, TimeUnit.SECONDS)
+        } as Hibernate4Callback<Boolean>
+
+        when:
+        CompletableFuture<Boolean> running = hibernate4Handler.withHbm4SessionAsync('internal', blocker)
+        CompletableFuture<Boolean> queued = hibernate4Handler.withHbm4SessionAsync('internal', blocker)
+        CompletableFuture<Boolean> rejected = hibernate4Handler.withHbm4SessionAsync('internal', blocker)
+        rejected.get(60, TimeUnit.SECONDS)
+
+        then:
+        ExecutionException e = thrown(ExecutionException)
+        e.cause instanceof RuntimeHibernate4Exception
+        e.cause.cause instanceof RejectedExecutionException
+
+        cleanup:
+        release.countDown()
+        running?.get(60, TimeUnit.SECONDS)
+        queued?.get(60, TimeUnit.SECONDS)
+    }
+
+    void 'Fan-out runs every session factory in parallel'() {
+        when:
+        long start = System.nanoTime()
+        Hibernate4FanOutResult<String> result = hibernate4Handler.withHbm4Sessions(['default', 'people', 'internal'], 0) { String sessionFactoryName, Session session ->
+            Thread.sleep(300)
+            sessionFactoryName.toUpperCase()
+        }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start)
+
+        then:
+        result.complete
+        result.results == [default: 'DEFAULT', people: 'PEOPLE', internal: 'INTERNAL']
+        result.merge { a, b -> a + ',' + b } == 'DEFAULT,PEOPLE,INTERNAL'
+        elapsed < 800
+    }
+
+    void 'Fan-out returns partial results when a session factory fails or times out'() {
+        when:
+        Hibernate4FanOutResult<Long> result = hibernate4Handler.withHbm4Sessions(['default', 'people', 'internal'], 500) { String sessionFactoryName, Session session ->
+            switch (sessionFactoryName) {
+                case 'people':
+                    throw new IllegalStateException('boom')
+                case 'internal':
+                    return session.createSQLQuery('select count(*) from system_range(1, 100000) a, system_range(1, 100000) b').uniqueResult()
+                default:
+                    return 1L
+            }
+        }
+
+        then:
+        !result.complete
+        result.results == [default: 1L]
+        result.failures.people instanceof RuntimeHibernate4Exception
+        result.failures.internal instanceof TimeoutException
+    }
+
+    void 'Sessions beyond the bulkhead limit fail fast'() {
+        given: 'internal allows one concurrent session and waits 100 ms for a permit'
+        CountDownLatch opened = new CountDownLatch(1)
+        CountDownLatch release = new CountDownLatch(1)
+        Future<RecordingSessionFactory> holder = executor.submit({
+            hibernate4Handler.withHbm4Session('internal') { String sessionFactoryName, Session session ->
+                opened.countDown()
+                release.await(60, TimeUnit.SECONDS)
+                ((LinkedSession) session).sessionFactory
+            }
+        } as Callable<RecordingSessionFactory>)
+        opened.await(60, TimeUnit.SECONDS)
+
+        when:
+        hibernate4Handler.withHbm4Session('internal') { String sessionFactoryName, Session session -> true }
+
+        then:
+        Hibernate4BulkheadException e = thrown(Hibernate4BulkheadException)
+        e.hibernate4Name == 'internal'
+
+        when:
+        release.countDown()
+        SessionFactoryBulkhead bulkhead = holder.get(60, TimeUnit.SECONDS).bulkhead
+
+        then:
+        bulkhead.permitsInUse == 0
+        bulkhead.rejectedCount == 1
+        hibernate4Handler.withHbm4Session('internal') { String sessionFactoryName, Session session -> true }
+    }
+
+    void 'Group commits run up to maxItems writes in one transaction'() {
+        given: 'people groups up to 10 writes within 50 ms'
+        hibernate4Handler.withHbm4Session('people') { String sessionFactoryName, Session session -> null }
+
+        when:
+        List<CompletableFuture<Integer>> writes = (1..25).collect { int id ->
+            hibernate4Handler.withHbm4GroupCommit('people') { String sessionFactoryName, Session session ->
+                session.save(new Person(name: "name${id}", lastname: "lastname${id}"))
+                System.identityHashCode(session)
+            }
+        }
+        Set<Integer> sessions = writes.collect { it.get(60, TimeUnit.SECONDS) } as Set
+
+        then:
+        sessions.size() == 3
+        countPeople() == 25
+    }
+
+    void 'A failing write does not fail the rest of its group'() {
+        given:
+        hibernate4Handler.withHbm4Session('people') { String sessionFactoryName, Session session -> null }
+
+        when:
+        List<CompletableFuture<Object>> writes = (1..5).collect { int id ->
+            hibernate4Handler.withHbm4GroupCommit('people') { String sessionFactoryName, Session session ->
+                session.save(id == 3 ? new Person() : new Person(name: "name${id}", lastname: "lastname${id}"))
+            }
+        }
+        List<Boolean> outcomes = writes.collect { CompletableFuture<Object> write ->
+            try {
+                write.get(60, TimeUnit.SECONDS)
+                true
+            } catch (ExecutionException e) {
+                assert e.cause instanceof RuntimeHibernate4Exception
+                false
+            }
+        }
+
+        then:
+        outcomes == [true, true, false, true, true]
+        countPeople() == 4
+    }
+
+    void 'Group commits are rejected unless configured'() {
+        when:
+        hibernate4Handler.withHbm4GroupCommit('internal') { String sessionFactoryName, Session session -> true }
+            .get(60, TimeUnit.SECONDS)
+
+        then:
+        ExecutionException e = thrown(ExecutionException)
+        e.cause instanceof RuntimeHibernate4Exception
+        e.cause.cause instanceof RejectedExecutionException
+    }
+
+    void 'Group commits beyond maxQueued or after close are rejected'() {
+        given: 'a worker stuck committing the first write, with room for one more'
+        CountDownLatch committing = new CountDownLatch(1)
+        CountDownLatch release = new CountDownLatch(1)
+        GroupCommitter groupCommitter = new GroupCommitter('people', 1, 0L, 1, { List<GroupCommitter.PendingWrite<?>> group ->
+            committing.countDown()
+            release.await(60, TimeUnit.SECONDS)
+            group*.complete(true)
+        } as Consumer)
+        CompletableFuture<Object> first = groupCommitter.submit { String sessionFactoryName, Session session -> true }
+        committing.await(60, TimeUnit.SECONDS)
+
+        when:
+        CompletableFuture<Object> queued = groupCommitter.submit { String sessionFactoryName, Session session -> true }
+        CompletableFuture<Object> overflow = groupCommitter.submit { String sessionFactoryName, Session session -> true }
+        release.countDown()
+        groupCommitter.close()
+        CompletableFuture<Object> late = groupCommitter.submit { String sessionFactoryName, Session session -> true }
+
+        then:
+        first.get(60, TimeUnit.SECONDS)
+        queued.get(60, TimeUnit.SECONDS)
+        [overflow, late].every { CompletableFuture<Object> write ->
+            try {
+                write.get(60, TimeUnit.SECONDS)
+                false
+            } catch (ExecutionException e) {
+                e.cause.cause instanceof RejectedExecutionException
+            }
+        }
+    }
+
+    void 'Rebuilding a SessionFactory switches new sessions over and drains the old one'() {
+        given: 'a session held open on the current SessionFactory'
+        CountDownLatch opened = new CountDownLatch(1)
+        CountDownLatch release = new CountDownLatch(1)
+        Future<RecordingSessionFactory> holder = holdSession('people', opened, release)
+        opened.await(60, TimeUnit.SECONDS)
+
+        when:
+        CompletableFuture<Boolean> rebuild = hibernate4Handler.rebuildHbm4Session('people', 60000)
+        RecordingSessionFactory replacement = awaitReplacement('people')
+
+        then: 'new sessions use the replacement while the old one drains'
+        replacement != null
+        !rebuild.done
+
+        when:
+        release.countDown()
+        RecordingSessionFactory original = holder.get(60, TimeUnit.SECONDS)
+
+        then:
+        rebuild.get(60, TimeUnit.SECONDS)
+        original.sessionCount == 0
+        !original.is(replacement)
+        original.closed
+        !replacement.closed
+
+        and: 'the create-drop schema is left for the replacement to drop'
+        original.schemaExport == null
+        replacement.schemaExport != null
+    }
+
+    void 'Rebuilding retires the old SessionFactory once the drain timeout elapses'() {
+        given:
+        CountDownLatch opened = new CountDownLatch(1)
+        CountDownLatch release = new CountDownLatch(1)
+        Future<RecordingSessionFactory> holder = holdSession('people', opened, release)
+        opened.await(60, TimeUnit.SECONDS)
+
+        when:
+        boolean drained = hibernate4Handler.rebuildHbm4Session('people', 100).get(60, TimeUnit.SECONDS)
+        release.countDown()
+
+        then:
+        !drained
+        holder.get(60, TimeUnit.SECONDS).sessionCount == 0
+    }
+
+    void 'Sessions requested from a retired SessionFactory are opened by its replacement'() {
+        given: 'a SessionFactory looked up before the rebuild'
+        hibernate4Handler.withHbm4Session('people') { String sessionFactoryName, Session session -> null }
+        SessionFactory original = hibernate4Storage.get('people')
+
+        when:
+        hibernate4Handler.rebuildHbm4Session('people', 60000).get(60, TimeUnit.SECONDS)
+        Session session = original.openSession()
+
+        then:
+        original.closed
+        ((LinkedSession) session).sessionFactory.is(RecordingSessionFactory.unwrap(hibernate4Storage.get('people')))
+
+        cleanup:
+        session?.close()
+    }
+
+    void 'Rebuilding leaves the schema and its rows alone'() {
+        given:
+        hibernate4Handler.withHbm4Session('people') { String sessionFactoryName, Session session ->
+            (1..3).each { int id -> session.save(new Person(name: "name${id}", lastname: "lastname${id}")) }
+        }
+        long before = countPeople()
+
+        when:
+        hibernate4Handler.rebuildHbm4Session('people', 60000).get(60, TimeUnit.SECONDS)
+
+        then:
+        before >= 3
+        countPeople() == before
+    }
+
+    private Future<RecordingSessionFactory> holdSession(String name, CountDownLatch opened, CountDownLatch release) {
+        executor.submit({
+            hibernate4Handler.withHbm4Session(name) { String sessionFactoryName, Session session ->
+                opened.countDown()
+                release.await(60, TimeUnit.SECONDS)
+                ((LinkedSession) session).sessionFactory
+            }
+        } as Callable<RecordingSessionFactory>)
+    }
+
+    private RecordingSessionFactory awaitReplacement(String name) {
+        // the held session keeps the original SessionFactory's count above zero
+        for (int i = 0; i < 600; i++) {
+            RecordingSessionFactory current = hibernate4Handler.withHbm4Session(name) { String sessionFactoryName, Session session ->
+                ((LinkedSession) session).sessionFactory
+            }
+            if (current.sessionCount == 0) {
+                return current
+            }
+            Thread.sleep(100)
+        }
+        null
+    }
+
+    private long countPeople() {
+        hibernate4Handler.withHbm4Session('people') { String sessionFactoryName, Session session ->
+            session.createQuery('select count(p) from Person p').uniqueResult()
+        }
+    }
+
+    private class ConnectCounter {
+        final AtomicInteger connections = new AtomicInteger()
+
+        @EventHandler
+        void handleHibernate4ConnectEndEvent(Hibernate4ConnectEndEvent event) {
+            connections.incrementAndGet()
+        }
+    }
+}
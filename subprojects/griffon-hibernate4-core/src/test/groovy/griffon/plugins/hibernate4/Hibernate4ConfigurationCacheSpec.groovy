@@ -0,0 +1,290 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.plugins.hibernate4
+
+import griffon.core.GriffonApplication
+import griffon.plugins.datasource.DataSourceFactory
+import griffon.test.core.GriffonUnitRule
+import org.codehaus.griffon.runtime.hibernate4.internal.ConfigurationCache
+import org.codehaus.griffon.runtime.hibernate4.internal.DialectCache
+import org.codehaus.griffon.runtime.hibernate4.internal.DialectDetector
+import org.codehaus.griffon.runtime.hibernate4.internal.DialectVerifyingDataSource
+import org.codehaus.griffon.runtime.hibernate4.internal.HibernateConfigurationHelper
+import org.codehaus.griffon.runtime.hibernate4.internal.MappingIndex
+import org.codehaus.griffon.runtime.hibernate4.internal.exceptions.StaleDialectException
+import org.hibernate.cfg.Configuration
+import org.hibernate.dialect.H2Dialect
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import spock.lang.Requires
+import spock.lang.Specification
+
+import javax.inject.Inject
+import javax.sql.DataSource
+import java.sql.Connection
+import java.nio.file.FileSystems
+import java.nio.file.Files
+import java.nio.file.attribute.PosixFilePermissions
+
+class Hibernate4ConfigurationCacheSpec extends Specification {
+    private static final String PERSON = 'griffon/plugins/hibernate4/Person.hbm.xml'
+    // run with -Dhibernate4.benchmark=true to compare building configurations with and without the cache
+    private static final int ITERATIONS = Integer.getInteger('hibernate4.benchmark.iterations', 50)
+
+    static {
+        System.setProperty("org.slf4j.simpleLogger.defaultLogLevel", "warn")
+    }
+
+    @Rule
+    public final GriffonUnitRule griffon = new GriffonUnitRule()
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder()
+
+    @Inject
+    private GriffonApplication application
+
+    @Inject
+    private DataSourceFactory dataSourceFactory
+
+    private MappingIndex mappingIndex
+
+    private final Map<String, Object> sessionConfig = [dialect: H2Dialect, schema: 'create-drop']
+
+    void 'Parsed mappings are cached on first build and loaded on the next one'() {
+        given:
+        ConfigurationCache cache = newCache()
+
+        when:
+        buildConfiguration(cache)
+        String key = cache.computeKey(sessionConfig, [PERSON])
+        Configuration cached = cache.load('people', key)
+
+        then:
+        cached != null
+
+        when:
+        Configuration configuration = buildConfiguration(cache)
+        configuration.buildMappings()
+
+        then:
+        configuration.getClassMapping(Person.name) != null
+        configuration.getProperty('hibernate.dialect') == H2Dialect.name
+    }
+
+    void 'A change in the session configuration makes the cache stale'() {
+        given:
+        ConfigurationCache cache = newCache()
+        buildConfiguration(cache)
+
+        expect:
+        cache.load('people', cache.computeKey(sessionConfig + [logSql: true], [PERSON])) == null
+        cache.load('people', cache.computeKey(sessionConfig, [PERSON])) != null
+    }
+
+    void 'Nothing is cached when a mapping resource is missing'() {
+        expect:
+        newCache().computeKey(sessionConfig, [PERSON, 'com/acme/Missing.hbm.xml']) == null
+    }
+
+    void 'Nothing is cached when the configuration holds values without a stable rendering'() {
+        given:
+        ConfigurationCache cache = newCache()
+
+        expect:
+        cache.computeKey(sessionConfig + [interceptor: { -> null }], [PERSON]) == null
+        cache.computeKey(sessionConfig + [replicas: [names: [new Object()]]], [PERSON]) == null
+        cache.computeKey(sessionConfig + [retry: [retryOn: ['java.sql.SQLException'], maxAttempts: 3]], [PERSON]) != null
+    }
+
+    void 'A corrupt cache entry is rebuilt'() {
+        given:
+        ConfigurationCache cache = newCache()
+        new File(folder.root, 'people.cfg.ser').text = 'garbage'
+
+        when:
+        buildConfiguration(cache)
+
+        then:
+        cache.load('people', cache.computeKey(sessionConfig, [PERSON])) != null
+    }
+
+    @Requires({ FileSystems.default.supportedFileAttributeViews().contains('posix') })
+    void 'The cache directory is private and entries others may write to are ignored'() {
+        given:
+        ConfigurationCache cache = new ConfigurationCache(new File(folder.root, 'cache'), application.applicationClassLoader.get())
+        buildConfiguration(cache)
+        String key = cache.computeKey(sessionConfig, [PERSON])
+
+        expect:
+        Files.getPosixFilePermissions(cache.directory.toPath()) == PosixFilePermissions.fromString('rwx------')
+        cache.load('people', key) != null
+
+        when:
+        Files.setPosixFilePermissions(new File(cache.directory, 'people.cfg.ser').toPath(), PosixFilePermissions.fromString('rw-rw-rw-'))
+
+        then:
+        cache.load('people', key) == null
+    }
+
+    void 'Classes outside of the allowed packages are not deserialized'() {
+        given:
+        String key = newCache().computeKey(sessionConfig, [PERSON])
+        new File(folder.root, 'people.cfg.ser').withObjectOutputStream { ObjectOutputStream out ->
+            out.writeUTF(key)
+            out.writeObject(new Payload())
+        }
+        Payload.deserialized = false
+
+        when:
+        newCache().load('people', key)
+
+        then:
+        !Payload.deserialized
+
+        when:
+        new ConfigurationCache(folder.root, application.applicationClassLoader.get(), [Payload.package.name + '.']).load('people', key)
+
+        then:
+        Payload.deserialized
+    }
+
+    void 'Dialects are detected once per JDBC URL and remembered across launches'() {
+        given:
+        File file = new File(folder.root, 'dialects.properties')
+        CountingDialectDetector detector = new CountingDialectDetector()
+        DialectCache cache = new DialectCache(file)
+
+        when:
+        List<String> dialects = ['jdbc:h2:mem:a', 'jdbc:h2:mem:a', 'jdbc:h2:mem:b'].collect { cache.getDialect(it, detector) }
+
+        then:
+        dialects == [H2Dialect.name] * 3
+        detector.probes == 2
+
+        when: 'the next launch reads the persisted dialects'
+        DialectCache next = new DialectCache(file)
+        String dialect = next.getDialect('jdbc:h2:mem:a', detector)
+
+        then: 'the persisted entry is trusted without a probe until Hibernate connects'
+        dialect == H2Dialect.name
+        detector.probes == 2
+        !next.isVerified('jdbc:h2:mem:a')
+        next.verify('jdbc:h2:mem:a', 'H2', '1.4.200')
+        next.isVerified('jdbc:h2:mem:a')
+        new DialectCache(file).getDetection('jdbc:h2:mem:b').productName == 'H2'
+    }
+
+    void 'Persisted dialects are detected again when the database version changes'() {
+        given:
+        File file = new File(folder.root, 'dialects.properties')
+        CountingDialectDetector detector = new CountingDialectDetector()
+        new DialectCache(file).getDialect('jdbc:h2:mem:a', detector)
+
+        when: 'the database is upgraded before the next launch'
+        detector.version = '2.0.202'
+        DialectCache next = new DialectCache(file)
+        next.getDialect('jdbc:h2:mem:a', detector)
+
+        then:
+        detector.probes == 1
+        !next.verify('jdbc:h2:mem:a', 'H2', '2.0.202')
+        new DialectCache(file).getDetection('jdbc:h2:mem:a') == null
+
+        when:
+        next.getDialect('jdbc:h2:mem:a', detector)
+
+        then:
+        detector.probes == 2
+        new DialectCache(file).getDetection('jdbc:h2:mem:a').productVersion == '2.0.202'
+    }
+
+    void 'A stale persisted dialect fails the first connection while strict'() {
+        given:
+        String url = 'jdbc:h2:mem:stale'
+        File file = new File(folder.root, 'dialects.properties')
+        CountingDialectDetector detector = new CountingDialectDetector(version: '1.0.0')
+        new DialectCache(file).getDialect(url, detector)
+        DataSource h2 = dataSourceFactory.create('people')
+        DialectCache cache = new DialectCache(file)
+
+        when:
+        new DialectVerifyingDataSource(h2, cache, url).connection
+
+        then:
+        thrown(StaleDialectException)
+        cache.getDetection(url) == null
+
+        when: 'a SessionFactory already built only logs it'
+        cache.getDialect(url, detector)
+        cache = new DialectCache(file)
+        DialectVerifyingDataSource dataSource = new DialectVerifyingDataSource(h2, cache, url)
+        dataSource.strict = false
+        Connection connection = dataSource.connection
+
+        then:
+        connection != null
+        cache.getDetection(url) == null
+
+        cleanup:
+        connection?.close()
+        dataSourceFactory.destroy('people', h2)
+    }
+
+    private ConfigurationCache newCache() {
+        new ConfigurationCache(folder.root, application.applicationClassLoader.get())
+    }
+
+    private Configuration buildConfiguration(ConfigurationCache cache) {
+        HibernateConfigurationHelper helper = new HibernateConfigurationHelper(application, sessionConfig, 'people', Mock(DataSource))
+        helper.mappingIndex = mappingIndex()
+        helper.configurationCache = cache
+        helper.buildConfiguration()
+    }
+
+    private MappingIndex mappingIndex() {
+        if (mappingIndex == null) {
+            mappingIndex = MappingIndex.load(application.applicationClassLoader.get())
+        }
+        mappingIndex
+    }
+
+    static class Payload implements Serializable {
+        static boolean deserialized
+
+        private void readObject(ObjectInputStream in) {
+            in.defaultReadObject()
+            deserialized = true
+        }
+    }
+
+    private static class CountingDialectDetector extends DialectDetector {
+        int probes
+        String version = '1.4.200'
+
+        CountingDialectDetector() {
+            super(null)
+        }
+
+        @Override
+        DialectDetector.Detection detect() {
+            probes++
+            new DialectDetector.Detection(H2Dialect.name, 'H2', version)
+        }
+    }
+}
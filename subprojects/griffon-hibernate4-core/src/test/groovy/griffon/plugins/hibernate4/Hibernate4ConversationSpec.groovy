@@ -0,0 +1,247 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.plugins.hibernate4
+
+import griffon.plugins.hibernate4.exceptions.Hibernate4ConversationException
+import griffon.plugins.hibernate4.exceptions.RuntimeHibernate4Exception
+import griffon.test.core.GriffonUnitRule
+import org.codehaus.griffon.runtime.hibernate4.ConversationRegistry
+import org.codehaus.griffon.runtime.hibernate4.RecordingSessionFactory
+import org.hibernate.Session
+import org.junit.Rule
+import spock.lang.Specification
+
+import javax.inject.Inject
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.TimeUnit
+
+class Hibernate4ConversationSpec extends Specification {
+    static {
+        System.setProperty("org.slf4j.simpleLogger.defaultLogLevel", "warn")
+    }
+
+    @Rule
+    public final GriffonUnitRule griffon = new GriffonUnitRule()
+
+    @Inject
+    private Hibernate4Handler hibernate4Handler
+
+    @Inject
+    private Hibernate4Storage hibernate4Storage
+
+    void 'Changes made across units of work are written on commit'() {
+        given:
+        hibernate4Handler.withHbm4Session('people') { String sessionFactoryName, Session session ->
+            session.save(new Person(id: 1, name: 'Danno', lastname: 'Ferrin'))
+        }
+        hibernate4Handler.beginHbm4Conversation('people', 'edit')
+
+        when:
+        Person person = hibernate4Handler.withHbm4Conversation('people', 'edit') { String sessionFactoryName, Session session ->
+            session.get(Person, 1)
+        }
+        person.name = 'Andres'
+        boolean attached = hibernate4Handler.withHbm4Conversation('people', 'edit') { String sessionFactoryName, Session session ->
+            session.save(new Person(id: 2, name: 'James', lastname: 'Williams'))
+            session.contains(person)
+        }
+
+        then:
+        attached
+        names() == ['Danno']
+        conversations().conversationCount == 1
+        conversations().entityCount == 2
+
+        when:
+        hibernate4Handler.commitHbm4Conversation('people', 'edit')
+
+        then:
+        names() == ['Andres', 'James']
+        conversations().conversationCount == 0
+    }
+
+    void 'Discarded conversations write nothing'() {
+        given:
+        hibernate4Handler.beginHbm4Conversation('people', 'edit')
+        hibernate4Handler.withHbm4Conversation('people', 'edit') { String sessionFactoryName, Session session ->
+            session.save(new Person(id: 1, name: 'Danno', lastname: 'Ferrin'))
+        }
+
+        when:
+        hibernate4Handler.discardHbm4Conversation('people', 'edit')
+        hibernate4Handler.withHbm4Conversation('people', 'edit') { String sessionFactoryName, Session session -> }
+
+        then:
+        Hibernate4ConversationException e = thrown()
+        e.conversationId == 'edit'
+        names() == []
+    }
+
+    void 'A failing unit of work ends the conversation'() {
+        given:
+        hibernate4Handler.beginHbm4Conversation('people', 'edit')
+
+        when:
+        hibernate4Handler.withHbm4Conversation('people', 'edit') { String sessionFactoryName, Session session ->
+            throw new IllegalStateException('boom')
+        }
+
+        then:
+        thrown(RuntimeHibernate4Exception)
+        conversations().conversationCount == 0
+    }
+
+    void 'The least recently used conversation is evicted when the limit is reached'() {
+        given:
+        hibernate4Handler.beginHbm4Conversation('people', 'first')
+        hibernate4Handler.beginHbm4Conversation('people', 'second')
+        hibernate4Handler.withHbm4Conversation('people', 'first') { String sessionFactoryName, Session session -> }
+
+        when:
+        hibernate4Handler.beginHbm4Conversation('people', 'third')
+
+        then:
+        conversations().conversationCount == 2
+        conversations().evictionCount == 1
+
+        when:
+        hibernate4Handler.withHbm4Conversation('people', 'second') { String sessionFactoryName, Session session -> }
+
+        then:
+        thrown(Hibernate4ConversationException)
+        hibernate4Handler.withHbm4Conversation('people', 'first') { String sessionFactoryName, Session session -> true }
+    }
+
+    void 'Conversations holding too many entities are evicted'() {
+        given:
+        hibernate4Handler.beginHbm4Conversation('people', 'edit')
+
+        when:
+        hibernate4Handler.withHbm4Conversation('people', 'edit') { String sessionFactoryName, Session session ->
+            (1..4).each { session.save(new Person(id: it, name: "name${it}", lastname: 'lastname')) }
+        }
+
+        then:
+        conversations().conversationCount == 0
+        conversations().evictionCount == 1
+        names() == []
+    }
+
+    void 'Idle conversations are evicted'() {
+        given:
+        RecordingSessionFactory sessionFactory = RecordingSessionFactory.unwrap(hibernate4Storage.get('people'))
+        sessionFactory.conversations.close()
+        sessionFactory.conversations = new ConversationRegistry('people', 2, 50, 0)
+        hibernate4Handler.beginHbm4Conversation('people', 'edit')
+
+        when:
+        Thread.sleep(200)
+        hibernate4Handler.withHbm4Conversation('people', 'edit') { String sessionFactoryName, Session session -> }
+
+        then:
+        thrown(Hibernate4ConversationException)
+        conversations().evictionCount == 1
+    }
+
+    void 'Idle conversations are swept without being accessed again'() {
+        given:
+        RecordingSessionFactory sessionFactory = RecordingSessionFactory.unwrap(hibernate4Storage.get('people'))
+        sessionFactory.conversations.close()
+        sessionFactory.conversations = new ConversationRegistry('people', 2, 50, 0)
+        hibernate4Handler.beginHbm4Conversation('people', 'edit')
+
+        when:
+        long deadline = System.currentTimeMillis() + 5000
+        while (conversations().conversationCount > 0 && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10)
+        }
+
+        then:
+        conversations().conversationCount == 0
+        conversations().evictionCount == 1
+    }
+
+    void 'Conversations are not swept while a unit of work runs on them'() {
+        given:
+        RecordingSessionFactory sessionFactory = RecordingSessionFactory.unwrap(hibernate4Storage.get('people'))
+        sessionFactory.conversations.close()
+        sessionFactory.conversations = new ConversationRegistry('people', 2, 50, 0)
+        hibernate4Handler.beginHbm4Conversation('people', 'edit')
+        CountDownLatch started = new CountDownLatch(1)
+        CountDownLatch release = new CountDownLatch(1)
+        CompletableFuture<Boolean> work = CompletableFuture.supplyAsync {
+            hibernate4Handler.withHbm4Conversation('people', 'edit') { String sessionFactoryName, Session session ->
+                started.countDown()
+                release.await(60, TimeUnit.SECONDS)
+                session.open
+            }
+        }
+        started.await(60, TimeUnit.SECONDS)
+
+        when: 'the unit of work outlasts maxIdleTime'
+        Thread.sleep(200)
+
+        then:
+        conversations().conversationCount == 1
+        conversations().evictionCount == 0
+
+        when:
+        release.countDown()
+
+        then:
+        work.get(5, TimeUnit.SECONDS)
+    }
+
+    void 'Entity counts are read while a unit of work is in progress'() {
+        given:
+        hibernate4Handler.beginHbm4Conversation('people', 'edit')
+        hibernate4Handler.withHbm4Conversation('people', 'edit') { String sessionFactoryName, Session session ->
+            session.save(new Person(id: 1, name: 'Danno', lastname: 'Ferrin'))
+        }
+        CountDownLatch started = new CountDownLatch(1)
+        CountDownLatch release = new CountDownLatch(1)
+        Thread worker = Thread.start {
+            hibernate4Handler.withHbm4Conversation('people', 'edit') { String sessionFactoryName, Session session ->
+                started.countDown()
+                release.await(60, TimeUnit.SECONDS)
+            }
+        }
+        started.await(60, TimeUnit.SECONDS)
+
+        when:
+        CompletableFuture<Integer> entityCount = CompletableFuture.supplyAsync { conversations().entityCount }
+
+        then:
+        entityCount.get(5, TimeUnit.SECONDS) == 1
+
+        cleanup:
+        release.countDown()
+        worker.join()
+    }
+
+    private ConversationRegistry conversations() {
+        RecordingSessionFactory.unwrap(hibernate4Storage.get('people')).conversations
+    }
+
+    private List<String> names() {
+        hibernate4Handler.withHbm4Session('people') { String sessionFactoryName, Session session ->
+            session.createQuery('select p.name from Person p order by p.id').list()
+        }
+    }
+}
@@ -0,0 +1,72 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.plugins.hibernate4
+
+import org.codehaus.griffon.runtime.hibernate4.internal.MappingIndex
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import spock.lang.Specification
+
+class Hibernate4MappingIndexSpec extends Specification {
+    private static final String MAPPING_TYPES = 'META-INF/types/' + Hibernate4Mapping.name
+    private static final String ENTITY_TYPES = 'META-INF/types/' + Hibernate4Entity.name
+
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder()
+
+    void 'Listings are not read for a root that holds an index'() {
+        given: 'a root indexed at compile time, listings included'
+        File root = folder.newFolder('classes')
+        write(root, MappingIndex.INDEX_RESOURCE, 'mapping:com/acme/Person.hbm.xml', 'entity:com.acme.Book')
+        write(root, MAPPING_TYPES, 'com.acme.Person')
+        write(root, ENTITY_TYPES, 'com.acme.Book', 'com.acme.Stale')
+
+        when:
+        MappingIndex index = MappingIndex.load(loader(root))
+
+        then:
+        index.mappings == ['com/acme/Person.hbm.xml']
+        index.entities == ['com.acme.Book']
+    }
+
+    void 'Listings are read for a root that holds no index'() {
+        given:
+        File indexed = folder.newFolder('indexed')
+        write(indexed, MappingIndex.INDEX_RESOURCE, 'mapping:com/acme/Person.hbm.xml', 'entity:com.acme.Book')
+        File listed = folder.newFolder('listed')
+        write(listed, MAPPING_TYPES, 'com.acme.Address')
+        write(listed, ENTITY_TYPES, 'com.acme.Author')
+
+        when:
+        MappingIndex index = MappingIndex.load(loader(indexed, listed))
+
+        then:
+        index.mappings == ['com/acme/Person.hbm.xml', 'com/acme/Address.hbm.xml']
+        index.entities == ['com.acme.Book', 'com.acme.Author']
+    }
+
+    private static ClassLoader loader(File... roots) {
+        new URLClassLoader(roots.collect { it.toURI().toURL() } as URL[], (ClassLoader) null)
+    }
+
+    private static void write(File root, String resource, String... lines) {
+        File file = new File(root, resource)
+        file.parentFile.mkdirs()
+        file.text = lines.join('\n') + '\n'
+    }
+}
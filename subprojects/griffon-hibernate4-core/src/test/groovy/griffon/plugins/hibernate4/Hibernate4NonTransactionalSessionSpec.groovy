@@ -0,0 +1,117 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.plugins.hibernate4
+
+import griffon.test.core.GriffonUnitRule
+import org.hibernate.Session
+import org.junit.Rule
+import spock.lang.Requires
+import spock.lang.Specification
+
+import javax.inject.Inject
+
+class Hibernate4NonTransactionalSessionSpec extends Specification {
+    // run with -Dhibernate4.benchmark=true to compare the latency of lookups with and without a transaction
+    private static final int ITERATIONS = Integer.getInteger('hibernate4.benchmark.iterations', 5000)
+
+    static {
+        System.setProperty("org.slf4j.simpleLogger.defaultLogLevel", "warn")
+    }
+
+    @Rule
+    public final GriffonUnitRule griffon = new GriffonUnitRule()
+
+    @Inject
+    private Hibernate4Handler hibernate4Handler
+
+    void 'Non transactional sessions run in auto-commit mode and never flush'() {
+        given:
+        hibernate4Handler.withHbm4Session('people') { String sessionFactoryName, Session session ->
+            session.save(new Person(id: 1, name: 'Danno', lastname: 'Ferrin'))
+        }
+
+        when:
+        Map settings = hibernate4Handler.withHbm4NonTransactionalSession('people') { String sessionFactoryName, Session session ->
+            Person person = (Person) session.get(Person, 1)
+            person.name = 'Andres'
+            boolean autoCommit = false
+            session.doWork { connection -> autoCommit = connection.autoCommit }
+            [transactionActive: session.transaction.active,
+             autoCommit       : autoCommit,
+             entityReadOnly   : session.isReadOnly(person)]
+        }
+
+        then:
+        settings == [transactionActive: false, autoCommit: true, entityReadOnly: true]
+        name(1) == 'Danno'
+    }
+
+    void 'Non transactional sessions join an outer session'() {
+        expect:
+        hibernate4Handler.withHbm4Session('people') { String sessionFactoryName, Session outer ->
+            outer.save(new Person(id: 1, name: 'Danno', lastname: 'Ferrin'))
+            hibernate4Handler.withHbm4NonTransactionalSession('people') { String name, Session inner ->
+                inner.is(outer) && inner.get(Person, 1)
+            }
+        }
+    }
+
+    void 'Lookups by id with and without a transaction return the same values'() {
+        given:
+        hibernate4Handler.withHbm4Session('people') { String sessionFactoryName, Session session ->
+            session.save(new Person(id: 1, name: 'Danno', lastname: 'Ferrin'))
+        }
+
+        expect:
+        (1..10).every { lightweightName(1) == name(1) }
+    }
+
+    @Requires({ Boolean.getBoolean('hibernate4.benchmark') })
+    void 'Lookups by id take less time without a transaction'() {
+        given: 'a warmed up SessionFactory'
+        hibernate4Handler.withHbm4Session('people') { String sessionFactoryName, Session session ->
+            session.save(new Person(id: 1, name: 'Danno', lastname: 'Ferrin'))
+        }
+        ITERATIONS.times { name(1) }
+        ITERATIONS.times { lightweightName(1) }
+
+        when:
+        long transactionalStart = System.nanoTime()
+        ITERATIONS.times { name(1) }
+        long transactionalNanos = (System.nanoTime() - transactionalStart).intdiv(ITERATIONS)
+
+        long lightweightStart = System.nanoTime()
+        ITERATIONS.times { lightweightName(1) }
+        long lightweightNanos = (System.nanoTime() - lightweightStart).intdiv(ITERATIONS)
+
+        then: 'a failure reports the time per lookup of both'
+        lightweightNanos < transactionalNanos
+    }
+
+    private String name(int id) {
+        hibernate4Handler.withHbm4Session('people') { String sessionFactoryName, Session session ->
+            ((Person) session.get(Person, id)).name
+        }
+    }
+
+    private String lightweightName(int id) {
+        hibernate4Handler.withHbm4NonTransactionalSession('people') { String sessionFactoryName, Session session ->
+            ((Person) session.get(Person, id)).name
+        }
+    }
+}
@@ -0,0 +1,186 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.plugins.hibernate4
+
+import griffon.test.core.GriffonUnitRule
+import org.hibernate.Session
+import org.hibernate.criterion.DetachedCriteria
+import org.hibernate.criterion.Order
+import org.hibernate.criterion.Restrictions
+import org.junit.Rule
+import spock.lang.Requires
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import javax.inject.Inject
+
+@Unroll
+class Hibernate4PagingSpec extends Specification {
+    // run with -Dhibernate4.benchmark=true, and optionally -Dhibernate4.paging.rows, to compare deep page latency
+    private static final int ROWS = Integer.getInteger('hibernate4.paging.rows', 50000)
+    private static final int ITERATIONS = Integer.getInteger('hibernate4.benchmark.iterations', 200)
+
+    static {
+        System.setProperty("org.slf4j.simpleLogger.defaultLogLevel", "warn")
+    }
+
+    @Rule
+    public final GriffonUnitRule griffon = new GriffonUnitRule()
+
+    @Inject
+    private Hibernate4Handler hibernate4Handler
+
+    void 'Paging with prefetch=#prefetch visits every row once in key order'() {
+        given:
+        insertPeople(95)
+        List<Integer> ids = []
+        List<Object> continuations = []
+
+        when:
+        Hibernate4Page<Person> page = hibernate4Handler.withHbm4Page('people', DetachedCriteria.forClass(Person), 'id', 10, null, prefetch)
+        ids.addAll(page.items*.id)
+        while (page.hasNext()) {
+            continuations << page.continuation
+            page = page.next()
+            ids.addAll(page.items*.id)
+        }
+
+        then:
+        ids == (1..95).toList()
+        continuations == (10..90).step(10)
+        page.items.size() == 5
+        !page.hasNext()
+
+        where:
+        prefetch << [false, true]
+    }
+
+    void 'A continuation resumes paging after the given key'() {
+        given:
+        insertPeople(30)
+        DetachedCriteria criteria = DetachedCriteria.forClass(Person).add(Restrictions.like('name', 'name1%'))
+
+        when:
+        Hibernate4Page<Person> first = hibernate4Handler.withHbm4Page('people', criteria, 'id', 5, null, false)
+        Hibernate4Page<Person> second = hibernate4Handler.withHbm4Page('people', criteria, 'id', 5, first.continuation, false)
+
+        then:
+        first.items*.id == [1, 10, 11, 12, 13]
+        first.continuation == 13
+        second.items*.id == [14, 15, 16, 17, 18]
+        second.hasNext()
+    }
+
+    void 'A page that ends exactly at the last row has no next page'() {
+        given:
+        insertPeople(20)
+
+        when:
+        Hibernate4Page<Person> page = hibernate4Handler.withHbm4Page('people', DetachedCriteria.forClass(Person), 'id', 10, 10, true)
+
+        then:
+        page.items*.id == (11..20).toList()
+        page.continuation == null
+        !page.hasNext()
+
+        when:
+        page.next()
+
+        then:
+        thrown(NoSuchElementException)
+    }
+
+    void 'Paging with keyProperty=#keyProperty and pageSize=#pageSize is rejected'() {
+        when:
+        hibernate4Handler.withHbm4Page('people', DetachedCriteria.forClass(Person), keyProperty, pageSize, null, false)
+
+        then:
+        thrown(IllegalArgumentException)
+
+        where:
+        keyProperty | pageSize
+        ' '         | 10
+        'id'        | 0
+    }
+
+    void 'Criteria carrying an order of their own are rejected'() {
+        when:
+        hibernate4Handler.withHbm4Page('people', DetachedCriteria.forClass(Person).addOrder(Order.desc('name')), 'id', 10, null, false)
+
+        then:
+        thrown(IllegalArgumentException)
+    }
+
+    void 'A deep keyset page holds the same rows as the matching offset page'() {
+        given:
+        insertPeople(1000)
+        int pageSize = 50
+        int offset = 1000 - pageSize
+
+        when:
+        List<Integer> offsetIds = hibernate4Handler.withHbm4ReadOnlySession('people') { String sessionFactoryName, Session session ->
+            session.createCriteria(Person).addOrder(Order.asc('id'))
+                .setFirstResult(offset)
+                .setMaxResults(pageSize)
+                .list()*.id
+        }
+        List<Integer> keysetIds = hibernate4Handler.withHbm4Page('people', DetachedCriteria.forClass(Person), 'id', pageSize, offset, false).items*.id
+
+        then:
+        keysetIds == offsetIds
+    }
+
+    @Requires({ Boolean.getBoolean('hibernate4.benchmark') })
+    void 'A deep keyset page is read faster than the matching offset page'() {
+        given: 'warmed up queries'
+        insertPeople(ROWS)
+        int pageSize = 50
+        int offset = ROWS - pageSize
+        Closure<List<Person>> offsetPage = {
+            hibernate4Handler.withHbm4ReadOnlySession('people') { String sessionFactoryName, Session session ->
+                session.createCriteria(Person).addOrder(Order.asc('id'))
+                    .setFirstResult(offset)
+                    .setMaxResults(pageSize)
+                    .list()
+            }
+        }
+        Closure<List<Person>> keysetPage = {
+            hibernate4Handler.withHbm4Page('people', DetachedCriteria.forClass(Person), 'id', pageSize, offset, false).items
+        }
+        10.times { offsetPage(); keysetPage() }
+
+        when:
+        long offsetStart = System.nanoTime()
+        ITERATIONS.times { offsetPage() }
+        long offsetNanos = (System.nanoTime() - offsetStart).intdiv(ITERATIONS)
+
+        long keysetStart = System.nanoTime()
+        ITERATIONS.times { keysetPage() }
+        long keysetNanos = (System.nanoTime() - keysetStart).intdiv(ITERATIONS)
+
+        then: 'a failure reports the time per page of both'
+        keysetNanos < offsetNanos
+    }
+
+    private void insertPeople(int count) {
+        hibernate4Handler.withHbm4Session('people') { String sessionFactoryName, Session session ->
+            session.createSQLQuery("insert into PEOPLE (PERSON_ID, name, lastname) select x, 'name' || x, 'lastname' || x from system_range(1, ${count})")
+                .executeUpdate()
+        }
+    }
+}
@@ -0,0 +1,202 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.plugins.hibernate4
+
+import griffon.test.core.GriffonUnitRule
+import org.codehaus.griffon.runtime.hibernate4.RecordingSessionFactory
+import org.codehaus.griffon.runtime.hibernate4.ReplicaRouter
+import org.hibernate.Session
+import org.hibernate.SessionFactory
+import org.hibernate.exception.JDBCConnectionException
+import org.junit.Rule
+import spock.lang.Specification
+
+import javax.inject.Inject
+import java.sql.SQLException
+import java.util.concurrent.Callable
+import java.util.concurrent.CompletableFuture
+import java.util.concurrent.CountDownLatch
+import java.util.concurrent.ExecutorService
+import java.util.concurrent.Executors
+import java.util.concurrent.Future
+import java.util.concurrent.TimeUnit
+
+class Hibernate4ReplicaSpec extends Specification {
+    static {
+        System.setProperty("org.slf4j.simpleLogger.defaultLogLevel", "warn")
+    }
+
+    @Rule
+    public final GriffonUnitRule griffon = new GriffonUnitRule()
+
+    @Inject
+    private Hibernate4Handler hibernate4Handler
+
+    @Inject
+    private Hibernate4Storage hibernate4Storage
+
+    void 'Read-only sessions are routed to the replicas in turn'() {
+        given:
+        hibernate4Handler.withHbm4Session('reports') { String sessionFactoryName, Session session ->
+            session.save(new Person(id: 1, name: 'Danno', lastname: 'Ferrin'))
+        }
+
+        when:
+        List<String> names = (1..4).collect {
+            hibernate4Handler.withHbm4ReadOnlySession('reports') { String sessionFactoryName, Session session ->
+                ((Person) session.get(Person, 1)).name
+            }
+        }
+
+        then:
+        names == ['Danno'] * 4
+        replicas().readCounts == [reportsReplica1: 2L, reportsReplica2: 2L]
+        replicas().healthyCount == 2
+    }
+
+    void 'Writes stay on the primary'() {
+        when:
+        SessionFactory sessionFactory = hibernate4Handler.withHbm4Session('reports') { String sessionFactoryName, Session session ->
+            session.save(new Person(id: 1, name: 'Danno', lastname: 'Ferrin'))
+            session.sessionFactory
+        }
+
+        then:
+        !replicas().replicas*.sessionFactory.contains(sessionFactory)
+        replicas().readCounts == [reportsReplica1: 0L, reportsReplica2: 0L]
+    }
+
+    void 'A failed replica is taken out of rotation and reads fall back to the primary'() {
+        given:
+        hibernate4Handler.withHbm4Session('reports') { String sessionFactoryName, Session session ->
+            session.save(new Person(id: 1, name: 'Danno', lastname: 'Ferrin'))
+        }
+        SessionFactory broken = [openSession: { throw new JDBCConnectionException('down', new SQLException('down')) }] as SessionFactory
+        ReplicaRouter router = new ReplicaRouter('reports', [new ReplicaRouter.Replica('broken', broken)], ReplicaRouter.Strategy.ROUND_ROBIN)
+        RecordingSessionFactory primary = RecordingSessionFactory.unwrap(hibernate4Storage.get('reports'))
+        ReplicaRouter configured = primary.replicas
+        primary.replicas = router
+
+        when:
+        String name = hibernate4Handler.withHbm4ReadOnlySession('reports') { String sessionFactoryName, Session session ->
+            ((Person) session.get(Person, 1)).name
+        }
+
+        then:
+        name == 'Danno'
+        router.healthyCount == 0
+        router.failureCounts == [broken: 1L]
+        router.select() == null
+
+        when:
+        router.checkHealth()
+
+        then:
+        router.healthyCount == 0
+        router.failureCounts == [broken: 2L]
+
+        cleanup:
+        primary.replicas = configured
+    }
+
+    void 'Without health checks a single read tries a replica out of rotation again after retryInterval'() {
+        given:
+        ReplicaRouter.Replica replica = new ReplicaRouter.Replica('reportsReplica1', replicas().replicas[0].sessionFactory)
+        ReplicaRouter router = new ReplicaRouter('reports', [replica], ReplicaRouter.Strategy.ROUND_ROBIN)
+        router.retryInterval = 100
+        RecordingSessionFactory primary = RecordingSessionFactory.unwrap(hibernate4Storage.get('reports'))
+        ReplicaRouter configured = primary.replicas
+        primary.replicas = router
+        replica.markDown(new SQLException('down'))
+
+        expect:
+        router.select() == null
+
+        when: 'the retry is due, only one read claims it'
+        Thread.sleep(150)
+        List<ReplicaRouter.Replica> selected = [router.select(), router.select()]
+
+        then:
+        selected == [replica, null]
+
+        when:
+        Thread.sleep(150)
+        boolean open = hibernate4Handler.withHbm4ReadOnlySession('reports') { String sessionFactoryName, Session session ->
+            session.open
+        }
+
+        then:
+        open
+        replica.healthy
+        replica.readCount == 1
+        router.select() == replica
+
+        cleanup:
+        primary.replicas = configured
+    }
+
+    void 'Least busy routing picks the replica with the fewest sessions in use'() {
+        given:
+        ReplicaRouter router = new ReplicaRouter('reports', replicas().replicas, ReplicaRouter.Strategy.LEAST_BUSY)
+        router.replicas[0].acquire()
+
+        expect:
+        router.select().name == 'reportsReplica2'
+
+        cleanup:
+        router.replicas[0].release()
+    }
+
+    void 'Rebuilding waits for reads still running on a replica'() {
+        given: 'a read held open on a replica'
+        hibernate4Handler.withHbm4Session('reports') { String sessionFactoryName, Session session -> null }
+        ReplicaRouter router = replicas()
+        CountDownLatch opened = new CountDownLatch(1)
+        CountDownLatch release = new CountDownLatch(1)
+        ExecutorService executor = Executors.newSingleThreadExecutor()
+        Future<Integer> read = executor.submit({
+            hibernate4Handler.withHbm4ReadOnlySession('reports') { String sessionFactoryName, Session session ->
+                opened.countDown()
+                release.await(60, TimeUnit.SECONDS)
+                router.replicas*.activeCount.sum()
+            }
+        } as Callable<Integer>)
+        opened.await(60, TimeUnit.SECONDS)
+
+        when:
+        CompletableFuture<Boolean> rebuild = hibernate4Handler.rebuildHbm4Session('reports', 60000)
+        Thread.sleep(200)
+
+        then: 'the replaced SessionFactory is not retired while the read runs'
+        !rebuild.done
+
+        when:
+        release.countDown()
+
+        then:
+        read.get(60, TimeUnit.SECONDS) == 1
+        rebuild.get(60, TimeUnit.SECONDS)
+
+        cleanup:
+        executor.shutdownNow()
+    }
+
+    private ReplicaRouter replicas() {
+        RecordingSessionFactory.unwrap(hibernate4Storage.get('reports')).replicas
+    }
+}
@@ -0,0 +1,123 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.plugins.hibernate4
+
+import griffon.core.GriffonApplication
+import griffon.plugins.datasource.DataSourceFactory
+import griffon.test.core.GriffonUnitRule
+import org.codehaus.griffon.runtime.hibernate4.internal.HibernateConfigurationHelper
+import org.codehaus.griffon.runtime.hibernate4.internal.MappingIndex
+import org.codehaus.griffon.runtime.hibernate4.internal.SchemaManager
+import org.hibernate.cfg.Configuration
+import org.hibernate.dialect.H2Dialect
+import org.junit.Rule
+import spock.lang.Specification
+
+import javax.inject.Inject
+import javax.sql.DataSource
+import java.sql.Connection
+
+import static org.codehaus.griffon.runtime.hibernate4.internal.SchemaManager.Outcome.UNCHANGED
+import static org.codehaus.griffon.runtime.hibernate4.internal.SchemaManager.Outcome.UPDATED
+
+class Hibernate4SchemaManagerSpec extends Specification {
+    static {
+        System.setProperty("org.slf4j.simpleLogger.defaultLogLevel", "warn")
+    }
+
+    @Rule
+    public final GriffonUnitRule griffon = new GriffonUnitRule()
+
+    @Inject
+    private GriffonApplication application
+
+    @Inject
+    private DataSourceFactory dataSourceFactory
+
+    private DataSource dataSource
+
+    void setup() {
+        dataSource = dataSourceFactory.create('people')
+    }
+
+    void cleanup() {
+        dataSourceFactory.destroy('people', dataSource)
+    }
+
+    void 'The schema is updated once and left alone while the mappings are unchanged'() {
+        given:
+        SchemaManager manager = new SchemaManager('people', SchemaManager.DEFAULT_TABLE)
+
+        expect:
+        manager.update(dataSource, buildConfiguration('people')) == UPDATED
+        tableExists('PEOPLE')
+        manager.update(dataSource, buildConfiguration('people')) == UNCHANGED
+    }
+
+    void 'A change in the mappings applies the missing DDL only'() {
+        given: 'Book belongs to the people session factory alone'
+        SchemaManager manager = new SchemaManager('people', SchemaManager.DEFAULT_TABLE)
+        manager.update(dataSource, buildConfiguration('default'))
+        insertPerson()
+
+        when:
+        SchemaManager.Outcome outcome = manager.update(dataSource, buildConfiguration('people'))
+
+        then:
+        outcome == UPDATED
+        tableExists('BOOK')
+        countPeople() == 1
+        manager.update(dataSource, buildConfiguration('people')) == UNCHANGED
+    }
+
+    private Configuration buildConfiguration(String sessionFactoryName) {
+        HibernateConfigurationHelper helper = new HibernateConfigurationHelper(application, [dialect: H2Dialect, schema: 'update'], 'people', dataSource)
+        helper.mappingIndex = MappingIndex.load(application.applicationClassLoader.get())
+        helper.sessionFactoryName = sessionFactoryName
+        helper.buildConfiguration()
+    }
+
+    private boolean tableExists(String table) {
+        withConnection { Connection connection ->
+            connection.metaData.getTables(null, null, table, null).next()
+        }
+    }
+
+    private void insertPerson() {
+        withConnection { Connection connection ->
+            connection.createStatement().executeUpdate("insert into PEOPLE (PERSON_ID, name, lastname) values (1, 'Danno', 'Ferrin')")
+        }
+    }
+
+    private long countPeople() {
+        withConnection { Connection connection ->
+            def resultSet = connection.createStatement().executeQuery('select count(*) from PEOPLE')
+            resultSet.next()
+            resultSet.getLong(1)
+        }
+    }
+
+    private <T> T withConnection(Closure<T> work) {
+        Connection connection = dataSource.connection
+        try {
+            work(connection)
+        } finally {
+            connection.close()
+        }
+    }
+}
@@ -0,0 +1,140 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package griffon.plugins.hibernate4
+
+import griffon.test.core.GriffonUnitRule
+import org.hibernate.Session
+import org.hibernate.criterion.DetachedCriteria
+import org.hibernate.criterion.Restrictions
+import org.junit.Rule
+import spock.lang.Specification
+import spock.lang.Unroll
+
+import javax.inject.Inject
+
+@Unroll
+class Hibernate4ScrollSpec extends Specification {
+    // run with -Dhibernate4.scroll.rows=1000000 for the full sized memory check
+    private static final int ROWS = Integer.getInteger('hibernate4.scroll.rows', 10000)
+    private static final long MAX_HEAP_GROWTH = 32 * 1024 * 1024
+
+    static {
+        System.setProperty("org.slf4j.simpleLogger.defaultLogLevel", "warn")
+    }
+
+    @Rule
+    public final GriffonUnitRule griffon = new GriffonUnitRule()
+
+    @Inject
+    private Hibernate4Handler hibernate4Handler
+
+    void 'Scrolling a HQL query clearing every #clearEvery rows holds at most #clearEvery entities'() {
+        given:
+        insertPeople(2500)
+        int maxEntities = 0
+        List<Integer> ids = []
+
+        when:
+        long rows = hibernate4Handler.withHbm4Scroll('people', 'from Person p order by p.id', [:], 100, clearEvery) { String sessionFactoryName, Session session, Object[] row ->
+            ids << ((Person) row[0]).id
+            maxEntities = Math.max(maxEntities, session.statistics.entityCount)
+        }
+
+        then:
+        rows == 2500
+        ids == (1..2500).toList()
+        maxEntities <= clearEvery
+
+        where:
+        clearEvery << [1, 100, 1000]
+    }
+
+    void 'Scrolling a Criteria query evicts every processed entity'() {
+        given:
+        insertPeople(500)
+        int maxEntities = 0
+
+        when:
+        long rows = hibernate4Handler.withHbm4Scroll('people', DetachedCriteria.forClass(Person).add(Restrictions.gt('id', 100)), 50, 0) { String sessionFactoryName, Session session, Object[] row ->
+            maxEntities = Math.max(maxEntities, session.statistics.entityCount)
+        }
+
+        then:
+        rows == 400
+        maxEntities == 1
+    }
+
+    void 'Scrolling binds named parameters and returns projections as rows'() {
+        given:
+        insertPeople(10)
+        List<List> result = []
+
+        when:
+        long rows = hibernate4Handler.withHbm4Scroll('people', 'select p.id, p.name from Person p where p.id in (:ids) order by p.id', [ids: [2, 4, 6]], 10, 0) { String sessionFactoryName, Session session, Object[] row ->
+            result << row.toList()
+        }
+
+        then:
+        rows == 3
+        result == [[2, 'name2'], [4, 'name4'], [6, 'name6']]
+    }
+
+    void 'Scrolling with fetchSize=#fetchSize and clearEvery=#clearEvery is rejected'() {
+        when:
+        hibernate4Handler.withHbm4Scroll('people', 'from Person', [:], fetchSize, clearEvery) { String sessionFactoryName, Session session, Object[] row -> }
+
+        then:
+        thrown(IllegalArgumentException)
+
+        where:
+        fetchSize | clearEvery
+        0         | 0
+        100       | -1
+    }
+
+    void 'Heap stays flat while scrolling over all rows'() {
+        given:
+        insertPeople(ROWS)
+        List<Long> samples = []
+
+        when:
+        long rows = hibernate4Handler.withHbm4Scroll('people', 'from Person', [:], 500, 1000) { String sessionFactoryName, Session session, Object[] row ->
+            if (((Person) row[0]).id % ROWS.intdiv(4) == 0) {
+                samples << usedHeap()
+            }
+        }
+
+        then:
+        rows == ROWS
+        samples.size() == 4
+        samples.last() - samples.first() < MAX_HEAP_GROWTH
+    }
+
+    private void insertPeople(int count) {
+        hibernate4Handler.withHbm4Session('people') { String sessionFactoryName, Session session ->
+            session.createSQLQuery("insert into PEOPLE (PERSON_ID, name, lastname) select x, 'name' || x, 'lastname' || x from system_range(1, ${count})")
+                .executeUpdate()
+        }
+    }
+
+    private static long usedHeap() {
+        System.gc()
+        Runtime runtime = Runtime.runtime
+        runtime.totalMemory() - runtime.freeMemory()
+    }
+}
@@ -19,6 +19,8 @@ package griffon.plugins.hibernate4
 
 import griffon.annotations.inject.BindTo
 import griffon.core.GriffonApplication
+import griffon.plugins.datasource.DataSourceFactory
+import griffon.plugins.datasource.DataSourceStorage
 import griffon.plugins.datasource.events.DataSourceConnectEndEvent
 import griffon.plugins.datasource.events.DataSourceConnectStartEvent
 import griffon.plugins.datasource.events.DataSourceDisconnectEndEvent
@@ -30,13 +32,28 @@ import griffon.plugins.hibernate4.events.Hibernate4DisconnectEndEvent
 import griffon.plugins.hibernate4.events.Hibernate4DisconnectStartEvent
 import griffon.plugins.hibernate4.exceptions.RuntimeHibernate4Exception
 import griffon.test.core.GriffonUnitRule
+import org.hibernate.FlushMode
+import org.hibernate.PessimisticLockException
+import org.codehaus.griffon.runtime.hibernate4.LinkedStatelessSession
+import org.codehaus.griffon.runtime.hibernate4.RecordingSessionFactory
+import org.codehaus.griffon.runtime.hibernate4.RetryPolicy
 import org.hibernate.Session
+import org.hibernate.StatelessSession
+import org.hibernate.criterion.DetachedCriteria
+import org.hibernate.exception.LockAcquisitionException
 import org.junit.Rule
 import spock.lang.Specification
 import spock.lang.Unroll
 
 import javax.application.event.EventHandler
 import javax.inject.Inject
+import javax.sql.DataSource
+import java.lang.reflect.InvocationHandler
+import java.lang.reflect.InvocationTargetException
+import java.lang.reflect.Method
+import java.lang.reflect.Proxy
+import java.sql.Connection
+import java.sql.SQLException
 
 @Unroll
 class Hibernate4Spec extends Specification {
@@ -50,9 +67,25 @@ class Hibernate4Spec extends Specification {
     @Inject
     private Hibernate4Handler hibernate4Handler
 
+    @Inject
+    private Hibernate4Storage hibernate4Storage
+
     @Inject
     private GriffonApplication application
 
+    @Inject
+    private DataSourceFactory dataSourceFactory
+
+    @Inject
+    private DataSourceStorage dataSourceStorage
+
+    private final Map<String, DataSource> recordedDataSources = [:]
+
+    void cleanup() {
+        // hand the original pools back so they are closed on shutdown
+        recordedDataSources.each { String name, DataSource dataSource -> dataSourceStorage.set(name, dataSource) }
+    }
+
     void 'Open and close default hibernate4'() {
         given:
         List eventNames = [
@@ -161,6 +194,152 @@ class Hibernate4Spec extends Specification {
         peopleIn == peopleOut
     }
 
+    void 'Annotated entities are only added to the SessionFactories they are assigned to'() {
+        when:
+        hibernate4Handler.withHbm4Session('people') { String sessionFactoryName, Session session ->
+            session.save(new Book(id: 1, title: 'Griffon in Action'))
+        }
+        String title = hibernate4Handler.withHbm4Session('people') { String sessionFactoryName, Session session ->
+            ((Book) session.get(Book, 1)).title
+        }
+        boolean mappedByDefault = hibernate4Handler.withHbm4Session { String sessionFactoryName, Session session ->
+            session.sessionFactory.getClassMetadata(Book) != null
+        }
+
+        then:
+        title == 'Griffon in Action'
+        !mappedByDefault
+    }
+
+    void 'SessionFactories are warmed up before they are handed out'() {
+        when:
+        hibernate4Handler.withHbm4Session('people') { String sessionFactoryName, Session session -> }
+        Map<String, Long> warmupTimes = RecordingSessionFactory.unwrap(hibernate4Storage.get('people')).warmupTimes
+
+        then:
+        warmupTimes.keySet() == ['connections', 'queries'] as Set
+        warmupTimes.values().every { it >= 0 }
+    }
+
+    void 'Read-only session does not flush changes'() {
+        given: 'H2 ignores the read-only hint, the calls made on the connection are recorded instead'
+        List<Boolean> readOnlyFlags = recordReadOnlyFlags('default')
+        hibernate4Handler.withHbm4Session { String sessionFactoryName, Session session ->
+            session.save(new Person(id: 1, name: 'Danno', lastname: 'Ferrin'))
+        }
+
+        when:
+        Map settings = hibernate4Handler.withHbm4ReadOnlySession { String sessionFactoryName, Session session ->
+            Person person = (Person) session.get(Person, 1)
+            person.name = 'Andres'
+            [flushMode      : session.flushMode,
+             defaultReadOnly: session.defaultReadOnly,
+             entityReadOnly : session.isReadOnly(person),
+             readOnlyFlags  : new ArrayList<>(readOnlyFlags)]
+        }
+
+        String name = hibernate4Handler.withHbm4Session { String sessionFactoryName, Session session ->
+            ((Person) session.get(Person, 1)).name
+        }
+
+        then: 'the connection is read-only while the callback runs and writable again afterwards'
+        settings == [flushMode: FlushMode.MANUAL, defaultReadOnly: true, entityReadOnly: true, readOnlyFlags: [true]]
+        readOnlyFlags == [true, false]
+        name == 'Danno'
+    }
+
+    void 'Stateless session inserts and reads entities'() {
+        when:
+        hibernate4Handler.withHbm4StatelessSession { String sessionFactoryName, StatelessSession session ->
+            (1..10).each { id ->
+                session.insert(new Person(id: id, name: "name${id}", lastname: "lastname${id}"))
+            }
+        }
+
+        List names = hibernate4Handler.withHbm4StatelessSession { String sessionFactoryName, StatelessSession session ->
+            session.createQuery('from Person order by id').list()*.name
+        }
+
+        then:
+        names == (1..10).collect { "name${it}".toString() }
+    }
+
+    void 'Stateless sessions are recorded by the SessionFactory'() {
+        when:
+        Map counts = hibernate4Handler.withHbm4StatelessSession { String sessionFactoryName, StatelessSession session ->
+            RecordingSessionFactory sessionFactory = ((LinkedStatelessSession) session).sessionFactory
+            [stateful: sessionFactory.sessionCount, stateless: sessionFactory.statelessSessionCount]
+        }
+
+        then:
+        counts == [stateful: 0, stateless: 1]
+    }
+
+    void 'Stateless sessions build criteria with createCriteria but not from detached criteria'() {
+        given:
+        hibernate4Handler.withHbm4StatelessSession { String sessionFactoryName, StatelessSession session ->
+            session.insert(new Person(id: 1, name: 'Danno', lastname: 'Ferrin'))
+        }
+
+        when:
+        List names = hibernate4Handler.withHbm4StatelessSession { String sessionFactoryName, StatelessSession session ->
+            session.createCriteria(Person).list()*.name
+        }
+
+        then:
+        names == ['Danno']
+
+        when:
+        hibernate4Handler.withHbm4StatelessSession { String sessionFactoryName, StatelessSession session ->
+            DetachedCriteria.forClass(Person).getExecutableCriteria(session)
+        }
+
+        then:
+        RuntimeHibernate4Exception e = thrown(RuntimeHibernate4Exception)
+        e.cause instanceof ClassCastException
+    }
+
+    void 'Read-only flag is reset when the transaction fails to complete'() {
+        given:
+        List<Boolean> readOnlyFlags = recordReadOnlyFlags('default', true)
+
+        when:
+        hibernate4Handler.withHbm4ReadOnlySession { String sessionFactoryName, Session session ->
+            session.createSQLQuery('SELECT 1').uniqueResult()
+        }
+
+        then:
+        thrown(RuntimeHibernate4Exception)
+        readOnlyFlags == [true, false]
+    }
+
+    private List<Boolean> recordReadOnlyFlags(String dataSourceName, boolean failCommit = false) {
+        List<Boolean> flags = Collections.synchronizedList([])
+        DataSource dataSource = dataSourceStorage.get(dataSourceName) ?: dataSourceFactory.create(dataSourceName)
+        recordedDataSources[dataSourceName] = dataSource
+        dataSourceStorage.set(dataSourceName, proxy(DataSource, dataSource) { Method method, Object[] args, Object result ->
+            method.name == 'getConnection' ? proxy(Connection, result) { Method m, Object[] a, Object r ->
+                if (m.name == 'setReadOnly') {
+                    flags << (Boolean) a[0]
+                } else if (m.name == 'commit' && failCommit) {
+                    throw new SQLException('Commit rejected')
+                }
+                r
+            } : result
+        })
+        flags
+    }
+
+    private static <T> T proxy(Class<T> type, Object target, Closure<Object> interceptor) {
+        (T) Proxy.newProxyInstance(type.classLoader, [type] as Class[], { Object instance, Method method, Object[] args ->
+            try {
+                interceptor(method, args, method.invoke(target, args))
+            } catch (InvocationTargetException e) {
+                throw e.targetException
+            }
+        } as InvocationHandler)
+    }
+
     void 'A runtime exception is thrown within session handling'() {
         when:
         hibernate4Handler.withHbm4Session { String sessionFactoryName, Session session ->
@@ -171,6 +350,147 @@ class Hibernate4Spec extends Specification {
         thrown(RuntimeHibernate4Exception)
     }
 
+    void 'Lock failures are retried in a fresh session'() {
+        given: 'people retries lock failures up to 3 attempts'
+        int attempts = 0
+
+        when:
+        String name = hibernate4Handler.withHbm4Session('people') { String sessionFactoryName, Session session ->
+            session.save(new Person(name: "attempt${++attempts}", lastname: 'Retry'))
+            if (attempts < 3) {
+                throw new LockAcquisitionException('simulated deadlock', new SQLException('deadlock', '40001'))
+            }
+            session.createQuery('select p.name from Person p').uniqueResult()
+        }
+
+        then: 'earlier attempts were rolled back'
+        attempts == 3
+        name == 'attempt3'
+        retryCount('people') == 2
+    }
+
+    void 'Retries stop after the maximum number of attempts'() {
+        given:
+        int attempts = 0
+
+        when:
+        hibernate4Handler.withHbm4Session('people') { String sessionFactoryName, Session session ->
+            attempts++
+            throw new PessimisticLockException('simulated lock timeout', new SQLException('timeout'), 'select 1')
+        }
+
+        then:
+        RuntimeHibernate4Exception e = thrown(RuntimeHibernate4Exception)
+        e.cause instanceof PessimisticLockException
+        attempts == 3
+        retryCount('people') == 2
+    }
+
+    void 'Non retryable failures are not retried'() {
+        given:
+        int attempts = 0
+
+        when:
+        hibernate4Handler.withHbm4Session('people') { String sessionFactoryName, Session session ->
+            attempts++
+            throw new IllegalStateException('boom')
+        }
+
+        then:
+        thrown(RuntimeHibernate4Exception)
+        attempts == 1
+        retryCount('people') == 0
+    }
+
+    void 'Retry delays with jitter stay within maxBackoff'() {
+        given:
+        RetryPolicy retryPolicy = new RetryPolicy('people', 10, 50L, 1000L, 2d, 0.5d, [])
+
+        when:
+        List<Long> delays = (1..10).collectMany { int attempt -> (1..100).collect { retryPolicy.computeDelay(attempt) } }
+
+        then:
+        delays.every { it >= 0L && it <= 1000L }
+    }
+
+    void 'Nested calls join the outer session and transaction'() {
+        when:
+        Map result = hibernate4Handler.withHbm4Session { String sessionFactoryName, Session outer ->
+            outer.save(new Person(id: 1, name: 'Danno', lastname: 'Ferrin'))
+            hibernate4Handler.withHbm4Session { String name, Session inner ->
+                [sameSession : inner.is(outer),
+                 count       : inner.createQuery('select count(p) from Person p').uniqueResult(),
+                 openSessions: sessionCount('default')]
+            }
+        }
+
+        then:
+        result == [sameSession: true, count: 1L, openSessions: 1]
+        sessionCount('default') == 0
+    }
+
+    void 'New sessions are not joined and commit on their own'() {
+        when:
+        hibernate4Handler.withHbm4Session { String sessionFactoryName, Session outer ->
+            outer.save(new Person(id: 1, name: 'Danno', lastname: 'Ferrin'))
+            hibernate4Handler.withHbm4NewSession { String name, Session inner ->
+                assert !inner.is(outer)
+                inner.save(new Person(id: 2, name: 'Andres', lastname: 'Almiray'))
+            }
+            throw new IllegalStateException('boom')
+        }
+
+        then:
+        thrown(RuntimeHibernate4Exception)
+        names() == ['Andres']
+    }
+
+    void 'A failed nested call rolls back the outer transaction'() {
+        when:
+        hibernate4Handler.withHbm4Session { String sessionFactoryName, Session outer ->
+            outer.save(new Person(id: 1, name: 'Danno', lastname: 'Ferrin'))
+            try {
+                hibernate4Handler.withHbm4Session { String name, Session inner ->
+                    throw new IllegalStateException('boom')
+                }
+            } catch (RuntimeHibernate4Exception ignored) {
+                // handled, yet the transaction can no longer commit
+            }
+        }
+
+        then:
+        thrown(RuntimeHibernate4Exception)
+        names() == []
+    }
+
+    void 'Nested calls use their own session when joining is disabled'() {
+        given:
+        hibernate4Handler.withHbm4Session { String sessionFactoryName, Session session -> }
+        RecordingSessionFactory.unwrap(hibernate4Storage.get('default')).joinNestedSessions = false
+
+        when:
+        boolean sameSession = hibernate4Handler.withHbm4Session { String sessionFactoryName, Session outer ->
+            hibernate4Handler.withHbm4Session { String name, Session inner -> inner.is(outer) }
+        }
+
+        then:
+        !sameSession
+    }
+
+    private List<String> names() {
+        hibernate4Handler.withHbm4Session { String sessionFactoryName, Session session ->
+            session.createQuery('select p.name from Person p order by p.id').list()
+        }
+    }
+
+    private int sessionCount(String sessionFactoryName) {
+        RecordingSessionFactory.unwrap(hibernate4Storage.get(sessionFactoryName)).sessionCount
+    }
+
+    private long retryCount(String sessionFactoryName) {
+        RecordingSessionFactory.unwrap(hibernate4Storage.get(sessionFactoryName)).retryPolicy.retryCount
+    }
+
     @BindTo(Hibernate4Bootstrap)
     private TestHibernate4Bootstrap bootstrap = new TestHibernate4Bootstrap()
 
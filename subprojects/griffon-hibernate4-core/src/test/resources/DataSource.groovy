@@ -62,4 +62,25 @@ dataSources {
         dbCreate = 'skip'
         url = 'jdbc:h2:mem:${application_name}-people'
     }
-}
\ No newline at end of file
+    reports {
+        driverClassName = 'org.h2.Driver'
+        username = 'sa'
+        password = ''
+        dbCreate = 'skip'
+        url = 'jdbc:h2:mem:${application_name}-reports'
+    }
+    reportsReplica1 {
+        driverClassName = 'org.h2.Driver'
+        username = 'sa'
+        password = ''
+        dbCreate = 'skip'
+        url = 'jdbc:h2:mem:${application_name}-reports'
+    }
+    reportsReplica2 {
+        driverClassName = 'org.h2.Driver'
+        username = 'sa'
+        password = ''
+        dbCreate = 'skip'
+        url = 'jdbc:h2:mem:${application_name}-reports'
+    }
+}
@@ -37,8 +37,47 @@ environments {
 sessionFactories {
     internal {
         schema = 'create-drop'
+        async {
+            poolSize = 1
+            queueDepth = 1
+        }
+        bulkhead {
+            maxConcurrentSessions = 1
+            maxWait = 100
+        }
     }
     people {
         schema = 'create-drop'
+        batch {
+            size = 50
+            orderInserts = true
+            orderUpdates = true
+        }
+        retry {
+            maxAttempts = 3
+            initialBackoff = 10
+            maxBackoff = 100
+            retryOn = ['org.hibernate.exception.LockAcquisitionException', 'org.hibernate.PessimisticLockException']
+        }
+        groupCommit {
+            maxItems = 10
+            maxDelay = 50
+        }
+        conversations {
+            maxConversations = 2
+            maxEntities = 3
+        }
+        warmup {
+            connections = 2
+            queries = ['from Person p where p.name = :name']
+        }
     }
-}
\ No newline at end of file
+    reports {
+        schema = 'create-drop'
+        replicas {
+            names = ['reportsReplica1', 'reportsReplica2']
+            strategy = 'roundRobin'
+            healthCheckInterval = 0
+        }
+    }
+}
@@ -37,12 +37,38 @@ public interface Hibernate4AwareConstants extends BaseConstants {
     String SESSION_TYPE = "org.hibernate.Session";
     String HIBERNATE4_HANDLER_TYPE = "griffon.plugins.hibernate4.Hibernate4Handler";
     String HIBERNATE4_CALLBACK_TYPE = "griffon.plugins.hibernate4.Hibernate4Callback";
+    String HIBERNATE4_STATELESS_CALLBACK_TYPE = "griffon.plugins.hibernate4.Hibernate4StatelessCallback";
+    String HIBERNATE4_BATCH_RESULT_TYPE = "griffon.plugins.hibernate4.Hibernate4BatchResult";
+    String HIBERNATE4_CANCELLATION_TYPE = "griffon.plugins.hibernate4.Hibernate4Cancellation";
+    String HIBERNATE4_FAN_OUT_RESULT_TYPE = "griffon.plugins.hibernate4.Hibernate4FanOutResult";
+    String HIBERNATE4_PAGE_TYPE = "griffon.plugins.hibernate4.Hibernate4Page";
+    String HIBERNATE4_SCROLL_CALLBACK_TYPE = "griffon.plugins.hibernate4.Hibernate4ScrollCallback";
+    String DETACHED_CRITERIA_TYPE = "org.hibernate.criterion.DetachedCriteria";
+    String JAVA_UTIL_ITERATOR = "java.util.Iterator";
+    String JAVA_UTIL_CONCURRENT_COMPLETABLE_FUTURE = "java.util.concurrent.CompletableFuture";
+    String JAVA_LANG_BOOLEAN = "java.lang.Boolean";
+    String LONG = "long";
     String RUNTIME_HIBERNATE4_EXCEPTION_TYPE = "griffon.plugins.hibernate4.exceptions.RuntimeHibernate4Exception";
     String HIBERNATE4_HANDLER_PROPERTY = "hibernate4Handler";
     String HIBERNATE4_HANDLER_FIELD_NAME = "this$" + HIBERNATE4_HANDLER_PROPERTY;
 
     String METHOD_WITH_SESSION = "withHbm4Session";
+    String METHOD_WITH_NEW_SESSION = "withHbm4NewSession";
+    String METHOD_WITH_SESSION_ASYNC = "withHbm4SessionAsync";
+    String METHOD_WITH_SESSIONS = "withHbm4Sessions";
+    String METHOD_WITH_GROUP_COMMIT = "withHbm4GroupCommit";
+    String METHOD_WITH_READ_ONLY_SESSION = "withHbm4ReadOnlySession";
+    String METHOD_WITH_NON_TRANSACTIONAL_SESSION = "withHbm4NonTransactionalSession";
+    String METHOD_WITH_STATELESS_SESSION = "withHbm4StatelessSession";
+    String METHOD_WRITE_BATCH = "writeHbm4Batch";
+    String METHOD_WITH_SCROLL = "withHbm4Scroll";
+    String METHOD_WITH_PAGE = "withHbm4Page";
+    String METHOD_BEGIN_CONVERSATION = "beginHbm4Conversation";
+    String METHOD_WITH_CONVERSATION = "withHbm4Conversation";
+    String METHOD_COMMIT_CONVERSATION = "commitHbm4Conversation";
+    String METHOD_DISCARD_CONVERSATION = "discardHbm4Conversation";
     String METHOD_CLOSE_SESSION = "closeHbm4Session";
+    String METHOD_REBUILD_SESSION = "rebuildHbm4Session";
     String SESSION_FACTORY_NAME = "sessionFactoryName";
     String CALLBACK = "callback";
 
@@ -57,6 +83,26 @@ public interface Hibernate4AwareConstants extends BaseConstants {
             args(annotatedType(types(type(ANNOTATION_NONNULL)), JAVA_LANG_STRING))
         ),
 
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(JAVA_UTIL_CONCURRENT_COMPLETABLE_FUTURE, JAVA_LANG_BOOLEAN),
+            METHOD_REBUILD_SESSION
+        ),
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(JAVA_UTIL_CONCURRENT_COMPLETABLE_FUTURE, JAVA_LANG_BOOLEAN),
+            METHOD_REBUILD_SESSION,
+            args(annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING))
+        ),
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(JAVA_UTIL_CONCURRENT_COMPLETABLE_FUTURE, JAVA_LANG_BOOLEAN),
+            METHOD_REBUILD_SESSION,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                type(LONG))
+        ),
+
         annotatedMethod(
             annotations(ANNOTATION_NONNULL),
             type(R),
@@ -74,6 +120,312 @@ public interface Hibernate4AwareConstants extends BaseConstants {
                 annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
                 annotatedType(annotations(ANNOTATION_NONNULL), HIBERNATE4_CALLBACK_TYPE, R)),
             throwing(type(RUNTIME_HIBERNATE4_EXCEPTION_TYPE))
+        ),
+
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(R),
+            typeParams(R),
+            METHOD_WITH_SESSION,
+            args(
+                type(INT),
+                type(HIBERNATE4_CANCELLATION_TYPE),
+                annotatedType(annotations(ANNOTATION_NONNULL), HIBERNATE4_CALLBACK_TYPE, R)),
+            throwing(type(RUNTIME_HIBERNATE4_EXCEPTION_TYPE))
+        ),
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(R),
+            typeParams(R),
+            METHOD_WITH_SESSION,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                type(INT),
+                type(HIBERNATE4_CANCELLATION_TYPE),
+                annotatedType(annotations(ANNOTATION_NONNULL), HIBERNATE4_CALLBACK_TYPE, R)),
+            throwing(type(RUNTIME_HIBERNATE4_EXCEPTION_TYPE))
+        ),
+
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(R),
+            typeParams(R),
+            METHOD_WITH_NEW_SESSION,
+            args(annotatedType(annotations(ANNOTATION_NONNULL), HIBERNATE4_CALLBACK_TYPE, R)),
+            throwing(type(RUNTIME_HIBERNATE4_EXCEPTION_TYPE))
+        ),
+        annotatedMethod(
+            types(type(ANNOTATION_NONNULL)),
+            type(R),
+            typeParams(R),
+            METHOD_WITH_NEW_SESSION,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), HIBERNATE4_CALLBACK_TYPE, R)),
+            throwing(type(RUNTIME_HIBERNATE4_EXCEPTION_TYPE))
+        ),
+
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(JAVA_UTIL_CONCURRENT_COMPLETABLE_FUTURE, R),
+            typeParams(R),
+            METHOD_WITH_SESSION_ASYNC,
+            args(annotatedType(annotations(ANNOTATION_NONNULL), HIBERNATE4_CALLBACK_TYPE, R))
+        ),
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(JAVA_UTIL_CONCURRENT_COMPLETABLE_FUTURE, R),
+            typeParams(R),
+            METHOD_WITH_SESSION_ASYNC,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), HIBERNATE4_CALLBACK_TYPE, R))
+        ),
+
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(HIBERNATE4_FAN_OUT_RESULT_TYPE, R),
+            typeParams(R),
+            METHOD_WITH_SESSIONS,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_UTIL_COLLECTION, JAVA_LANG_STRING),
+                type(LONG),
+                annotatedType(annotations(ANNOTATION_NONNULL), HIBERNATE4_CALLBACK_TYPE, R))
+        ),
+
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(JAVA_UTIL_CONCURRENT_COMPLETABLE_FUTURE, R),
+            typeParams(R),
+            METHOD_WITH_GROUP_COMMIT,
+            args(annotatedType(annotations(ANNOTATION_NONNULL), HIBERNATE4_CALLBACK_TYPE, R))
+        ),
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(JAVA_UTIL_CONCURRENT_COMPLETABLE_FUTURE, R),
+            typeParams(R),
+            METHOD_WITH_GROUP_COMMIT,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), HIBERNATE4_CALLBACK_TYPE, R))
+        ),
+
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(R),
+            typeParams(R),
+            METHOD_WITH_READ_ONLY_SESSION,
+            args(annotatedType(annotations(ANNOTATION_NONNULL), HIBERNATE4_CALLBACK_TYPE, R)),
+            throwing(type(RUNTIME_HIBERNATE4_EXCEPTION_TYPE))
+        ),
+        annotatedMethod(
+            types(type(ANNOTATION_NONNULL)),
+            type(R),
+            typeParams(R),
+            METHOD_WITH_READ_ONLY_SESSION,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), HIBERNATE4_CALLBACK_TYPE, R)),
+            throwing(type(RUNTIME_HIBERNATE4_EXCEPTION_TYPE))
+        ),
+
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(R),
+            typeParams(R),
+            METHOD_WITH_NON_TRANSACTIONAL_SESSION,
+            args(annotatedType(annotations(ANNOTATION_NONNULL), HIBERNATE4_CALLBACK_TYPE, R)),
+            throwing(type(RUNTIME_HIBERNATE4_EXCEPTION_TYPE))
+        ),
+        annotatedMethod(
+            types(type(ANNOTATION_NONNULL)),
+            type(R),
+            typeParams(R),
+            METHOD_WITH_NON_TRANSACTIONAL_SESSION,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), HIBERNATE4_CALLBACK_TYPE, R)),
+            throwing(type(RUNTIME_HIBERNATE4_EXCEPTION_TYPE))
+        ),
+
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(R),
+            typeParams(R),
+            METHOD_WITH_STATELESS_SESSION,
+            args(annotatedType(annotations(ANNOTATION_NONNULL), HIBERNATE4_STATELESS_CALLBACK_TYPE, R)),
+            throwing(type(RUNTIME_HIBERNATE4_EXCEPTION_TYPE))
+        ),
+        annotatedMethod(
+            types(type(ANNOTATION_NONNULL)),
+            type(R),
+            typeParams(R),
+            METHOD_WITH_STATELESS_SESSION,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), HIBERNATE4_STATELESS_CALLBACK_TYPE, R)),
+            throwing(type(RUNTIME_HIBERNATE4_EXCEPTION_TYPE))
+        ),
+
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(HIBERNATE4_BATCH_RESULT_TYPE),
+            METHOD_WRITE_BATCH,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_UTIL_ITERATOR, WILDCARD),
+                type(INT)),
+            throwing(type(RUNTIME_HIBERNATE4_EXCEPTION_TYPE))
+        ),
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(HIBERNATE4_BATCH_RESULT_TYPE),
+            METHOD_WRITE_BATCH,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_UTIL_ITERATOR, WILDCARD),
+                type(INT)),
+            throwing(type(RUNTIME_HIBERNATE4_EXCEPTION_TYPE))
+        ),
+
+        method(
+            type(LONG),
+            METHOD_WITH_SCROLL,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_UTIL_MAP, JAVA_LANG_STRING, WILDCARD),
+                type(INT),
+                type(INT),
+                annotatedType(annotations(ANNOTATION_NONNULL), HIBERNATE4_SCROLL_CALLBACK_TYPE)),
+            throwing(type(RUNTIME_HIBERNATE4_EXCEPTION_TYPE))
+        ),
+        method(
+            type(LONG),
+            METHOD_WITH_SCROLL,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_UTIL_MAP, JAVA_LANG_STRING, WILDCARD),
+                type(INT),
+                type(INT),
+                annotatedType(annotations(ANNOTATION_NONNULL), HIBERNATE4_SCROLL_CALLBACK_TYPE)),
+            throwing(type(RUNTIME_HIBERNATE4_EXCEPTION_TYPE))
+        ),
+        method(
+            type(LONG),
+            METHOD_WITH_SCROLL,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), DETACHED_CRITERIA_TYPE),
+                type(INT),
+                type(INT),
+                annotatedType(annotations(ANNOTATION_NONNULL), HIBERNATE4_SCROLL_CALLBACK_TYPE)),
+            throwing(type(RUNTIME_HIBERNATE4_EXCEPTION_TYPE))
+        ),
+        method(
+            type(LONG),
+            METHOD_WITH_SCROLL,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), DETACHED_CRITERIA_TYPE),
+                type(INT),
+                type(INT),
+                annotatedType(annotations(ANNOTATION_NONNULL), HIBERNATE4_SCROLL_CALLBACK_TYPE)),
+            throwing(type(RUNTIME_HIBERNATE4_EXCEPTION_TYPE))
+        ),
+
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(HIBERNATE4_PAGE_TYPE, R),
+            typeParams(R),
+            METHOD_WITH_PAGE,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), DETACHED_CRITERIA_TYPE),
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                type(INT),
+                type(JAVA_LANG_OBJECT),
+                type(BOOLEAN)),
+            throwing(type(RUNTIME_HIBERNATE4_EXCEPTION_TYPE))
+        ),
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(HIBERNATE4_PAGE_TYPE, R),
+            typeParams(R),
+            METHOD_WITH_PAGE,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), DETACHED_CRITERIA_TYPE),
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                type(INT),
+                type(JAVA_LANG_OBJECT),
+                type(BOOLEAN)),
+            throwing(type(RUNTIME_HIBERNATE4_EXCEPTION_TYPE))
+        ),
+
+        method(
+            type(VOID),
+            METHOD_BEGIN_CONVERSATION,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING)),
+            throwing(type(RUNTIME_HIBERNATE4_EXCEPTION_TYPE))
+        ),
+        method(
+            type(VOID),
+            METHOD_BEGIN_CONVERSATION,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING)),
+            throwing(type(RUNTIME_HIBERNATE4_EXCEPTION_TYPE))
+        ),
+
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(R),
+            typeParams(R),
+            METHOD_WITH_CONVERSATION,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), HIBERNATE4_CALLBACK_TYPE, R)),
+            throwing(type(RUNTIME_HIBERNATE4_EXCEPTION_TYPE))
+        ),
+        annotatedMethod(
+            annotations(ANNOTATION_NONNULL),
+            type(R),
+            typeParams(R),
+            METHOD_WITH_CONVERSATION,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), HIBERNATE4_CALLBACK_TYPE, R)),
+            throwing(type(RUNTIME_HIBERNATE4_EXCEPTION_TYPE))
+        ),
+
+        method(
+            type(VOID),
+            METHOD_COMMIT_CONVERSATION,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING)),
+            throwing(type(RUNTIME_HIBERNATE4_EXCEPTION_TYPE))
+        ),
+        method(
+            type(VOID),
+            METHOD_COMMIT_CONVERSATION,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING)),
+            throwing(type(RUNTIME_HIBERNATE4_EXCEPTION_TYPE))
+        ),
+
+        method(
+            type(VOID),
+            METHOD_DISCARD_CONVERSATION,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING))
+        ),
+        method(
+            type(VOID),
+            METHOD_DISCARD_CONVERSATION,
+            args(
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING),
+                annotatedType(annotations(ANNOTATION_NONNULL), JAVA_LANG_STRING))
         )
     };
 }
@@ -0,0 +1,164 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.compile.hibernate4.ast.transform;
+
+import griffon.annotations.core.Nonnull;
+import griffon.plugins.hibernate4.Hibernate4Entity;
+import griffon.plugins.hibernate4.Hibernate4Mapping;
+import org.codehaus.griffon.runtime.hibernate4.internal.MappingIndex;
+import org.codehaus.groovy.ast.ASTNode;
+import org.codehaus.groovy.ast.AnnotationNode;
+import org.codehaus.groovy.ast.ClassHelper;
+import org.codehaus.groovy.ast.ClassNode;
+import org.codehaus.groovy.ast.expr.ClassExpression;
+import org.codehaus.groovy.ast.expr.Expression;
+import org.codehaus.groovy.ast.expr.ListExpression;
+import org.codehaus.groovy.control.CompilePhase;
+import org.codehaus.groovy.control.SourceUnit;
+import org.codehaus.groovy.transform.ASTTransformation;
+import org.codehaus.groovy.transform.GroovyASTTransformation;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.reflect.Modifier;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Writes every class registered with {@code @TypeProviderFor(Hibernate4Mapping.class)} to
+ * {@code META-INF/griffon/hibernate4.index}, as the path of its mapping resource, and every class registered with
+ * {@code @TypeProviderFor(Hibernate4Entity.class)}, as its name, so that neither need be looked up at runtime. These
+ * are the same classes found in the {@code META-INF/types} listings.
+ * <p>
+ * Entries are merged with those of previous compilations; entries whose class file is gone are dropped.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+@GroovyASTTransformation(phase = CompilePhase.CANONICALIZATION)
+public class Hibernate4MappingIndexASTTransformation implements ASTTransformation {
+    private static final Logger LOG = LoggerFactory.getLogger(Hibernate4MappingIndexASTTransformation.class);
+    private static final ClassNode HIBERNATE4_MAPPING_CNODE = ClassHelper.makeWithoutCaching(Hibernate4Mapping.class);
+    private static final ClassNode HIBERNATE4_ENTITY_CNODE = ClassHelper.makeWithoutCaching(Hibernate4Entity.class);
+    private static final String TYPE_PROVIDER_FOR = "org.kordamp.jipsy.annotations.TypeProviderFor";
+    private static final Object LOCK = new Object[0];
+
+    // one instance per compilation unit
+    private final Set<String> indexed = new LinkedHashSet<>();
+
+    @Override
+    public void visit(ASTNode[] nodes, SourceUnit source) {
+        if (source.getAST() == null) {
+            return;
+        }
+
+        List<String> entries = new ArrayList<>();
+        List<String> others = new ArrayList<>();
+        for (ClassNode classNode : source.getAST().getClasses()) {
+            boolean concrete = !classNode.isInterface() && !Modifier.isAbstract(classNode.getModifiers());
+            sort(MappingIndex.MAPPING_PREFIX + MappingIndex.toResource(classNode.getName()),
+                concrete && isProviderFor(classNode, HIBERNATE4_MAPPING_CNODE), entries, others);
+            sort(MappingIndex.ENTITY_PREFIX + classNode.getName(),
+                concrete && isProviderFor(classNode, HIBERNATE4_ENTITY_CNODE), entries, others);
+        }
+
+        File targetDirectory = source.getConfiguration().getTargetDirectory();
+        if (targetDirectory == null || (entries.isEmpty() && !new File(targetDirectory, MappingIndex.INDEX_RESOURCE).isFile())) {
+            return;
+        }
+
+        synchronized (LOCK) {
+            try {
+                merge(targetDirectory, entries, others);
+            } catch (IOException e) {
+                source.getErrorCollector().addWarning(0, "Could not write " + MappingIndex.INDEX_RESOURCE + ": " + e.getMessage(), null, source);
+            }
+        }
+    }
+
+    private static boolean isProviderFor(@Nonnull ClassNode classNode, @Nonnull ClassNode type) {
+        if (!classNode.implementsInterface(type)) {
+            return false;
+        }
+        for (AnnotationNode annotation : classNode.getAnnotations()) {
+            if (!TYPE_PROVIDER_FOR.equals(annotation.getClassNode().getName())) {
+                continue;
+            }
+            Expression value = annotation.getMember("value");
+            List<Expression> types = value instanceof ListExpression ? ((ListExpression) value).getExpressions() : Collections.singletonList(value);
+            for (Expression expression : types) {
+                if (expression instanceof ClassExpression && type.getName().equals(expression.getType().getName())) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    private static void sort(@Nonnull String entry, boolean indexable, @Nonnull List<String> entries, @Nonnull List<String> others) {
+        if (indexable) {
+            entries.add(entry);
+        } else {
+            others.add(entry);
+        }
+    }
+
+    private void merge(@Nonnull File targetDirectory, @Nonnull List<String> entries, @Nonnull List<String> others) throws IOException {
+        File index = new File(targetDirectory, MappingIndex.INDEX_RESOURCE);
+        Set<String> lines = new LinkedHashSet<>();
+        if (index.isFile()) {
+            for (String line : Files.readAllLines(index.toPath(), StandardCharsets.UTF_8)) {
+                if (others.contains(line)) {
+                    // this class no longer is a mapping nor an entity
+                    continue;
+                }
+                if (indexed.contains(line) || classFileExists(targetDirectory, line)) {
+                    lines.add(line);
+                }
+            }
+        }
+        for (String entry : entries) {
+            LOG.debug("Indexing {}", entry);
+            indexed.add(entry);
+            lines.add(entry);
+        }
+
+        Files.createDirectories(index.getParentFile().toPath());
+        Files.write(index.toPath(), lines, StandardCharsets.UTF_8);
+    }
+
+    private static boolean classFileExists(@Nonnull File targetDirectory, @Nonnull String entry) {
+        // classes of the current compilation are only written at the end of it
+        String path;
+        if (entry.startsWith(MappingIndex.MAPPING_PREFIX)) {
+            path = entry.substring(MappingIndex.MAPPING_PREFIX.length(), entry.length() - MappingIndex.HBM_XML_SUFFIX.length());
+        } else if (entry.startsWith(MappingIndex.ENTITY_PREFIX)) {
+            path = entry.substring(MappingIndex.ENTITY_PREFIX.length()).replace('.', '/');
+        } else {
+            return true;
+        }
+        return new File(targetDirectory, path + ".class").isFile();
+    }
+}
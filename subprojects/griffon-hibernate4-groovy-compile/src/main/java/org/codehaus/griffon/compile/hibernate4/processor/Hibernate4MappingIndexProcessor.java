@@ -0,0 +1,191 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.compile.hibernate4.processor;
+
+import griffon.annotations.core.Nonnull;
+import griffon.plugins.hibernate4.Hibernate4Entity;
+import griffon.plugins.hibernate4.Hibernate4Mapping;
+import org.codehaus.griffon.runtime.hibernate4.internal.MappingIndex;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import static griffon.util.GriffonNameUtils.isBlank;
+
+/**
+ * Writes every class compiled from Java sources and registered with {@code @TypeProviderFor(Hibernate4Mapping.class)}
+ * or {@code @TypeProviderFor(Hibernate4Entity.class)} to {@code META-INF/griffon/hibernate4.index}, in the same format
+ * as {@code Hibernate4MappingIndexASTTransformation} does for Groovy sources.
+ * <p>
+ * Entries are merged with those of previous compilations; entries whose class file is gone are dropped.
+ *
+ * @author Andres Almiray
+ * @since 3.0.0
+ */
+@SupportedAnnotationTypes("*")
+public class Hibernate4MappingIndexProcessor extends AbstractProcessor {
+    private static final String TYPE_PROVIDER_FOR = "org.kordamp.jipsy.annotations.TypeProviderFor";
+
+    private final Set<String> entries = new LinkedHashSet<>();
+    private final Set<String> others = new LinkedHashSet<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        if (roundEnv.processingOver()) {
+            write();
+        } else {
+            for (TypeElement type : ElementFilter.typesIn(roundEnv.getRootElements())) {
+                visit(type);
+            }
+        }
+        // other processors, such as the one writing META-INF/types, must see the same annotations
+        return false;
+    }
+
+    private void visit(@Nonnull TypeElement type) {
+        String className = processingEnv.getElementUtils().getBinaryName(type).toString();
+        boolean concrete = type.getKind() == ElementKind.CLASS && !type.getModifiers().contains(Modifier.ABSTRACT);
+        sort(MappingIndex.MAPPING_PREFIX + MappingIndex.toResource(className), concrete && isProviderFor(type, Hibernate4Mapping.class));
+        sort(MappingIndex.ENTITY_PREFIX + className, concrete && isProviderFor(type, Hibernate4Entity.class));
+        for (TypeElement nested : ElementFilter.typesIn(type.getEnclosedElements())) {
+            visit(nested);
+        }
+    }
+
+    private boolean isProviderFor(@Nonnull TypeElement type, @Nonnull Class<?> service) {
+        TypeElement serviceType = processingEnv.getElementUtils().getTypeElement(service.getName());
+        if (serviceType == null || !processingEnv.getTypeUtils().isAssignable(
+            processingEnv.getTypeUtils().erasure(type.asType()), processingEnv.getTypeUtils().erasure(serviceType.asType()))) {
+            return false;
+        }
+        for (AnnotationMirror annotation : type.getAnnotationMirrors()) {
+            if (!TYPE_PROVIDER_FOR.equals(((TypeElement) annotation.getAnnotationType().asElement()).getQualifiedName().toString())) {
+                continue;
+            }
+            for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> member : annotation.getElementValues().entrySet()) {
+                if (!member.getKey().getSimpleName().contentEquals("value")) {
+                    continue;
+                }
+                Object value = member.getValue().getValue();
+                List<?> values = value instanceof List ? (List<?>) value : Collections.singletonList(member.getValue());
+                for (Object element : values) {
+                    Object provided = ((AnnotationValue) element).getValue();
+                    if (provided instanceof DeclaredType &&
+                        service.getName().equals(((TypeElement) ((DeclaredType) provided).asElement()).getQualifiedName().toString())) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    private void sort(@Nonnull String entry, boolean indexable) {
+        if (indexable) {
+            entries.add(entry);
+        } else {
+            others.add(entry);
+        }
+    }
+
+    private void write() {
+        Set<String> lines = new LinkedHashSet<>();
+        boolean exists = false;
+        try {
+            FileObject index = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "", MappingIndex.INDEX_RESOURCE);
+            try (BufferedReader reader = new BufferedReader(new InputStreamReader(index.openInputStream(), StandardCharsets.UTF_8))) {
+                exists = true;
+                for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+                    line = line.trim();
+                    if (isBlank(line) || others.contains(line)) {
+                        // this class no longer is a mapping nor an entity
+                        continue;
+                    }
+                    if (entries.contains(line) || classFileExists(line)) {
+                        lines.add(line);
+                    }
+                }
+            }
+        } catch (IOException e) {
+            // no index written by a previous compilation
+        }
+        lines.addAll(entries);
+        if (lines.isEmpty() && !exists) {
+            return;
+        }
+
+        try {
+            FileObject index = processingEnv.getFiler().createResource(StandardLocation.CLASS_OUTPUT, "", MappingIndex.INDEX_RESOURCE);
+            try (Writer writer = new OutputStreamWriter(index.openOutputStream(), StandardCharsets.UTF_8)) {
+                for (String line : lines) {
+                    writer.write(line);
+                    writer.write('\n');
+                }
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.WARNING, "Could not write " + MappingIndex.INDEX_RESOURCE + ": " + e.getMessage());
+        }
+    }
+
+    private boolean classFileExists(@Nonnull String entry) {
+        // classes of the current compilation are only written at the end of it
+        String path;
+        if (entry.startsWith(MappingIndex.MAPPING_PREFIX)) {
+            path = entry.substring(MappingIndex.MAPPING_PREFIX.length(), entry.length() - MappingIndex.HBM_XML_SUFFIX.length());
+        } else if (entry.startsWith(MappingIndex.ENTITY_PREFIX)) {
+            path = entry.substring(MappingIndex.ENTITY_PREFIX.length()).replace('.', '/');
+        } else {
+            return true;
+        }
+        try (InputStream in = processingEnv.getFiler().getResource(StandardLocation.CLASS_OUTPUT, "", path + ".class").openInputStream()) {
+            return true;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+}
@@ -55,11 +55,21 @@ class Hibernate4AwareASTTransformationSpec extends Specification {
 
         when:
         def bean = shell.evaluate('''
+        import griffon.plugins.hibernate4.Hibernate4BatchResult
         import griffon.plugins.hibernate4.Hibernate4Callback
+        import griffon.plugins.hibernate4.Hibernate4Cancellation
+        import griffon.plugins.hibernate4.Hibernate4FanOutResult
+        import griffon.plugins.hibernate4.Hibernate4Page
+        import griffon.plugins.hibernate4.Hibernate4ScrollCallback
+        import griffon.plugins.hibernate4.Hibernate4StatelessCallback
         import griffon.plugins.hibernate4.exceptions.RuntimeHibernate4Exception
         import griffon.plugins.hibernate4.Hibernate4Handler
 
         import griffon.annotations.core.Nonnull
+        import griffon.annotations.core.Nullable
+        import org.hibernate.criterion.DetachedCriteria
+
+        import java.util.concurrent.CompletableFuture
 
         @griffon.transform.hibernate4.Hibernate4Aware
         class Hibernate4HandlerBean implements Hibernate4Handler {
@@ -71,10 +81,134 @@ class Hibernate4AwareASTTransformationSpec extends Specification {
              <R> R withHbm4Session(@Nonnull String sessionFactoryName, @Nonnull Hibernate4Callback<R> callback) throws RuntimeHibernate4Exception {
                 return null
             }
+            @Override
+             <R> R withHbm4Session(int queryTimeout, @Nullable Hibernate4Cancellation cancellation, @Nonnull Hibernate4Callback<R> callback) throws RuntimeHibernate4Exception {
+                return null
+            }
+            @Override
+             <R> R withHbm4Session(@Nonnull String sessionFactoryName, int queryTimeout, @Nullable Hibernate4Cancellation cancellation, @Nonnull Hibernate4Callback<R> callback) throws RuntimeHibernate4Exception {
+                return null
+            }
+            @Override
+             <R> R withHbm4NewSession(@Nonnull Hibernate4Callback<R> callback) throws RuntimeHibernate4Exception {
+                return null
+            }
+            @Override
+             <R> R withHbm4NewSession(@Nonnull String sessionFactoryName, @Nonnull Hibernate4Callback<R> callback) throws RuntimeHibernate4Exception {
+                return null
+            }
+            @Override
+             <R> CompletableFuture<R> withHbm4SessionAsync(@Nonnull Hibernate4Callback<R> callback) {
+                return null
+            }
+            @Override
+             <R> CompletableFuture<R> withHbm4SessionAsync(@Nonnull String sessionFactoryName, @Nonnull Hibernate4Callback<R> callback) {
+                return null
+            }
+            @Override
+             <R> Hibernate4FanOutResult<R> withHbm4Sessions(@Nonnull Collection<String> sessionFactoryNames, long timeout, @Nonnull Hibernate4Callback<R> callback) {
+                return null
+            }
+            @Override
+             <R> CompletableFuture<R> withHbm4GroupCommit(@Nonnull Hibernate4Callback<R> callback) {
+                return null
+            }
+            @Override
+             <R> CompletableFuture<R> withHbm4GroupCommit(@Nonnull String sessionFactoryName, @Nonnull Hibernate4Callback<R> callback) {
+                return null
+            }
+            @Override
+             <R> R withHbm4ReadOnlySession(@Nonnull Hibernate4Callback<R> callback) throws RuntimeHibernate4Exception {
+                return null
+            }
+            @Override
+             <R> R withHbm4ReadOnlySession(@Nonnull String sessionFactoryName, @Nonnull Hibernate4Callback<R> callback) throws RuntimeHibernate4Exception {
+                return null
+            }
+            @Override
+             <R> R withHbm4NonTransactionalSession(@Nonnull Hibernate4Callback<R> callback) throws RuntimeHibernate4Exception {
+                return null
+            }
+            @Override
+             <R> R withHbm4NonTransactionalSession(@Nonnull String sessionFactoryName, @Nonnull Hibernate4Callback<R> callback) throws RuntimeHibernate4Exception {
+                return null
+            }
+            @Override
+             <R> R withHbm4StatelessSession(@Nonnull Hibernate4StatelessCallback<R> callback) throws RuntimeHibernate4Exception {
+                return null
+            }
+            @Override
+             <R> R withHbm4StatelessSession(@Nonnull String sessionFactoryName, @Nonnull Hibernate4StatelessCallback<R> callback) throws RuntimeHibernate4Exception {
+                return null
+            }
+            @Override
+            Hibernate4BatchResult writeHbm4Batch(@Nonnull Iterator<?> entities, int batchSize) throws RuntimeHibernate4Exception {
+                return null
+            }
+            @Override
+            Hibernate4BatchResult writeHbm4Batch(@Nonnull String sessionFactoryName, @Nonnull Iterator<?> entities, int batchSize) throws RuntimeHibernate4Exception {
+                return null
+            }
+            @Override
+            long withHbm4Scroll(@Nonnull String hql, @Nonnull Map<String, ?> parameters, int fetchSize, int clearEvery, @Nonnull Hibernate4ScrollCallback callback) throws RuntimeHibernate4Exception {
+                return 0
+            }
+            @Override
+            long withHbm4Scroll(@Nonnull String sessionFactoryName, @Nonnull String hql, @Nonnull Map<String, ?> parameters, int fetchSize, int clearEvery, @Nonnull Hibernate4ScrollCallback callback) throws RuntimeHibernate4Exception {
+                return 0
+            }
+            @Override
+            long withHbm4Scroll(@Nonnull DetachedCriteria criteria, int fetchSize, int clearEvery, @Nonnull Hibernate4ScrollCallback callback) throws RuntimeHibernate4Exception {
+                return 0
+            }
+            @Override
+            long withHbm4Scroll(@Nonnull String sessionFactoryName, @Nonnull DetachedCriteria criteria, int fetchSize, int clearEvery, @Nonnull Hibernate4ScrollCallback callback) throws RuntimeHibernate4Exception {
+                return 0
+            }
+            @Override
+             <T> Hibernate4Page<T> withHbm4Page(@Nonnull DetachedCriteria criteria, @Nonnull String keyProperty, int pageSize, @Nullable Object continuation, boolean prefetch) throws RuntimeHibernate4Exception {
+                return null
+            }
+            @Override
+             <T> Hibernate4Page<T> withHbm4Page(@Nonnull String sessionFactoryName, @Nonnull DetachedCriteria criteria, @Nonnull String keyProperty, int pageSize, @Nullable Object continuation, boolean prefetch) throws RuntimeHibernate4Exception {
+                return null
+            }
+            @Override
+            void beginHbm4Conversation(@Nonnull String conversationId) throws RuntimeHibernate4Exception {}
+            @Override
+            void beginHbm4Conversation(@Nonnull String sessionFactoryName, @Nonnull String conversationId) throws RuntimeHibernate4Exception {}
+            @Override
+             <R> R withHbm4Conversation(@Nonnull String conversationId, @Nonnull Hibernate4Callback<R> callback) throws RuntimeHibernate4Exception {
+                return null
+            }
+            @Override
+             <R> R withHbm4Conversation(@Nonnull String sessionFactoryName, @Nonnull String conversationId, @Nonnull Hibernate4Callback<R> callback) throws RuntimeHibernate4Exception {
+                return null
+            }
+            @Override
+            void commitHbm4Conversation(@Nonnull String conversationId) throws RuntimeHibernate4Exception {}
+            @Override
+            void commitHbm4Conversation(@Nonnull String sessionFactoryName, @Nonnull String conversationId) throws RuntimeHibernate4Exception {}
+            @Override
+            void discardHbm4Conversation(@Nonnull String conversationId) {}
+            @Override
+            void discardHbm4Conversation(@Nonnull String sessionFactoryName, @Nonnull String conversationId) {}
             @Override
             void closeHbm4Session(){}
             @Override
             void closeHbm4Session(@Nonnull String sessionFactoryName){}
+            @Override
+            CompletableFuture<Boolean> rebuildHbm4Session() {
+                return null
+            }
+            @Override
+            CompletableFuture<Boolean> rebuildHbm4Session(@Nonnull String sessionFactoryName) {
+                return null
+            }
+            @Override
+            CompletableFuture<Boolean> rebuildHbm4Session(@Nonnull String sessionFactoryName, long drainTimeout) {
+                return null
+            }
         }
         new Hibernate4HandlerBean()
         ''')
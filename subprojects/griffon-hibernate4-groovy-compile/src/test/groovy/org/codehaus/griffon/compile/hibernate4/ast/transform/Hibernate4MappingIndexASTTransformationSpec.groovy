@@ -0,0 +1,116 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.compile.hibernate4.ast.transform
+
+import org.codehaus.griffon.runtime.hibernate4.internal.MappingIndex
+import org.codehaus.groovy.control.CompilationUnit
+import org.codehaus.groovy.control.CompilerConfiguration
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import spock.lang.Specification
+
+/**
+ * @author Andres Almiray
+ */
+class Hibernate4MappingIndexASTTransformationSpec extends Specification {
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder()
+
+    def 'Classes implementing Hibernate4Mapping are written to the mapping index'() {
+        when:
+        compile('Person.groovy': '''
+            package com.acme
+            @org.kordamp.jipsy.annotations.TypeProviderFor(griffon.plugins.hibernate4.Hibernate4Mapping)
+            class Person implements griffon.plugins.hibernate4.Hibernate4Mapping { }
+            ''',
+            'Book.groovy': '''
+            package com.acme
+            @org.kordamp.jipsy.annotations.TypeProviderFor(griffon.plugins.hibernate4.Hibernate4Mapping)
+            class Book implements griffon.plugins.hibernate4.Hibernate4Mapping { }
+            class Helper { }
+            ''')
+
+        then:
+        index() == ['mapping:com/acme/Person.hbm.xml', 'mapping:com/acme/Book.hbm.xml'] as Set
+    }
+
+    def 'Later compilations keep existing entries and drop classes that are no longer mappings'() {
+        given:
+        compile('Person.groovy': '''
+            package com.acme
+            @org.kordamp.jipsy.annotations.TypeProviderFor(griffon.plugins.hibernate4.Hibernate4Mapping)
+            class Person implements griffon.plugins.hibernate4.Hibernate4Mapping { }
+            ''',
+            'Book.groovy': '''
+            package com.acme
+            @org.kordamp.jipsy.annotations.TypeProviderFor(griffon.plugins.hibernate4.Hibernate4Mapping)
+            class Book implements griffon.plugins.hibernate4.Hibernate4Mapping { }
+            ''')
+
+        when:
+        compile('Book.groovy': '''
+            package com.acme
+            class Book { }
+            ''')
+
+        then:
+        index() == ['mapping:com/acme/Person.hbm.xml'] as Set
+    }
+
+    def 'Classes implementing Hibernate4Entity are written to the entity index'() {
+        when:
+        compile('Book.groovy': '''
+            package com.acme
+            @javax.persistence.Entity
+            @org.kordamp.jipsy.annotations.TypeProviderFor(griffon.plugins.hibernate4.Hibernate4Entity)
+            class Book implements griffon.plugins.hibernate4.Hibernate4Entity {
+                @javax.persistence.Id
+                Long id
+            }
+            abstract class AbstractEntity implements griffon.plugins.hibernate4.Hibernate4Entity { }
+            ''')
+
+        then:
+        index() == ['entity:com.acme.Book'] as Set
+    }
+
+    def 'Classes that are not registered with TypeProviderFor are not indexed'() {
+        when:
+        compile('Person.groovy': '''
+            package com.acme
+            @org.kordamp.jipsy.annotations.TypeProviderFor(griffon.plugins.hibernate4.Hibernate4Mapping)
+            class Person implements griffon.plugins.hibernate4.Hibernate4Mapping { }
+            class Address implements griffon.plugins.hibernate4.Hibernate4Mapping { }
+            ''')
+
+        then:
+        index() == ['mapping:com/acme/Person.hbm.xml'] as Set
+    }
+
+    private void compile(Map<String, String> sources) {
+        CompilerConfiguration configuration = new CompilerConfiguration()
+        configuration.targetDirectory = folder.root
+        CompilationUnit unit = new CompilationUnit(configuration, null, new GroovyClassLoader(getClass().classLoader))
+        sources.each { String name, String text -> unit.addSource(name, text) }
+        unit.compile()
+    }
+
+    private Set<String> index() {
+        new File(folder.root, MappingIndex.INDEX_RESOURCE).readLines() as Set
+    }
+}
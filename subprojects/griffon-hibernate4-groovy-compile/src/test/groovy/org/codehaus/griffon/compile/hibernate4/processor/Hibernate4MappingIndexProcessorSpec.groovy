@@ -0,0 +1,102 @@
+/*
+ * SPDX-License-Identifier: Apache-2.0
+ *
+ * Copyright 2014-2021 The author and/or original authors.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     https://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package org.codehaus.griffon.compile.hibernate4.processor
+
+import org.codehaus.griffon.runtime.hibernate4.internal.MappingIndex
+import org.junit.Rule
+import org.junit.rules.TemporaryFolder
+import spock.lang.Specification
+
+import javax.tools.JavaCompiler
+import javax.tools.ToolProvider
+
+/**
+ * @author Andres Almiray
+ */
+class Hibernate4MappingIndexProcessorSpec extends Specification {
+    @Rule
+    public final TemporaryFolder folder = new TemporaryFolder()
+
+    def 'Java classes registered as mappings and entities are written to the index'() {
+        when:
+        compile('com/acme/Person.java': '''
+            package com.acme;
+            @org.kordamp.jipsy.annotations.TypeProviderFor(griffon.plugins.hibernate4.Hibernate4Mapping.class)
+            public class Person implements griffon.plugins.hibernate4.Hibernate4Mapping { }
+            ''',
+            'com/acme/Book.java': '''
+            package com.acme;
+            @javax.persistence.Entity
+            @org.kordamp.jipsy.annotations.TypeProviderFor(griffon.plugins.hibernate4.Hibernate4Entity.class)
+            public class Book implements griffon.plugins.hibernate4.Hibernate4Entity {
+                @javax.persistence.Id
+                private Long id;
+            }
+            ''',
+            'com/acme/Address.java': '''
+            package com.acme;
+            public class Address implements griffon.plugins.hibernate4.Hibernate4Mapping { }
+            ''')
+
+        then:
+        index() == ['mapping:com/acme/Person.hbm.xml', 'entity:com.acme.Book'] as Set
+    }
+
+    def 'Later compilations keep existing entries and drop classes that are no longer mappings'() {
+        given:
+        compile('com/acme/Person.java': '''
+            package com.acme;
+            @org.kordamp.jipsy.annotations.TypeProviderFor(griffon.plugins.hibernate4.Hibernate4Mapping.class)
+            public class Person implements griffon.plugins.hibernate4.Hibernate4Mapping { }
+            ''',
+            'com/acme/Book.java': '''
+            package com.acme;
+            @org.kordamp.jipsy.annotations.TypeProviderFor(griffon.plugins.hibernate4.Hibernate4Mapping.class)
+            public class Book implements griffon.plugins.hibernate4.Hibernate4Mapping { }
+            ''')
+
+        when:
+        compile('com/acme/Book.java': '''
+            package com.acme;
+            public class Book { }
+            ''')
+
+        then:
+        index() == ['mapping:com/acme/Person.hbm.xml'] as Set
+    }
+
+    private void compile(Map<String, String> sources) {
+        File sourceDirectory = folder.newFolder()
+        File classesDirectory = new File(folder.root, 'classes')
+        classesDirectory.mkdirs()
+        List<String> arguments = ['-processor', Hibernate4MappingIndexProcessor.name,
+                                  '-classpath', System.getProperty('java.class.path'), '-d', classesDirectory.absolutePath]
+        sources.each { String name, String text ->
+            File file = new File(sourceDirectory, name)
+            file.parentFile.mkdirs()
+            file.text = text
+            arguments << file.absolutePath
+        }
+        JavaCompiler compiler = ToolProvider.systemJavaCompiler
+        assert compiler.run(null, null, null, arguments as String[]) == 0
+    }
+
+    private Set<String> index() {
+        new File(folder.root, 'classes/' + MappingIndex.INDEX_RESOURCE).readLines() as Set
+    }
+}